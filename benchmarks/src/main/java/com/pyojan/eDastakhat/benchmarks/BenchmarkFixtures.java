@@ -0,0 +1,240 @@
+package com.pyojan.eDastakhat.benchmarks;
+
+import com.itextpdf.text.Document;
+import com.itextpdf.text.DocumentException;
+import com.itextpdf.text.Paragraph;
+import com.itextpdf.text.pdf.PdfStream;
+import com.itextpdf.text.pdf.PdfWriter;
+import com.pyojan.eDastakhat.exceptions.InvalidPINException;
+import com.pyojan.eDastakhat.libs.keyStore.PKCS12KeyStore;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x509.BasicConstraints;
+import org.bouncycastle.asn1.x509.ExtendedKeyUsage;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.asn1.x509.KeyPurposeId;
+import org.bouncycastle.asn1.x509.KeyUsage;
+import org.bouncycastle.cert.X509v3CertificateBuilder;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
+import org.bouncycastle.cert.jcajce.JcaX509v3CertificateBuilder;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.KeyStore;
+import java.security.PrivateKey;
+import java.security.Security;
+import java.security.cert.Certificate;
+import java.security.cert.X509Certificate;
+import java.util.Date;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Synthetic inputs for the benchmarks: self-signed keys, generated PDFs and XML documents.
+ * Everything is generated in memory from a fixed seed, so runs are repeatable and need no files or network.
+ */
+public final class BenchmarkFixtures {
+
+    /** Provider name passed to the signers. */
+    public static final String PROVIDER = BouncyCastleProvider.PROVIDER_NAME;
+
+    /** Password of the generated PKCS#12 keystores. */
+    public static final String KEYSTORE_PASSWORD = "benchmark";
+
+    /** Signature box used for all visible signatures: x1, y1, x2, y2. */
+    public static final int[] SIGNATURE_COORD = {36, 36, 236, 106};
+
+    private static final int FILLER_CHUNK_SIZE = 1024 * 1024;
+
+    static {
+        if (Security.getProvider(PROVIDER) == null) {
+            Security.addProvider(new BouncyCastleProvider());
+        }
+    }
+
+    private BenchmarkFixtures() {
+        throw new UnsupportedOperationException("Utility class cannot be instantiated");
+    }
+
+    /**
+     * A private key with its self-signed certificate.
+     */
+    public static final class SigningKey {
+        private final PrivateKey privateKey;
+        private final X509Certificate certificate;
+
+        private SigningKey(PrivateKey privateKey, X509Certificate certificate) {
+            this.privateKey = privateKey;
+            this.certificate = certificate;
+        }
+
+        public PrivateKey getPrivateKey() {
+            return privateKey;
+        }
+
+        public X509Certificate getCertificate() {
+            return certificate;
+        }
+
+        public Certificate[] getCertificateChain() {
+            return new Certificate[]{certificate};
+        }
+    }
+
+    /**
+     * Generates an RSA-2048 key and a self-signed signing certificate.
+     *
+     * @param commonName The certificate subject common name
+     * @return The generated key
+     * @throws GeneralSecurityException if the key or certificate cannot be generated
+     */
+    public static SigningKey generateSigningKey(String commonName) throws GeneralSecurityException {
+        return generateKey(commonName, false);
+    }
+
+    /**
+     * Generates an RSA-2048 key and a self-signed certificate with the time-stamping extended key usage,
+     * for the mock TSA.
+     *
+     * @param commonName The certificate subject common name
+     * @return The generated key
+     * @throws GeneralSecurityException if the key or certificate cannot be generated
+     */
+    public static SigningKey generateTsaKey(String commonName) throws GeneralSecurityException {
+        return generateKey(commonName, true);
+    }
+
+    /**
+     * Generates a signing key, stores it in a temporary PKCS#12 file protected with {@link #KEYSTORE_PASSWORD}
+     * and loads it through the application's {@link PKCS12KeyStore}, the same way the {@code -pf} option does.
+     *
+     * @param commonName The certificate subject common name
+     * @return The loaded keystore
+     * @throws GeneralSecurityException if the key or keystore cannot be created
+     * @throws IOException              if the keystore file cannot be written
+     * @throws InvalidPINException      if the keystore cannot be opened
+     */
+    public static PKCS12KeyStore createPkcs12KeyStore(String commonName)
+            throws GeneralSecurityException, IOException, InvalidPINException {
+        SigningKey key = generateSigningKey(commonName);
+
+        // Written with BouncyCastle: newer JDKs default to a SHA-256 MAC that BouncyCastle 1.48 cannot read
+        KeyStore keyStore = KeyStore.getInstance("PKCS12", PROVIDER);
+        keyStore.load(null, null);
+        keyStore.setKeyEntry("benchmark", key.getPrivateKey(), KEYSTORE_PASSWORD.toCharArray(), key.getCertificateChain());
+
+        Path file = Files.createTempFile("edastakhat-benchmark-", ".p12");
+        file.toFile().deleteOnExit();
+        try (OutputStream out = Files.newOutputStream(file)) {
+            keyStore.store(out, KEYSTORE_PASSWORD.toCharArray());
+        }
+        return new PKCS12KeyStore(file.toString(), KEYSTORE_PASSWORD);
+    }
+
+    /**
+     * Generates a PDF with the given number of text pages, padded with incompressible filler streams up to
+     * roughly the given size.
+     *
+     * @param pages     Number of pages
+     * @param minSizeMb Minimum document size in megabytes; 0 for text pages only
+     * @return The PDF bytes
+     * @throws DocumentException if the document cannot be built
+     * @throws IOException       if a filler stream cannot be written
+     */
+    public static byte[] generatePdf(int pages, int minSizeMb) throws DocumentException, IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(minSizeMb, 1) * FILLER_CHUNK_SIZE + 64 * 1024);
+        Document document = new Document();
+        PdfWriter writer = PdfWriter.getInstance(document, out);
+        document.open();
+
+        for (int page = 1; page <= pages; page++) {
+            document.add(new Paragraph("eDastakhat benchmark document, page " + page));
+            document.add(new Paragraph(loremIpsum(page)));
+            document.newPage();
+        }
+
+        // Unreferenced random streams keep the parsing and hashing cost realistic for large scanned documents
+        Random random = new Random(42);
+        byte[] chunk = new byte[FILLER_CHUNK_SIZE];
+        for (int i = 0; i < minSizeMb; i++) {
+            random.nextBytes(chunk);
+            writer.addToBody(new PdfStream(chunk.clone()));
+        }
+
+        document.close();
+        return out.toByteArray();
+    }
+
+    /**
+     * Generates an XML document with the given number of records.
+     *
+     * @param records Number of record elements
+     * @return The XML document
+     */
+    public static String generateXml(int records) {
+        StringBuilder xml = new StringBuilder(records * 160 + 64);
+        xml.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<Invoices>\n");
+        for (int i = 1; i <= records; i++) {
+            xml.append("  <Invoice Id=\"inv-").append(i).append("\">")
+                    .append("<Number>").append(100000 + i).append("</Number>")
+                    .append("<Customer>Customer ").append(i % 97).append("</Customer>")
+                    .append("<Amount currency=\"INR\">").append(i * 13 % 10000).append(".50</Amount>")
+                    .append("</Invoice>\n");
+        }
+        xml.append("</Invoices>\n");
+        return xml.toString();
+    }
+
+    /**
+     * @param xml The XML document
+     * @return The UTF-8 bytes of the document
+     */
+    public static byte[] utf8(String xml) {
+        return xml.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static SigningKey generateKey(String commonName, boolean timeStamping) throws GeneralSecurityException {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        KeyPair keyPair = generator.generateKeyPair();
+
+        X500Name subject = new X500Name("CN=" + commonName + ", O=eDastakhat Benchmarks, C=IN");
+        Date notBefore = new Date(System.currentTimeMillis() - TimeUnit.DAYS.toMillis(1));
+        Date notAfter = new Date(System.currentTimeMillis() + TimeUnit.DAYS.toMillis(365));
+
+        try {
+            X509v3CertificateBuilder builder = new JcaX509v3CertificateBuilder(
+                    subject, BigInteger.valueOf(System.nanoTime()), notBefore, notAfter, subject, keyPair.getPublic());
+            builder.addExtension(Extension.basicConstraints, true, new BasicConstraints(false));
+            builder.addExtension(Extension.keyUsage, true, new KeyUsage(KeyUsage.digitalSignature | KeyUsage.nonRepudiation));
+            if (timeStamping) {
+                builder.addExtension(Extension.extendedKeyUsage, true, new ExtendedKeyUsage(KeyPurposeId.id_kp_timeStamping));
+            }
+            X509Certificate certificate = new JcaX509CertificateConverter().setProvider(PROVIDER).getCertificate(
+                    builder.build(new JcaContentSignerBuilder("SHA256withRSA").setProvider(PROVIDER).build(keyPair.getPrivate())));
+            return new SigningKey(keyPair.getPrivate(), certificate);
+        } catch (GeneralSecurityException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new GeneralSecurityException("Unable to create benchmark certificate: " + e.getMessage(), e);
+        }
+    }
+
+    private static String loremIpsum(int seed) {
+        String[] words = {"lorem", "ipsum", "dolor", "sit", "amet", "consectetur", "adipiscing", "elit", "sed", "do"};
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 400; i++) {
+            text.append(words[(seed + i * 7) % words.length]).append(' ');
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,121 @@
+package com.pyojan.eDastakhat.benchmarks;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.bouncycastle.asn1.ASN1ObjectIdentifier;
+import org.bouncycastle.asn1.oiw.OIWObjectIdentifiers;
+import org.bouncycastle.asn1.x509.AlgorithmIdentifier;
+import org.bouncycastle.cert.jcajce.JcaCertStore;
+import org.bouncycastle.cms.jcajce.JcaSimpleSignerInfoGeneratorBuilder;
+import org.bouncycastle.operator.jcajce.JcaDigestCalculatorProviderBuilder;
+import org.bouncycastle.tsp.TSPAlgorithms;
+import org.bouncycastle.tsp.TimeStampRequest;
+import org.bouncycastle.tsp.TimeStampResponseGenerator;
+import org.bouncycastle.tsp.TimeStampTokenGenerator;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.security.GeneralSecurityException;
+import java.util.Collections;
+import java.util.Date;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A local RFC 3161 time-stamping authority on the loopback interface, so timestamped signing can be
+ * benchmarked without network latency or a public TSA's rate limits skewing the results.
+ */
+public final class MockTsaServer implements AutoCloseable {
+
+    private static final ASN1ObjectIdentifier TSA_POLICY = new ASN1ObjectIdentifier("1.3.6.1.4.1.55555.1.1");
+
+    private final HttpServer server;
+    private final TimeStampResponseGenerator responseGenerator;
+    private final AtomicLong serial = new AtomicLong();
+
+    private MockTsaServer(HttpServer server, TimeStampResponseGenerator responseGenerator) {
+        this.server = server;
+        this.responseGenerator = responseGenerator;
+    }
+
+    /**
+     * Starts a TSA on a free loopback port with a freshly generated time-stamping key.
+     *
+     * @return The running server
+     * @throws GeneralSecurityException if the TSA key or token generator cannot be created
+     * @throws IOException              if the server cannot be started
+     */
+    public static MockTsaServer start() throws GeneralSecurityException, IOException {
+        BenchmarkFixtures.SigningKey tsaKey = BenchmarkFixtures.generateTsaKey("eDastakhat Benchmark TSA");
+
+        TimeStampResponseGenerator responseGenerator;
+        try {
+            TimeStampTokenGenerator tokenGenerator = new TimeStampTokenGenerator(
+                    new JcaDigestCalculatorProviderBuilder().build().get(new AlgorithmIdentifier(OIWObjectIdentifiers.idSHA1)),
+                    new JcaSimpleSignerInfoGeneratorBuilder()
+                            .setProvider(BenchmarkFixtures.PROVIDER)
+                            .build("SHA256withRSA", tsaKey.getPrivateKey(), tsaKey.getCertificate()),
+                    TSA_POLICY);
+            tokenGenerator.addCertificates(new JcaCertStore(Collections.singletonList(tsaKey.getCertificate())));
+            responseGenerator = new TimeStampResponseGenerator(tokenGenerator, TSPAlgorithms.ALLOWED);
+        } catch (Exception e) {
+            throw new GeneralSecurityException("Unable to create the mock TSA: " + e.getMessage(), e);
+        }
+
+        HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        MockTsaServer tsa = new MockTsaServer(server, responseGenerator);
+        server.createContext("/tsa", tsa::handle);
+        server.setExecutor(Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, "mock-tsa");
+            thread.setDaemon(true);
+            return thread;
+        }));
+        server.start();
+        return tsa;
+    }
+
+    /**
+     * @return The URL to pass to the TSA client
+     */
+    public String getUrl() {
+        return "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort() + "/tsa";
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            TimeStampRequest request = new TimeStampRequest(readAll(exchange.getRequestBody()));
+            byte[] response = responseGenerator
+                    .generate(request, java.math.BigInteger.valueOf(serial.incrementAndGet()), new Date())
+                    .getEncoded();
+
+            exchange.getResponseHeaders().set("Content-Type", "application/timestamp-reply");
+            exchange.sendResponseHeaders(200, response.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(response);
+            }
+        } catch (Exception e) {
+            exchange.sendResponseHeaders(500, -1);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+}
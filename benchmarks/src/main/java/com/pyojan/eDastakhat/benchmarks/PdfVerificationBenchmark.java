@@ -0,0 +1,70 @@
+package com.pyojan.eDastakhat.benchmarks;
+
+import com.itextpdf.text.pdf.PdfReader;
+import com.pyojan.eDastakhat.libs.keyStore.PKCS12KeyStore;
+import com.pyojan.eDastakhat.models.PdfSignatureVerificationResult;
+import com.pyojan.eDastakhat.services.pdf.PdfSignatureVerifier;
+import com.pyojan.eDastakhat.services.pdf.Signer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Verification benchmark for {@link PdfSignatureVerifier#verifySignatures(byte[])} on documents carrying
+ * one or more signatures, each in its own revision.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 10)
+@Fork(value = 1, jvmArgsAppend = {"-Xms1g", "-Xmx4g"})
+public class PdfVerificationBenchmark {
+
+    @Param({"1", "50", "500"})
+    private int pages;
+
+    @Param({"1"})
+    private int sizeMb;
+
+    // Number of signatures, placed on the first pages
+    @Param({"1", "5"})
+    private int signatures;
+
+    private byte[] signedPdf;
+    private PdfSignatureVerifier verifier;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        byte[] pdf = BenchmarkFixtures.generatePdf(pages, sizeMb);
+        PKCS12KeyStore keyStore = BenchmarkFixtures.createPkcs12KeyStore("eDastakhat Benchmark Signer");
+
+        Signer signer = new Signer();
+        for (int i = 0; i < signatures; i++) {
+            int page = Math.min(i + 1, pages);
+            String signed = signer.sign(new PdfReader(pdf), keyStore.getProvider().getName(), keyStore.getPrivateKey(),
+                    keyStore.getCertificateChain(), page, BenchmarkFixtures.SIGNATURE_COORD, false, null,
+                    true, false, "Benchmark", "Localhost", "Signature " + (i + 1));
+            pdf = Base64.getDecoder().decode(signed);
+        }
+        signedPdf = pdf;
+        verifier = new PdfSignatureVerifier();
+    }
+
+    @Benchmark
+    public PdfSignatureVerificationResult verifySignatures() throws Exception {
+        return verifier.verifySignatures(signedPdf);
+    }
+}
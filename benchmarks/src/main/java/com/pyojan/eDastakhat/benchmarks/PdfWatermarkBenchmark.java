@@ -0,0 +1,62 @@
+package com.pyojan.eDastakhat.benchmarks;
+
+import com.pyojan.eDastakhat.libs.PdfWaterMarker;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark for the watermark pass that runs before signing, {@link PdfWaterMarker#applyWatermarkToSelectedPages}.
+ * The watermarker reads from a path, so the generated document is written to a temporary file once per trial.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 10)
+@Fork(value = 1, jvmArgsAppend = {"-Xms1g", "-Xmx4g"})
+public class PdfWatermarkBenchmark {
+
+    @Param({"1", "50", "500"})
+    private int pages;
+
+    @Param({"1"})
+    private int sizeMb;
+
+    @Param({"L", "A"})
+    private String pageSpec;
+
+    private Path pdfFile;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        pdfFile = Files.createTempFile("edastakhat-watermark-", ".pdf");
+        Files.write(pdfFile, BenchmarkFixtures.generatePdf(pages, sizeMb));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        Files.deleteIfExists(pdfFile);
+    }
+
+    @Benchmark
+    public ByteArrayInputStream applyWatermark() throws Exception {
+        return PdfWaterMarker.applyWatermarkToSelectedPages(pdfFile.toString(), "eDastakhat - Signature Applied",
+                BenchmarkFixtures.SIGNATURE_COORD, pageSpec);
+    }
+}
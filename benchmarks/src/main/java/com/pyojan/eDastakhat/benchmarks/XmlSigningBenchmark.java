@@ -0,0 +1,99 @@
+package com.pyojan.eDastakhat.benchmarks;
+
+import com.pyojan.eDastakhat.libs.keyStore.PKCS12KeyStore;
+import com.pyojan.eDastakhat.models.XmlSignatureVerificationResult;
+import com.pyojan.eDastakhat.services.xml.StreamingXMLSigner;
+import com.pyojan.eDastakhat.services.xml.XMLSignatureVerifier;
+import com.pyojan.eDastakhat.services.xml.XMLSigner;
+import com.pyojan.eDastakhat.services.xml.XmlElementSelector;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * XML signing and verification benchmarks: the DOM signer ({@link XMLSigner}), the streaming signer for whole
+ * documents and for every record element, and {@link XMLSignatureVerifier}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 10)
+@Fork(value = 1, jvmArgsAppend = {"-Xms1g", "-Xmx4g"})
+public class XmlSigningBenchmark {
+
+    @Param({"10", "1000", "10000"})
+    private int records;
+
+    private String xml;
+    private byte[] xmlBytes;
+    private byte[] signedXml;
+    private byte[] elementSignedXml;
+    private XMLSigner domSigner;
+    private StreamingXMLSigner streamingSigner;
+    private StreamingXMLSigner elementSigner;
+    private XMLSignatureVerifier verifier;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        xml = BenchmarkFixtures.generateXml(records);
+        xmlBytes = BenchmarkFixtures.utf8(xml);
+
+        PKCS12KeyStore keyStore = BenchmarkFixtures.createPkcs12KeyStore("eDastakhat Benchmark Signer");
+        domSigner = new XMLSigner(keyStore.getCertificate(), keyStore.getPrivateKey());
+        streamingSigner = new StreamingXMLSigner(keyStore.getCertificate(), keyStore.getPrivateKey());
+        elementSigner = new StreamingXMLSigner(keyStore.getCertificate(), keyStore.getPrivateKey(),
+                XmlElementSelector.parse("/Invoices/Invoice"));
+        verifier = new XMLSignatureVerifier();
+
+        signedXml = BenchmarkFixtures.utf8(domSigner.signXmlString(xml));
+        elementSignedXml = signStreaming(elementSigner);
+    }
+
+    @Benchmark
+    public String signDom() throws Exception {
+        return domSigner.signXmlString(xml);
+    }
+
+    @Benchmark
+    public byte[] signStreaming() throws Exception {
+        return signStreaming(streamingSigner);
+    }
+
+    /**
+     * One enveloped signature per record element.
+     */
+    @Benchmark
+    public byte[] signEachElement() throws Exception {
+        return signStreaming(elementSigner);
+    }
+
+    @Benchmark
+    public XmlSignatureVerificationResult verifyDocumentSignature() throws Exception {
+        return verifier.verifySignatures(signedXml);
+    }
+
+    @Benchmark
+    public XmlSignatureVerificationResult verifyElementSignatures() throws Exception {
+        return verifier.verifySignatures(elementSignedXml);
+    }
+
+    private byte[] signStreaming(StreamingXMLSigner signer) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(xmlBytes.length + 4096);
+        signer.sign(new ByteArrayInputStream(xmlBytes), out);
+        return out.toByteArray();
+    }
+}
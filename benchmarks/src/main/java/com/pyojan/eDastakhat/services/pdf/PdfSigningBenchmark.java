@@ -0,0 +1,120 @@
+package com.pyojan.eDastakhat.services.pdf;
+
+import com.itextpdf.text.pdf.PdfReader;
+import com.itextpdf.text.pdf.security.TSAClient;
+import com.itextpdf.text.pdf.security.TSAClientBouncyCastle;
+import com.pyojan.eDastakhat.benchmarks.BenchmarkFixtures;
+import com.pyojan.eDastakhat.benchmarks.MockTsaServer;
+import com.pyojan.eDastakhat.libs.keyStore.PKCS12KeyStore;
+import com.pyojan.eDastakhat.models.SignatureOptions;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.security.PrivateKey;
+import java.security.cert.Certificate;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Signing benchmarks for {@link Signer#sign} and {@link PdfSigner#signSelectedPages}.
+ * <p>
+ * Lives in the {@code services.pdf} package so it can call the package-private multi-page entry point
+ * directly. Documents are generated with the requested page count and padded to the requested size.
+ * Timestamped signing uses {@link MockTsaServer} on the loopback interface.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 10)
+@Fork(value = 1, jvmArgsAppend = {"-Xms1g", "-Xmx4g"})
+public class PdfSigningBenchmark {
+
+    @Param({"1", "50", "500"})
+    private int pages;
+
+    // Minimum document size; raise to 500 for the large-document runs (needs -Xmx of about 4 GB)
+    @Param({"1"})
+    private int sizeMb;
+
+    // Page specification for signSelectedPages, e.g. "L", "F,L" or "A"
+    @Param({"F,L"})
+    private String pageSpec;
+
+    private byte[] pdf;
+    private PrivateKey privateKey;
+    private Certificate[] certificateChain;
+    private String provider;
+    private MockTsaServer tsa;
+    private TSAClient tsaClient;
+    private PdfSigner pdfSigner;
+    private SignatureOptions options;
+    private int[] pagesToSign;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        pdf = BenchmarkFixtures.generatePdf(pages, sizeMb);
+
+        PKCS12KeyStore keyStore = BenchmarkFixtures.createPkcs12KeyStore("eDastakhat Benchmark Signer");
+        privateKey = keyStore.getPrivateKey();
+        certificateChain = keyStore.getCertificateChain();
+        provider = keyStore.getProvider().getName();
+
+        tsa = MockTsaServer.start();
+        tsaClient = new TSAClientBouncyCastle(tsa.getUrl(), null, null, 8192, "SHA-256");
+
+        pdfSigner = new PdfSigner();
+        options = new SignatureOptions();
+        options.setPage(pageSpec);
+        options.setCoord(BenchmarkFixtures.SIGNATURE_COORD);
+        options.setReason("Benchmark");
+        options.setLocation("Localhost");
+        options.setCustomText("eDastakhat JMH");
+        options.setChangesAllowed(true);
+        pagesToSign = Signer.parsePageSpecification(pageSpec, pages);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if (tsa != null) tsa.close();
+    }
+
+    /**
+     * One visible signature on the last page, without timestamp or LTV.
+     */
+    @Benchmark
+    public String signLastPage() throws Exception {
+        return new Signer().sign(new PdfReader(pdf), provider, privateKey, certificateChain, pages,
+                BenchmarkFixtures.SIGNATURE_COORD, false, null, true, false,
+                "Benchmark", "Localhost", "eDastakhat JMH");
+    }
+
+    /**
+     * One visible signature on the last page with an RFC 3161 timestamp from the local mock TSA.
+     */
+    @Benchmark
+    public String signLastPageWithTimestamp() throws Exception {
+        return new Signer().sign(new PdfReader(pdf), provider, privateKey, certificateChain, pages,
+                BenchmarkFixtures.SIGNATURE_COORD, false, tsaClient, true, false,
+                "Benchmark", "Localhost", "eDastakhat JMH");
+    }
+
+    /**
+     * All pages of {@code pageSpec}, each signed as its own incremental update.
+     */
+    @Benchmark
+    public String signSelectedPages() throws Exception {
+        return pdfSigner.signSelectedPages(new PdfReader(pdf), options, provider, privateKey, certificateChain,
+                null, pagesToSign.clone());
+    }
+}
@@ -3,16 +3,22 @@ package com.pyojan.eDastakhat;
 import com.pyojan.eDastakhat.cliManager.CliManager;
 import com.pyojan.eDastakhat.libs.ProxyConfig;
 import com.pyojan.eDastakhat.libs.Response;
+import com.pyojan.eDastakhat.libs.log.StructuredLog;
+import com.pyojan.eDastakhat.libs.metrics.MetricsRecorder;
 import com.pyojan.eDastakhat.utils.OSDetector;
 import com.pyojan.eDastakhat.utils.Utils;
 import org.apache.commons.cli.*;
 
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.NoSuchFileException;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.LinkedHashMap;
 
 import static com.pyojan.eDastakhat.libs.Response.generateErrorResponse;
@@ -22,6 +28,7 @@ public class EDastakhatApplication {
 
 
     private static final String VERSION = "1.0.1";
+    private static final long DEFAULT_SLOW_STAGE_MILLIS = 1000;
 
     public static void main(String[] args) {
         try {
@@ -31,6 +38,7 @@ public class EDastakhatApplication {
 
             CommandLine commandLine = initializeCLI(args);
             EDastakhatApplication.configureProxyIfPresent(commandLine);
+            EDastakhatApplication.configureLogIfPresent(commandLine);
 
             // Handle version and help options early
             handleHelpAndVersion(commandLine);
@@ -108,4 +116,24 @@ public class EDastakhatApplication {
             proxyConfig.setProxy();
         }
     }
+
+    /**
+     * Turns on the structured JSON log when (-lg/--log) is given, and slow-stage tracing with it.
+     * STDOUT stays reserved for the JSON response, so "-" logs to STDERR.
+     */
+    private static void configureLogIfPresent(CommandLine commandLine) throws IOException {
+        if (!commandLine.hasOption("lg")) return;
+
+        String destination = commandLine.getOptionValue("lg").trim();
+        Writer writer = "-".equals(destination)
+                ? new OutputStreamWriter(System.err, StandardCharsets.UTF_8)
+                : Files.newBufferedWriter(Paths.get(destination), StandardCharsets.UTF_8,
+                        StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        StructuredLog.configure(writer, StructuredLog.Level.INFO);
+
+        long slowStageMillis = commandLine.hasOption("ls")
+                ? Long.parseLong(commandLine.getOptionValue("ls").trim())
+                : DEFAULT_SLOW_STAGE_MILLIS;
+        MetricsRecorder.setSlowStageThresholdMillis(slowStageMillis);
+    }
 }
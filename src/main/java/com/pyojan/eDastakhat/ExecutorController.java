@@ -110,35 +110,85 @@
 package com.pyojan.eDastakhat;
 
 import com.pyojan.eDastakhat.libs.Response;
-import com.pyojan.eDastakhat.libs.keyStore.PKCS11KeyStore;
-import com.pyojan.eDastakhat.libs.keyStore.PKCS12KeyStore;
-import com.pyojan.eDastakhat.libs.keyStore.WindowKeyStore;
+import com.pyojan.eDastakhat.libs.log.StructuredLog;
+import com.pyojan.eDastakhat.libs.metrics.JsonLinesMetricsSink;
+import com.pyojan.eDastakhat.libs.metrics.MetricsRecorder;
+import com.pyojan.eDastakhat.libs.metrics.MetricsSink;
+import com.pyojan.eDastakhat.libs.metrics.PrometheusEndpoint;
 import com.pyojan.eDastakhat.models.ModelValidator;
-import com.pyojan.eDastakhat.models.PdfSignatureVerificationResult;
-import com.pyojan.eDastakhat.models.SignatureOptions;
-import com.pyojan.eDastakhat.services.pdf.PdfSignatureVerifier;
-import com.pyojan.eDastakhat.services.pdf.PdfSigner;
-import com.pyojan.eDastakhat.services.xml.XMLSigner;
-import com.pyojan.eDastakhat.utils.FileUtil;
+import com.pyojan.eDastakhat.models.PdfSigningRequest;
+import com.pyojan.eDastakhat.models.SigningCredentials;
+import com.pyojan.eDastakhat.models.SigningResult;
+import com.pyojan.eDastakhat.models.XmlBatchSigningRequest;
+import com.pyojan.eDastakhat.models.XmlSigningRequest;
+import com.pyojan.eDastakhat.services.SigningService;
+import com.pyojan.eDastakhat.services.pdf.SignedDocumentCache;
+import com.pyojan.eDastakhat.services.xml.XMLBatchSigner;
 import com.pyojan.eDastakhat.utils.MimeTypeDetector;
 import org.apache.commons.cli.CommandLine;
 
 import java.io.File;
-import java.io.IOException;
+import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.security.GeneralSecurityException;
-import java.security.PrivateKey;
-import java.security.cert.X509Certificate;
+import java.util.ArrayList;
 import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 public class ExecutorController {
 
+    // Stateless and thread-safe; the command line is one client of the same API that embedding applications use
+    private static final SigningService SIGNING_SERVICE = new SigningService();
+
+    private static final long DEFAULT_DEDUP_WINDOW_SECONDS = 600;
+    private static final int DEFAULT_DEDUP_CAPACITY = 10_000;
+
+    /**
+     * Runs the requested command as one job of the structured log, so every entry it logs, and its
+     * response, carry the same correlation ID. Failures are answered inside the job for the same reason.
+     *
+     * @param commandLine the parsed command line
+     */
     public static void handleExecuteRequest(CommandLine commandLine) throws Exception {
+        try (StructuredLog.Job ignored = StructuredLog.beginJob(jobKind(commandLine))) {
+            StructuredLog.info("job.started", "input", commandLine.getOptionValue("i",
+                    commandLine.getOptionValue("vf", commandLine.getOptionValue("xb"))));
+            try {
+                execute(commandLine);
+            } catch (Exception e) {
+                Response.generateErrorResponse(e);
+            }
+        }
+    }
+
+    private static String jobKind(CommandLine commandLine) {
+        if (commandLine.hasOption("lt")) return "list-tokens";
+        if (commandLine.hasOption("vf")) return "verify";
+        if (commandLine.hasOption("xb")) return "xml-batch";
+        return "sign";
+    }
+
+    private static void execute(CommandLine commandLine) throws Exception {
+        if (commandLine.hasOption("mp")) {
+            // Serves the operational metrics until the process exits, e.g. during a long (-xb/--xml-batch) run
+            PrometheusEndpoint.start(Integer.parseInt(commandLine.getOptionValue("mp").trim()));
+        }
+
+        if (commandLine.hasOption("lt")) {
+            executeListTokens(commandLine);
+            return;
+        }
+
         if (commandLine.hasOption("vf")) {
             executeSignatureVerification(commandLine);
             return;
         }
 
+        if (commandLine.hasOption("xb")) {
+            executeXmlBatchSigning(commandLine);
+            return;
+        }
+
         String inputFile = commandLine.getOptionValue("i");
         File file = new File(inputFile);
 
@@ -151,101 +201,126 @@ public class ExecutorController {
         }
     }
 
-    private static void executeSignatureVerification(CommandLine commandLine) throws IOException, GeneralSecurityException {
+    private static void executeSignatureVerification(CommandLine commandLine) throws Exception {
 
         String inputFile = commandLine.getOptionValue("vf");
         File file = new File(inputFile);
 
         if(MimeTypeDetector.isPdf(file)) {
-            PdfSignatureVerifier pdfSignatureVerifier = new PdfSignatureVerifier();
-            PdfSignatureVerificationResult result = pdfSignatureVerifier.verifySignatures(inputFile);
-
-            Response.generateSuccessResponse(result);
-
+            Response.generateSuccessResponse(SIGNING_SERVICE.verifyPdf(inputFile));
         } else if (MimeTypeDetector.isXml(file)) {
-            throw new IllegalArgumentException("XML signature verification is not supported yet.");
+            Response.generateSuccessResponse(SIGNING_SERVICE.verifyXml(inputFile));
         } else  {
             throw new IllegalArgumentException("Unsupported file type: only PDF and XML are allowed.");
         }
+    }
 
-
+    private static void executeListTokens(CommandLine commandLine) throws Exception {
+        Response.generateSuccessResponse(SIGNING_SERVICE.listTokens(commandLine.getOptionValue("t")));
     }
 
+    /**
+     * Signs a PDF. With (-mt/--metrics) the response carries a {@code metrics} object with the wall time,
+     * bytes read and written, and allocated bytes of each stage. With (-mf/--metrics-file) the same metrics
+     * are appended to a JSON Lines file. With (-dd/--dedup-dir), a repeat of a request signed within
+     * (-dw/--dedup-window) returns the earlier signed copy.
+     */
     private static void executePdfSigning(CommandLine commandLine, String inputFile) throws Exception {
         String configPath = commandLine.getOptionValue("c");
         ModelValidator modelValidator = new ModelValidator(Paths.get(configPath));
-        modelValidator.validatePdfPayloadModel();
 
-        SignatureOptions signatureOptions = modelValidator.getModal();
-        PdfSigner pdfSigner = new PdfSigner();
-        pdfSigner.executeSign(commandLine, signatureOptions);
-    }
+        PdfSigningRequest request = PdfSigningRequest.builder()
+                .inputPath(inputFile)
+                .outputPath(commandLine.getOptionValue("o"))
+                .password(commandLine.getOptionValue("pw"))
+                .options(modelValidator.getModal())
+                .credentials(credentials(commandLine))
+                .watermark(!commandLine.hasOption("nw"))
+                .collectMetrics(commandLine.hasOption("mt"))
+                .build();
 
-    private static void executeXmlSigning(CommandLine commandLine, String inputFile) throws Exception {
-        CertKeyPair certKeyPair = loadCertificateAndKey(commandLine);
+        MetricsSink metricsFile = commandLine.hasOption("mf")
+                ? new JsonLinesMetricsSink(Paths.get(commandLine.getOptionValue("mf").trim()))
+                : null;
+        MetricsRecorder.addSink(metricsFile);
+        SigningService signingService = SIGNING_SERVICE;
+        if (commandLine.hasOption("dd")) {
+            long windowSeconds = commandLine.hasOption("dw")
+                    ? Long.parseLong(commandLine.getOptionValue("dw").trim())
+                    : DEFAULT_DEDUP_WINDOW_SECONDS;
+            // The directory carries the entries to later runs; the capacity bounds the entries kept in it
+            signingService = new SigningService(new SignedDocumentCache(TimeUnit.SECONDS.toMillis(windowSeconds), DEFAULT_DEDUP_CAPACITY,
+                    Paths.get(commandLine.getOptionValue("dd").trim())));
+        }
 
-        XMLSigner xmlSigner = new XMLSigner(certKeyPair.certificate, certKeyPair.privateKey);
-        String signedXml = xmlSigner.signXmlFromFile(inputFile);
+        SigningResult result;
+        try {
+            result = signingService.signPdf(request);
+        } finally {
+            MetricsRecorder.removeSink(metricsFile);
+        }
 
-        String outputPath = FileUtil.prepareDistPath(
-                commandLine.getOptionValue("o"),
-                inputFile,
-                FileUtil.Extension.XML
-        );
+        LinkedHashMap<String, String> signDataMap = new LinkedHashMap<>();
+        signDataMap.put("signedFilePath", result.getSignedFilePath());
+        if (Boolean.TRUE.equals(result.getDeduplicated())) {
+            signDataMap.put("deduplicated", "true");
+        }
+        Response.generateSuccessResponse(signDataMap, result.getMetrics());
+    }
 
-        FileUtil.writeToDisk(signedXml, outputPath);
+    private static void executeXmlSigning(CommandLine commandLine, String inputFile) throws Exception {
+        XmlSigningRequest request = XmlSigningRequest.builder()
+                .inputPath(inputFile)
+                .outputPath(commandLine.getOptionValue("o"))
+                .credentials(credentials(commandLine))
+                .streaming(commandLine.hasOption("xs"))
+                .elementSelector(commandLine.getOptionValue("xe"))
+                .build();
+        SigningResult result = SIGNING_SERVICE.signXml(request);
 
         LinkedHashMap<String, String> signDataMap = new LinkedHashMap<>();
-        signDataMap.put("signedFilePath", outputPath);
+        signDataMap.put("signedFilePath", result.getSignedFilePath());
+        if (result.getSignatureCount() != null) {
+            signDataMap.put("signatureCount", String.valueOf(result.getSignatureCount()));
+        }
         Response.generateSuccessResponse(signDataMap);
     }
 
-    private static CertKeyPair loadCertificateAndKey(CommandLine cmd) throws Exception {
-        X509Certificate certificate;
-        PrivateKey privateKey;
-        boolean hasSerial = cmd.hasOption("cs");
-
-        if (cmd.hasOption("pf")) {
-            PKCS12KeyStore pkcs12 = new PKCS12KeyStore(cmd.getOptionValue("pf"), cmd.getOptionValue("p"));
-            certificate = hasSerial
-                    ? pkcs12.getCertificate(cmd.getOptionValue("cs"))
-                    : pkcs12.getCertificate();
-            privateKey = hasSerial
-                    ? pkcs12.getPrivateKey(cmd.getOptionValue("cs"))
-                    : pkcs12.getPrivateKey();
-
-        } else if (cmd.hasOption("t")) {
-            PKCS11KeyStore pkcs11 = new PKCS11KeyStore();
-            pkcs11.init(cmd.getOptionValue("t"), cmd.getOptionValue("p"));
-
-            if (cmd.hasOption("ts")) {
-                pkcs11.setTokenSerial(cmd.getOptionValue("ts"));
-            }
-
-            certificate = hasSerial
-                    ? pkcs11.getCertificate(cmd.getOptionValue("cs"))
-                    : pkcs11.getCertificate();
-            privateKey = hasSerial
-                    ? pkcs11.getPrivateKey(cmd.getOptionValue("cs"))
-                    : pkcs11.getPrivateKey();
-
-        } else {
-            WindowKeyStore winKeyStore = new WindowKeyStore();
-            winKeyStore.setSerialHex(cmd.getOptionValue("cs"));
-            certificate = winKeyStore.getCertificate();
-            privateKey = winKeyStore.getPrivateKey();
+    private static void executeXmlBatchSigning(CommandLine commandLine) throws Exception {
+        List<Path> inputs = XMLBatchSigner.resolveInputs(commandLine.getOptionValue("xb"));
+        if (inputs.isEmpty()) {
+            throw new IllegalArgumentException("No XML files found for (-xb/--xml-batch).");
         }
 
-        return new CertKeyPair(certificate, privateKey);
+        String outputDir = commandLine.getOptionValue("o");
+        XmlBatchSigningRequest request = XmlBatchSigningRequest.builder()
+                .inputs(inputs)
+                .outputDirectory(outputDir != null ? Paths.get(outputDir) : null)
+                .credentials(credentials(commandLine))
+                .threads(commandLine.hasOption("th") ? Integer.parseInt(commandLine.getOptionValue("th").trim()) : 0)
+                .streaming(commandLine.hasOption("xs"))
+                .elementSelector(commandLine.getOptionValue("xe"))
+                .journal(commandLine.hasOption("jn") ? Paths.get(commandLine.getOptionValue("jn")) : null)
+                .build();
+
+        Response.generateSuccessResponse(SIGNING_SERVICE.signXmlBatch(request));
     }
 
-    private static class CertKeyPair {
-        final X509Certificate certificate;
-        final PrivateKey privateKey;
+    private static SigningCredentials credentials(CommandLine cmd) {
+        return SigningCredentials.builder()
+                .pfxPath(cmd.getOptionValue("pf"))
+                .tokenLibraryPath(cmd.getOptionValue("t"))
+                .pin(cmd.getOptionValue("p"))
+                .tokenSerial(cmd.getOptionValue("ts"))
+                .certificateSerial(cmd.getOptionValue("cs"))
+                .tokenSlots(cmd.hasOption("sl") ? tokenSlots(cmd.getOptionValue("sl")) : null)
+                .sessionsPerSlot(cmd.hasOption("ss") ? Integer.parseInt(cmd.getOptionValue("ss").trim()) : null)
+                .build();
+    }
 
-        CertKeyPair(X509Certificate certificate, PrivateKey privateKey) {
-            this.certificate = certificate;
-            this.privateKey = privateKey;
-        }
+    private static List<Long> tokenSlots(String slots) {
+        List<Long> indexes = new ArrayList<>();
+        for (String slot : slots.split(",")) indexes.add(Long.parseLong(slot.trim()));
+        return indexes;
     }
 }
@@ -171,11 +171,14 @@
 
 package com.pyojan.eDastakhat.cliManager;
 
+import com.pyojan.eDastakhat.services.xml.XmlElementSelector;
 import com.pyojan.eDastakhat.utils.FileUtil;
 import lombok.Getter;
 import org.apache.commons.cli.*;
 
+import java.nio.file.Files;
 import java.nio.file.NoSuchFileException;
+import java.nio.file.Paths;
 
 public class CliManager {
 
@@ -191,13 +194,20 @@ public class CliManager {
         Options options = defineOptions();
         CommandLine commandLine = parser.parse(options, this.cliArgs);
 
-        if (!(commandLine.hasOption("v") || commandLine.hasOption("h"))) {
+        if (commandLine.hasOption("lt")) {
+            validateListTokensOptions(commandLine);
+        } else if (!(commandLine.hasOption("v") || commandLine.hasOption("h"))) {
             validateInputOrVerifyOptions(commandLine);
             validateVerifyOptions(commandLine);
             validateInputAndConfig(commandLine);
+            validateXmlBatchOptions(commandLine);
+            validateXmlElementOption(commandLine);
             validateSecurityOptions(commandLine);
             validateCertificateRequirement(commandLine);
             validateProxyOptions(commandLine);
+            validateMetricsOptions(commandLine);
+            validateLogOptions(commandLine);
+            validateDedupOptions(commandLine);
         }
 
         return commandLine;
@@ -208,7 +218,8 @@ public class CliManager {
 
         options.addOption("v", "version", false, "Display current version of the application");
         options.addOption("h", "help", false, "Display help message");
-        options.addOption(Option.builder("vf").longOpt("verify").hasArg().desc("Verify digital signatures in the specified PDF file").build());
+        options.addOption(Option.builder("vf").longOpt("verify").hasArg().desc("Verify digital signatures in the specified PDF or XML file").build());
+        options.addOption(Option.builder("lt").longOpt("list-tokens").desc("List the tokens present for the PKCS#11 library given with -t").build());
         options.addOption(Option.builder("i").longOpt("input").hasArg().desc("Input PDF file to be signed").build());
         options.addOption(Option.builder("c").longOpt("config").hasArg().desc("Path to the signature configuration JSON file").build());
         options.addOption(Option.builder("o").longOpt("output").hasArg().desc("Path to save the signed PDF").build());
@@ -221,8 +232,22 @@ public class CliManager {
 
         options.addOption(Option.builder("p").longOpt("pin").hasArg().desc("PIN for the security token or PFX file").build());
         options.addOption(Option.builder("ts").longOpt("tokenSerial").hasArg().desc("Serial number of the PKCS#11 token").build());
+        options.addOption(Option.builder("sl").longOpt("slots").hasArg().desc("Sign on several slots of the (-t/--token) library, as comma-separated 0-based slot list indexes").build());
+        options.addOption(Option.builder("ss").longOpt("sessions-per-slot").hasArg().desc("Concurrent sessions per slot with (-sl/--slots) (default 1)").build());
         options.addOption(Option.builder("nw").longOpt("no-watermark").desc("Do NOT apply a watermark").build());
+        options.addOption(Option.builder("xs").longOpt("xml-stream").desc("Sign XML in streaming mode with bounded memory").build());
+        options.addOption(Option.builder("xe").longOpt("xml-element").hasArg().desc("Sign each XML element matching this name or XPath with its own signature").build());
+        options.addOption(Option.builder("xb").longOpt("xml-batch").hasArg().desc("Sign many XML files: a directory, a file listing one path per line, or - for stdin").build());
+        options.addOption(Option.builder("th").longOpt("threads").hasArg().desc("Worker threads for (-xb/--xml-batch)").build());
+        options.addOption(Option.builder("jn").longOpt("journal").hasArg().desc("Journal file for (-xb/--xml-batch); a rerun skips the files it records as signed").build());
         options.addOption(Option.builder("cs").longOpt("certificateSerial").hasArg().desc("Serial number of the certificate").build());
+        options.addOption(Option.builder("mt").longOpt("metrics").desc("Include per-stage timing and allocation metrics in the PDF signing response").build());
+        options.addOption(Option.builder("mf").longOpt("metrics-file").hasArg().desc("Append per-stage PDF signing metrics to this file, one JSON object per line").build());
+        options.addOption(Option.builder("mp").longOpt("metrics-port").hasArg().desc("Serve Prometheus metrics on http://127.0.0.1:<port>/metrics while running").build());
+        options.addOption(Option.builder("dd").longOpt("dedup-dir").hasArg().desc("Reuse the signed copy of a repeated PDF request, remembering signed requests in this directory").build());
+        options.addOption(Option.builder("dw").longOpt("dedup-window").hasArg().desc("Seconds a signed copy is reused for with (-dd/--dedup-dir) (default 600)").build());
+        options.addOption(Option.builder("lg").longOpt("log").hasArg().desc("Write a structured JSON log to this file, or - for STDERR").build());
+        options.addOption(Option.builder("ls").longOpt("slow-stage-ms").hasArg().desc("Log the timing breakdown of stages slower than this many milliseconds (default 1000)").build());
 
         options.addOption(Option.builder("pxh").longOpt("proxyHost").hasArg().desc("Proxy host").build());
         options.addOption(Option.builder("pxp").longOpt("proxyPort").hasArg().desc("Proxy port").build());
@@ -234,6 +259,14 @@ public class CliManager {
     }
 
 
+    private void validateListTokensOptions(CommandLine cmd) throws NoSuchFileException {
+        if (!cmd.hasOption("t")) throw new IllegalArgumentException("(-t/--token) is required for (-lt/--list-tokens).");
+
+        String tokenPath = cmd.getOptionValue("t");
+        if (isBlank(tokenPath)) throw new IllegalArgumentException("Token path is empty or blank.");
+        FileUtil.isFileExists(tokenPath, String.format("Token file [ %s ] does not exist.", tokenPath));
+    }
+
     private void validateVerifyOptions(CommandLine cmd) throws NoSuchFileException {
         if (!cmd.hasOption("vf")) return;
         if(isBlank(cmd.getOptionValue("vf"))) throw new IllegalArgumentException("Verify file path is empty or blank.");
@@ -243,12 +276,13 @@ public class CliManager {
     private void validateInputOrVerifyOptions(CommandLine cmd) {
         boolean hasInput = cmd.hasOption("i");
         boolean hasVerify = cmd.hasOption("vf");
+        boolean hasBatch = cmd.hasOption("xb");
 
-        if (!hasInput && !hasVerify) {
-            throw new IllegalArgumentException("Either -(i/--input) or (-vf/--verify) must be provided.");
+        if (!hasInput && !hasVerify && !hasBatch) {
+            throw new IllegalArgumentException("Either -(i/--input), (-xb/--xml-batch) or (-vf/--verify) must be provided.");
         }
-        if (hasInput && hasVerify) {
-            throw new IllegalArgumentException("Only one of (-i/--input) or (-vf/--verify) should be provided.");
+        if ((hasInput ? 1 : 0) + (hasVerify ? 1 : 0) + (hasBatch ? 1 : 0) > 1) {
+            throw new IllegalArgumentException("Only one of (-i/--input), (-xb/--xml-batch) or (-vf/--verify) should be provided.");
         }
     }
 
@@ -268,6 +302,107 @@ public class CliManager {
         }
     }
 
+    private void validateXmlElementOption(CommandLine cmd) {
+        if (!cmd.hasOption("xe")) return;
+        if (isBlank(cmd.getOptionValue("xe"))) throw new IllegalArgumentException("XML element selector is empty or blank.");
+        XmlElementSelector.parse(cmd.getOptionValue("xe"));
+    }
+
+    private void validateXmlBatchOptions(CommandLine cmd) throws NoSuchFileException {
+        if (cmd.hasOption("th") && !cmd.hasOption("xb")) {
+            throw new IllegalArgumentException("(-th/--threads) can only be used with (-xb/--xml-batch).");
+        }
+        if (cmd.hasOption("jn") && !cmd.hasOption("xb")) {
+            throw new IllegalArgumentException("(-jn/--journal) can only be used with (-xb/--xml-batch).");
+        }
+        if (!cmd.hasOption("xb")) return;
+
+        String source = cmd.getOptionValue("xb");
+        if (isBlank(source)) throw new IllegalArgumentException("XML batch source is empty or blank.");
+        if (!"-".equals(source)) {
+            FileUtil.isFileExists(source, String.format("XML batch source [ %s ] does not exist.", source));
+        }
+
+        String outputDir = cmd.getOptionValue("o");
+        if (outputDir != null && Files.isRegularFile(Paths.get(outputDir))) {
+            throw new IllegalArgumentException("(-o/--output) must be a directory for (-xb/--xml-batch).");
+        }
+
+        if (cmd.hasOption("th")) {
+            String threads = cmd.getOptionValue("th");
+            try {
+                if (isBlank(threads) || Integer.parseInt(threads.trim()) < 1) throw new NumberFormatException();
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("(-th/--threads) must be a positive integer.");
+            }
+        }
+
+        if (cmd.hasOption("jn")) {
+            String journal = cmd.getOptionValue("jn");
+            if (isBlank(journal)) throw new IllegalArgumentException("Journal path is empty or blank.");
+            if (Files.isDirectory(Paths.get(journal))) {
+                throw new IllegalArgumentException("(-jn/--journal) must be a file, not a directory.");
+            }
+        }
+    }
+
+    private void validateMetricsOptions(CommandLine cmd) {
+        if (cmd.hasOption("mp")) {
+            String port = cmd.getOptionValue("mp");
+            try {
+                int value = isBlank(port) ? -1 : Integer.parseInt(port.trim());
+                if (value < 0 || value > 65535) throw new NumberFormatException();
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("(-mp/--metrics-port) must be a port number between 0 and 65535.");
+            }
+        }
+
+        if (!cmd.hasOption("mf")) return;
+        String metricsFile = cmd.getOptionValue("mf");
+        if (isBlank(metricsFile)) throw new IllegalArgumentException("Metrics file path is empty or blank.");
+        if (Files.isDirectory(Paths.get(metricsFile.trim()))) {
+            throw new IllegalArgumentException("(-mf/--metrics-file) must be a file, not a directory.");
+        }
+    }
+
+    private void validateDedupOptions(CommandLine cmd) {
+        if (cmd.hasOption("dw")) {
+            if (!cmd.hasOption("dd")) throw new IllegalArgumentException("(-dw/--dedup-window) requires (-dd/--dedup-dir).");
+            String window = cmd.getOptionValue("dw");
+            try {
+                if (isBlank(window) || Long.parseLong(window.trim()) < 1) throw new NumberFormatException();
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("(-dw/--dedup-window) must be a positive number of seconds.");
+            }
+        }
+
+        if (!cmd.hasOption("dd")) return;
+        String dedupDir = cmd.getOptionValue("dd");
+        if (isBlank(dedupDir)) throw new IllegalArgumentException("Deduplication directory path is empty or blank.");
+        if (Files.isRegularFile(Paths.get(dedupDir.trim()))) {
+            throw new IllegalArgumentException("(-dd/--dedup-dir) must be a directory, not a file.");
+        }
+    }
+
+    private void validateLogOptions(CommandLine cmd) {
+        if (cmd.hasOption("ls")) {
+            if (!cmd.hasOption("lg")) throw new IllegalArgumentException("(-ls/--slow-stage-ms) requires (-lg/--log).");
+            String threshold = cmd.getOptionValue("ls");
+            try {
+                if (isBlank(threshold) || Long.parseLong(threshold.trim()) < 0) throw new NumberFormatException();
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("(-ls/--slow-stage-ms) must be zero or a positive number of milliseconds.");
+            }
+        }
+
+        if (!cmd.hasOption("lg")) return;
+        String logFile = cmd.getOptionValue("lg");
+        if (isBlank(logFile)) throw new IllegalArgumentException("Log file path is empty or blank.");
+        if (!"-".equals(logFile.trim()) && Files.isDirectory(Paths.get(logFile.trim()))) {
+            throw new IllegalArgumentException("(-lg/--log) must be a file, not a directory.");
+        }
+    }
+
     private void validateSecurityOptions(CommandLine cmd) throws NoSuchFileException {
         boolean isToken = cmd.hasOption("t");
         boolean isPfx = cmd.hasOption("pf");
@@ -296,10 +431,32 @@ public class CliManager {
                 FileUtil.isFileExists(pfxPath, String.format("PFX file [ %s ] does not exist.", pfxPath));
             }
         }
+
+        if (cmd.hasOption("sl")) {
+            if (!isToken) throw new IllegalArgumentException("(-sl/--slots) can only be used with (-t/--token).");
+            if (cmd.hasOption("ts")) throw new IllegalArgumentException("Only one of (-ts/--tokenSerial) or (-sl/--slots) can be specified.");
+            try {
+                for (String slot : cmd.getOptionValue("sl").split(",")) {
+                    if (isBlank(slot) || Long.parseLong(slot.trim()) < 0) throw new NumberFormatException();
+                }
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("(-sl/--slots) must be a comma-separated list of slot indexes, e.g. 0,1,2.");
+            }
+        }
+
+        if (cmd.hasOption("ss")) {
+            if (!cmd.hasOption("sl")) throw new IllegalArgumentException("(-ss/--sessions-per-slot) can only be used with (-sl/--slots).");
+            String sessions = cmd.getOptionValue("ss");
+            try {
+                if (isBlank(sessions) || Integer.parseInt(sessions.trim()) < 1) throw new NumberFormatException();
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("(-ss/--sessions-per-slot) must be a positive integer.");
+            }
+        }
     }
 
     private void validateCertificateRequirement(CommandLine cmd) {
-        if (!cmd.hasOption("i") || cmd.hasOption("pf")) return;
+        if (!(cmd.hasOption("i") || cmd.hasOption("xb")) || cmd.hasOption("pf")) return;
 
         if (!cmd.hasOption("cs")) throw new IllegalArgumentException("(-cs/--certificateSerial) is required unless (-pf/--pfx) is used.");
 
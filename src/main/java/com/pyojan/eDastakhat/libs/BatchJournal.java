@@ -0,0 +1,220 @@
+package com.pyojan.eDastakhat.libs;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Append-only journal of the documents of a batch run, so an interrupted batch can be resumed.
+ * <p>
+ * Each document that is signed or fails appends one JSON line with its input, output and state; the
+ * journal is forced to disk after every line, so a record that was written survives a crash of the JVM
+ * or a power loss. On open, the existing lines are read back and the last record of each input wins. A
+ * line torn by a crash is skipped, and a lost record only means that its document is signed again.
+ * <p>
+ * A document counts as done only if its last record is {@link State#SIGNED} for the same output path,
+ * the input still has the size and modification time it had when it was signed, and the output file
+ * still has the recorded size; the caller adds a format-specific check that the output holds a
+ * signature. An input replaced between runs is therefore signed again. The journal is thread-safe.
+ */
+public final class BatchJournal implements AutoCloseable {
+
+    /**
+     * State of a document in the journal.
+     */
+    public enum State { SIGNED, FAILED }
+
+    private static final Gson GSON = new Gson();
+
+    private final Path file;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final Set<String> outputs = ConcurrentHashMap.newKeySet();
+    private final FileChannel channel;
+    private int skippedLines;
+
+    private BatchJournal(Path file) throws IOException {
+        this.file = file;
+        if (Files.exists(file)) {
+            replay();
+        } else {
+            Path parent = file.toAbsolutePath().getParent();
+            if (parent != null) Files.createDirectories(parent);
+        }
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+    }
+
+    /**
+     * Opens a journal, creating the file if it does not exist and reading back its records if it does.
+     *
+     * @param file The journal file; keep one file per batch
+     * @return The open journal
+     * @throws IOException if the file cannot be read or opened for appending
+     */
+    public static BatchJournal open(Path file) throws IOException {
+        return new BatchJournal(file);
+    }
+
+    /**
+     * Checks if a document was signed by an earlier run into the given output, the input is unchanged
+     * since, and that output is still the size it was when it was written.
+     *
+     * @param input      The input document
+     * @param outputPath The output the current run would write
+     * @return True if the document can be skipped, after the caller has checked the output holds a signature
+     */
+    public boolean isSigned(Path input, String outputPath) {
+        Entry entry = entries.get(key(input));
+        if (entry == null || entry.state != State.SIGNED || !key(outputPath).equals(entry.output)) return false;
+        try {
+            return Files.size(input) == entry.inputSize
+                    && Files.getLastModifiedTime(input).toMillis() == entry.inputModified
+                    && Files.size(Paths.get(entry.output)) == entry.size;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Checks if a file was written as the signed output of a document of this batch, so that a rerun over
+     * the same directory does not take it for a new input.
+     *
+     * @param file The file to check
+     * @return True if a record names the file as its output
+     */
+    public boolean isOutput(Path file) {
+        return outputs.contains(key(file));
+    }
+
+    /**
+     * Records that a document was signed, with the size and modification time of its input. Call it only
+     * once the output is completely written.
+     *
+     * @param input      The input document
+     * @param outputPath The signed output
+     * @throws IOException if the input or output attributes cannot be read or the record cannot be written
+     */
+    public void signed(Path input, String outputPath) throws IOException {
+        Entry entry = new Entry();
+        entry.input = key(input);
+        entry.inputSize = Files.size(input);
+        entry.inputModified = Files.getLastModifiedTime(input).toMillis();
+        entry.state = State.SIGNED;
+        entry.output = key(outputPath);
+        entry.size = Files.size(Paths.get(outputPath));
+        append(entry);
+    }
+
+    /**
+     * Records that a document failed; it is retried by the next run.
+     *
+     * @param input The input document
+     * @param error Why it failed
+     * @throws IOException if the record cannot be written
+     */
+    public void failed(Path input, String error) throws IOException {
+        Entry entry = new Entry();
+        entry.input = key(input);
+        entry.state = State.FAILED;
+        entry.error = error;
+        append(entry);
+    }
+
+    /**
+     * @return The number of documents with a record
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return The number of unreadable lines skipped on open, usually one line torn by a crash
+     */
+    public int getSkippedLines() {
+        return skippedLines;
+    }
+
+    /**
+     * @return The journal file
+     */
+    public Path getFile() {
+        return file;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        channel.close();
+    }
+
+    private synchronized void append(Entry entry) throws IOException {
+        entry.ts = Instant.now().toString();
+        ByteBuffer line = ByteBuffer.wrap((GSON.toJson(entry) + "\n").getBytes(StandardCharsets.UTF_8));
+        while (line.hasRemaining()) channel.write(line);
+        // The record must reach the disk before the document counts as done
+        channel.force(false);
+        entries.put(entry.input, entry);
+        if (entry.output != null) outputs.add(entry.output);
+    }
+
+    private void replay() throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.trim().isEmpty()) continue;
+                try {
+                    Entry entry = GSON.fromJson(line, Entry.class);
+                    if (entry == null || entry.input == null || entry.state == null) {
+                        skippedLines++;
+                        continue;
+                    }
+                    entries.put(entry.input, entry);
+                    if (entry.output != null) outputs.add(entry.output);
+                } catch (JsonParseException e) {
+                    skippedLines++;
+                }
+            }
+        }
+        // A torn last line has no line break; start the next record on a line of its own
+        try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+            long length = raf.length();
+            if (length > 0) {
+                raf.seek(length - 1);
+                if (raf.read() != '\n') raf.write('\n');
+            }
+        }
+    }
+
+    private static String key(Path path) {
+        return path.toAbsolutePath().normalize().toString();
+    }
+
+    private static String key(String path) {
+        return key(Paths.get(path));
+    }
+
+    private static class Entry {
+        private String input;
+        // Size and modification time of the input when it was signed
+        private long inputSize;
+        private long inputModified;
+        private State state;
+        private String output;
+        private long size;
+        private String error;
+        private String ts;
+    }
+}
@@ -0,0 +1,153 @@
+package com.pyojan.eDastakhat.libs;
+
+import com.itextpdf.text.DocumentException;
+import com.itextpdf.text.Font;
+import com.itextpdf.text.pdf.BaseFont;
+import com.pyojan.eDastakhat.libs.metrics.OperationalMetrics;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Process-wide registry of the fonts used for signature appearances and watermarks.
+ * <p>
+ * Parsing a font with {@link BaseFont#createFont} is expensive, and signing or watermarking every page
+ * of a long document used to do it several times per page. Each font is now loaded once per process
+ * and shared: a {@link BaseFont} is read-only once created and can be used by any number of documents.
+ * Custom TrueType/OpenType files (for example a Devanagari font) are loaded with
+ * {@link BaseFont#IDENTITY_H} and embedded, so any Unicode text can be rendered.
+ */
+public final class FontRegistry {
+
+    private static final Map<String, FontMetrics> FONTS = new ConcurrentHashMap<>();
+
+    private FontRegistry() {
+        throw new UnsupportedOperationException("Utility class. Do not instantiate.");
+    }
+
+    /**
+     * Returns the embedded Helvetica font used by default for signature text and watermarks.
+     *
+     * @return The shared Helvetica font
+     * @throws IOException       if the font cannot be read
+     * @throws DocumentException if the font is invalid
+     */
+    public static FontMetrics helvetica() throws IOException, DocumentException {
+        return get(BaseFont.HELVETICA, BaseFont.WINANSI, BaseFont.EMBEDDED);
+    }
+
+    /**
+     * Returns the font for signature appearance text: the custom font file when one is configured,
+     * otherwise Helvetica.
+     *
+     * @param fontPath Path to a TrueType/OpenType font file, or {@code null}/blank for the default
+     * @return The shared font
+     * @throws IOException       if the font file cannot be read
+     * @throws DocumentException if the font file is invalid
+     */
+    public static FontMetrics forAppearance(String fontPath) throws IOException, DocumentException {
+        return fontPath == null || fontPath.trim().isEmpty() ? helvetica() : custom(Paths.get(fontPath.trim()));
+    }
+
+    /**
+     * Returns a custom TrueType/OpenType font, embedded with Unicode (Identity-H) encoding.
+     *
+     * @param fontFile Path to the font file
+     * @return The shared font
+     * @throws IOException       if the font file cannot be read
+     * @throws DocumentException if the font file is invalid
+     */
+    public static FontMetrics custom(Path fontFile) throws IOException, DocumentException {
+        return get(fontFile.toAbsolutePath().normalize().toString(), BaseFont.IDENTITY_H, BaseFont.EMBEDDED);
+    }
+
+    /**
+     * Returns the font with the given name and encoding, loading it on first use.
+     *
+     * @param fontName A built-in font name or a font file path
+     * @param encoding The font encoding, e.g. {@link BaseFont#WINANSI} or {@link BaseFont#IDENTITY_H}
+     * @param embedded Whether the font is embedded in the PDF
+     * @return The shared font
+     * @throws IOException       if the font cannot be read
+     * @throws DocumentException if the font is invalid
+     */
+    public static FontMetrics get(String fontName, String encoding, boolean embedded) throws IOException, DocumentException {
+        String key = fontName + '|' + encoding + '|' + embedded;
+        FontMetrics metrics = FONTS.get(key);
+        if (metrics != null) {
+            OperationalMetrics.cacheLookup("font", true);
+            return metrics;
+        }
+
+        synchronized (FONTS) {
+            metrics = FONTS.get(key);
+            OperationalMetrics.cacheLookup("font", metrics != null);
+            if (metrics == null) {
+                metrics = new FontMetrics(BaseFont.createFont(fontName, encoding, embedded));
+                FONTS.put(key, metrics);
+            }
+            return metrics;
+        }
+    }
+
+    /**
+     * A loaded font together with a precomputed width table for U+0000..U+00FF, which covers
+     * the Latin text used in signature appearances and watermarks.
+     */
+    public static final class FontMetrics {
+        private final BaseFont baseFont;
+        private final int[] latinWidths = new int[256];
+
+        private FontMetrics(BaseFont baseFont) {
+            this.baseFont = baseFont;
+            for (int c = 0; c < latinWidths.length; c++) {
+                latinWidths[c] = baseFont.getWidth(c);
+            }
+        }
+
+        public BaseFont getBaseFont() {
+            return baseFont;
+        }
+
+        /**
+         * Returns the width of the text in glyph units (1/1000 of the font size).
+         *
+         * @param text The text to measure
+         * @return The text width in glyph units
+         */
+        public int getWidth(String text) {
+            int total = 0;
+            for (int i = 0; i < text.length(); ) {
+                int codePoint = text.codePointAt(i);
+                total += codePoint < latinWidths.length ? latinWidths[codePoint] : baseFont.getWidth(codePoint);
+                i += Character.charCount(codePoint);
+            }
+            return total;
+        }
+
+        /**
+         * Returns the width of the text in points at the given font size,
+         * like {@link BaseFont#getWidthPoint(String, float)}.
+         *
+         * @param text     The text to measure
+         * @param fontSize The font size in points
+         * @return The text width in points
+         */
+        public float getWidthPoint(String text, float fontSize) {
+            return getWidth(text) * 0.001f * fontSize;
+        }
+
+        /**
+         * Creates a new {@link Font} of the given size backed by this shared font.
+         *
+         * @param size The font size in points
+         * @return A new Font instance
+         */
+        public Font newFont(float size) {
+            return new Font(baseFont, size);
+        }
+    }
+}
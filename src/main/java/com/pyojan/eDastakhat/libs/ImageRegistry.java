@@ -0,0 +1,123 @@
+package com.pyojan.eDastakhat.libs;
+
+import com.itextpdf.text.BadElementException;
+import com.itextpdf.text.Image;
+import com.pyojan.eDastakhat.libs.metrics.OperationalMetrics;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Process-wide cache of the images used in signature appearances, such as company seals and scanned
+ * handwritten signatures.
+ * <p>
+ * Images are keyed by the SHA-256 hash of their content, not by path, so the same seal referenced from
+ * different paths is decoded once, and a file that changes on disk is decoded again. A decoded
+ * {@link Image} holds the compressed image stream ready to be written, and it can be added to any
+ * number of documents as long as it is drawn with an explicit transformation matrix. A batch run
+ * therefore decodes and compresses each unique image once instead of once per document.
+ */
+public final class ImageRegistry {
+
+    private static final int MAX_CACHED_IMAGES = 32;
+
+    private static final byte[] PNG_MAGIC = {(byte) 0x89, 'P', 'N', 'G'};
+    private static final byte[] JPEG_MAGIC = {(byte) 0xFF, (byte) 0xD8, (byte) 0xFF};
+
+    private static final Map<String, LoadedImage> IMAGES = Collections.synchronizedMap(
+            new LinkedHashMap<String, LoadedImage>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, LoadedImage> eldest) {
+                    return size() > MAX_CACHED_IMAGES;
+                }
+            });
+
+    private ImageRegistry() {
+        throw new UnsupportedOperationException("Utility class. Do not instantiate.");
+    }
+
+    /**
+     * Returns the decoded image for the given PNG or JPEG file, decoding it only if an image with the
+     * same content has not been loaded before.
+     *
+     * @param imageFile Path to the PNG or JPEG file
+     * @return The shared decoded image
+     * @throws IOException if the file cannot be read, is not a PNG or JPEG image, or cannot be decoded
+     */
+    public static LoadedImage load(Path imageFile) throws IOException {
+        byte[] content = Files.readAllBytes(imageFile);
+        if (!startsWith(content, PNG_MAGIC) && !startsWith(content, JPEG_MAGIC)) {
+            throw new IOException("Unsupported signature image format: " + imageFile + ". Only PNG and JPEG images are supported.");
+        }
+
+        String hash = sha256(content);
+        LoadedImage cached = IMAGES.get(hash);
+        OperationalMetrics.cacheLookup("image", cached != null);
+        if (cached != null) return cached;
+
+        Image image;
+        try {
+            image = Image.getInstance(content);
+        } catch (BadElementException e) {
+            throw new IOException("Unable to decode signature image " + imageFile + ": " + e.getMessage(), e);
+        }
+
+        LoadedImage loaded = new LoadedImage(hash, image);
+        IMAGES.put(hash, loaded);
+        return loaded;
+    }
+
+    private static boolean startsWith(byte[] content, byte[] magic) {
+        if (content.length < magic.length) return false;
+        for (int i = 0; i < magic.length; i++) {
+            if (content[i] != magic[i]) return false;
+        }
+        return true;
+    }
+
+    private static String sha256(byte[] content) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(content);
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    /**
+     * A decoded image together with the hash of its file content.
+     */
+    public static final class LoadedImage {
+        private final String contentHash;
+        private final Image image;
+
+        private LoadedImage(String contentHash, Image image) {
+            this.contentHash = contentHash;
+            this.image = image;
+        }
+
+        /**
+         * @return The hex SHA-256 hash of the image file content
+         */
+        public String getContentHash() {
+            return contentHash;
+        }
+
+        /**
+         * @return The decoded image; draw it with an explicit matrix and do not change its position or scale
+         */
+        public Image getImage() {
+            return image;
+        }
+    }
+}
@@ -3,6 +3,7 @@ package com.pyojan.eDastakhat.libs;
 import com.itextpdf.text.pdf.*;
 import com.itextpdf.text.Rectangle;
 import com.itextpdf.text.DocumentException;
+import com.pyojan.eDastakhat.libs.log.StructuredLog;
 import com.pyojan.eDastakhat.services.pdf.Signer;
 
 import java.io.*;
@@ -13,11 +14,11 @@ public class PdfWaterMarker {
 
     private static final int FONT_SIZE = 8;
 
-    private static BaseFont getBaseFont() {
+    private static FontRegistry.FontMetrics getFontMetrics() {
         try {
-            return BaseFont.createFont(BaseFont.HELVETICA, BaseFont.WINANSI, BaseFont.EMBEDDED);
+            return FontRegistry.helvetica();
         } catch (Exception e) {
-            e.printStackTrace();
+            StructuredLog.error("watermark.fontUnavailable", e);
             return null;
         }
     }
@@ -82,14 +83,14 @@ public class PdfWaterMarker {
         PdfContentByte over = stamper.getOverContent(pageNumber);
         Rectangle pageSize = reader.getPageSize(pageNumber);
 
-        BaseFont font = getBaseFont();
-        if (font == null) {
+        FontRegistry.FontMetrics fontMetrics = getFontMetrics();
+        if (fontMetrics == null) {
             // Font loading failed; abort watermarking
             return;
         }
 
         float watermarkX, watermarkY;
-        float textWidth = font.getWidthPoint(watermarkText, FONT_SIZE);
+        float textWidth = fontMetrics.getWidthPoint(watermarkText, FONT_SIZE);
 
         // Calculate coordinates
         if (coord == null || coord.length != 4) {
@@ -104,7 +105,7 @@ public class PdfWaterMarker {
 
         // Draw text
         over.beginText();
-        over.setFontAndSize(font, FONT_SIZE);
+        over.setFontAndSize(fontMetrics.getBaseFont(), FONT_SIZE);
         over.setRGBColorFill(112, 128, 144); // slate Gray
         over.setTextMatrix(watermarkX, watermarkY);
         over.showText(watermarkText);
@@ -2,6 +2,8 @@ package com.pyojan.eDastakhat.libs;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import com.pyojan.eDastakhat.libs.log.StructuredLog;
+import com.pyojan.eDastakhat.models.SigningMetrics;
 import lombok.Getter;
 import lombok.Setter;
 
@@ -21,6 +23,10 @@ public class Response<T> {
     private final static Gson jsonPrinter = new GsonBuilder().setPrettyPrinting().create();
     private String status;
     private T data;
+    // Per-stage timings, only present when requested
+    private SigningMetrics metrics;
+    // Correlation ID of the job in the structured log, only present when logging is on
+    private String correlationId;
 
     /**
      * Constructs a new Response with the given status and data.
@@ -38,9 +44,7 @@ public class Response<T> {
      */
     public static void generateSuccessResponse(LinkedHashMap<String, String> data) {
         Response<LinkedHashMap<String, String>> response = new Response<>("SUCCESS", data);
-        String json = jsonPrinter.toJson(response);
-        System.out.println(json);
-        System.exit(0); // Exit with a success code
+        print(response, null);
     }
 
 
@@ -53,9 +57,22 @@ public class Response<T> {
      */
     public static <T> void generateSuccessResponse(T data) {
         Response<T> response = new Response<>("SUCCESS", data);
-        String json = jsonPrinter.toJson(response);
-        System.out.println(json);
-        System.exit(0); // Exit with a success code
+        print(response, null);
+    }
+
+
+    /**
+     * Prints a success response with generic data and, when not null, the metrics of the operation,
+     * then exits the program with a success code (0).
+     *
+     * @param <T>     the type of the response data
+     * @param data    the response data object to be included in the response
+     * @param metrics the per-stage metrics of the operation, or null to leave them out
+     */
+    public static <T> void generateSuccessResponse(T data, SigningMetrics metrics) {
+        Response<T> response = new Response<>("SUCCESS", data);
+        response.setMetrics(metrics);
+        print(response, null);
     }
 
 
@@ -73,8 +90,28 @@ public class Response<T> {
         errorData.put("stackTrace", sw.toString());
 
         Response<LinkedHashMap<String, String>> response = new Response<>("ERROR", errorData);
+        print(response, e);
+    }
+
+
+    /**
+     * Logs the end of the current job, prints the response as JSON to STDOUT and exits the program.
+     * The structured log drains its queue from a shutdown hook, so the job's last entry is not lost.
+     *
+     * @param response the response to print
+     * @param error    the exception of an error response, or null
+     */
+    private static void print(Response<?> response, Exception error) {
+        if (StructuredLog.isEnabled(StructuredLog.Level.ERROR)) {
+            response.setCorrelationId(StructuredLog.currentJobId());
+            if (error == null) {
+                StructuredLog.info("job.succeeded", "elapsedMillis", StructuredLog.currentJobElapsedMillis());
+            } else {
+                StructuredLog.error("job.failed", error, "elapsedMillis", StructuredLog.currentJobElapsedMillis());
+            }
+        }
         String json = jsonPrinter.toJson(response);
         System.out.println(json);
-        System.exit(0); // Exit with an error code
+        System.exit(0); // Exit with a success code, also for errors; the status field tells them apart
     }
 }
@@ -0,0 +1,123 @@
+package com.pyojan.eDastakhat.libs.keyStore;
+
+import com.pyojan.eDastakhat.exceptions.KeyStoreInitializationException;
+import lombok.Getter;
+
+import java.security.KeyStore;
+import java.security.KeyStoreException;
+import java.security.cert.Certificate;
+import java.security.cert.X509Certificate;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Index of the X509 certificates in a {@link KeyStore}, keyed by certificate serial number.
+ * <p>
+ * The store is enumerated once and every alias, certificate and chain is read once, so later lookups by
+ * serial are a single map access. This matters on Windows stores with hundreds of certificates and on
+ * PKCS#11 tokens, where each certificate read is a USB round trip. Indexes are cached per loaded key store.
+ * </p>
+ */
+public final class CertificateIndex {
+
+    private static final Map<KeyStore, CertificateIndex> INDEXES = Collections.synchronizedMap(new WeakHashMap<>());
+
+    private final Map<String, IndexedEntry> entriesBySerial;
+
+    private CertificateIndex(Map<String, IndexedEntry> entriesBySerial) {
+        this.entriesBySerial = entriesBySerial;
+    }
+
+    /**
+     * A certificate entry of the key store.
+     */
+    @Getter
+    public static final class IndexedEntry {
+        private final String alias;
+        private final X509Certificate certificate;
+        private final X509Certificate[] certificateChain;
+        private final boolean keyEntry;
+
+        private IndexedEntry(String alias, X509Certificate certificate, X509Certificate[] certificateChain, boolean keyEntry) {
+            this.alias = alias;
+            this.certificate = certificate;
+            this.certificateChain = certificateChain;
+            this.keyEntry = keyEntry;
+        }
+    }
+
+    /**
+     * Returns the index for the given key store, building it on first use.
+     *
+     * @param keyStore the loaded key store
+     * @return the certificate index of the key store
+     * @throws KeyStoreInitializationException if the key store cannot be enumerated
+     */
+    public static CertificateIndex of(KeyStore keyStore) {
+        synchronized (INDEXES) {
+            return INDEXES.computeIfAbsent(keyStore, CertificateIndex::build);
+        }
+    }
+
+    /**
+     * Drops the cached index of the given key store, e.g. after its contents changed.
+     *
+     * @param keyStore the key store
+     */
+    public static void invalidate(KeyStore keyStore) {
+        INDEXES.remove(keyStore);
+    }
+
+    /**
+     * Looks up a certificate by its serial number in hex. Leading zeros and case are ignored.
+     *
+     * @param serialHex the certificate serial number in hex
+     * @return the matching entry, or null if no certificate has this serial
+     */
+    public IndexedEntry find(String serialHex) {
+        if (serialHex == null) return null;
+        return entriesBySerial.get(normalizeSerial(serialHex));
+    }
+
+    private static CertificateIndex build(KeyStore keyStore) {
+        Map<String, IndexedEntry> entries = new HashMap<>();
+        try {
+            Enumeration<String> aliases = keyStore.aliases();
+            while (aliases.hasMoreElements()) {
+                String alias = aliases.nextElement();
+                Certificate cert = keyStore.getCertificate(alias);
+                if (!(cert instanceof X509Certificate)) continue;
+
+                X509Certificate x509 = (X509Certificate) cert;
+                boolean keyEntry = keyStore.isKeyEntry(alias);
+                X509Certificate[] chain = keyEntry ? toX509Chain(keyStore.getCertificateChain(alias), x509) : new X509Certificate[]{x509};
+
+                // Keep the first alias for a serial, matching the enumeration order of a linear search
+                entries.putIfAbsent(normalizeSerial(x509.getSerialNumber().toString(16)), new IndexedEntry(alias, x509, chain, keyEntry));
+            }
+        } catch (KeyStoreException e) {
+            throw new KeyStoreInitializationException("Error indexing certificates in KeyStore", e);
+        }
+        return new CertificateIndex(entries);
+    }
+
+    private static X509Certificate[] toX509Chain(Certificate[] chain, X509Certificate leaf) {
+        if (chain == null || chain.length == 0) return new X509Certificate[]{leaf};
+
+        X509Certificate[] x509Chain = new X509Certificate[chain.length];
+        for (int i = 0; i < chain.length; i++) {
+            x509Chain[i] = (X509Certificate) chain[i];
+        }
+        return x509Chain;
+    }
+
+    private static String normalizeSerial(String serialHex) {
+        String serial = serialHex.trim().toLowerCase();
+        int i = 0;
+        while (i < serial.length() - 1 && serial.charAt(i) == '0') i++;
+        return serial.substring(i);
+    }
+}
@@ -0,0 +1,192 @@
+package com.pyojan.eDastakhat.libs.keyStore;
+
+import com.pyojan.eDastakhat.libs.metrics.OperationalMetrics;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Cache with an idle TTL and a capacity cap, shared by {@link KeyStoreCache}, {@link PrivateKeyCache} and
+ * {@link PKCS11SessionPool#shared}.
+ * <p>
+ * A miss is loaded by the first caller, outside the cache lock; later callers for the same key wait for that
+ * load, and callers for other keys are not held up by it. A failed load is not cached. Entries idle longer
+ * than the TTL, or pushed out by the capacity cap, are removed and handed to the eviction callback, which
+ * runs outside the cache lock. A daemon thread removes idle entries even when the cache is not used.
+ * </p>
+ *
+ * @param <V> the cached value
+ */
+final class ExpiringCache<V> {
+
+    /**
+     * Loads the value of a missing key.
+     */
+    @FunctionalInterface
+    interface Loader<V> {
+        V load() throws Exception;
+    }
+
+    private final String name;
+    private final long idleTtlMillis;
+    private final int capacity;
+    private final Consumer<V> onEvict;
+    private final LinkedHashMap<String, Slot<V>> slots = new LinkedHashMap<>(16, 0.75f, true);
+    private ScheduledExecutorService evictor;
+
+    /**
+     * @param name          the cache name in the hit and miss metrics and in the evictor thread name
+     * @param idleTtlMillis how long an entry may stay unused; 0 or less disables the cache
+     * @param capacity      the most entries kept; 0 or less disables the cache
+     * @param onEvict       called with the value of every removed entry
+     */
+    ExpiringCache(String name, long idleTtlMillis, int capacity, Consumer<V> onEvict) {
+        this.name = name;
+        this.idleTtlMillis = idleTtlMillis;
+        this.capacity = capacity;
+        this.onEvict = onEvict;
+    }
+
+    /**
+     * Returns the cached value for the key, loading it with the given loader on a miss. A disabled cache
+     * loads on every call and keeps nothing.
+     *
+     * @param key    the cache key
+     * @param loader the loader invoked on a miss
+     * @return the value
+     * @throws Exception if the loader fails, also for callers that waited for the failed load
+     */
+    V get(String key, Loader<V> loader) throws Exception {
+        if (capacity <= 0 || idleTtlMillis <= 0) return loader.load();
+
+        List<Slot<V>> evicted = new ArrayList<>();
+        Slot<V> slot;
+        boolean loading = false;
+        synchronized (slots) {
+            long now = System.currentTimeMillis();
+            collectExpired(now, evicted);
+
+            slot = slots.get(key);
+            if (slot == null) {
+                slot = new Slot<>();
+                slots.put(key, slot);
+                loading = true;
+
+                Iterator<Slot<V>> it = slots.values().iterator();
+                while (slots.size() > capacity && it.hasNext()) {
+                    evicted.add(it.next());
+                    it.remove();
+                }
+                startEvictor();
+            }
+            slot.lastAccess = now;
+        }
+        evicted.forEach(this::release);
+        OperationalMetrics.cacheLookup(name, !loading);
+
+        if (loading) {
+            try {
+                V value = loader.load();
+                slot.value.complete(value);
+                return value;
+            } catch (Exception | Error e) {
+                synchronized (slots) {
+                    slots.remove(key, slot);
+                }
+                slot.value.completeExceptionally(e);
+                throw e;
+            }
+        }
+        return await(slot);
+    }
+
+    /**
+     * Removes an entry, e.g. after its source changed or failed.
+     *
+     * @param key the cache key
+     */
+    void invalidate(String key) {
+        Slot<V> slot;
+        synchronized (slots) {
+            slot = slots.remove(key);
+        }
+        if (slot != null) release(slot);
+    }
+
+    /**
+     * Removes all entries.
+     */
+    void clear() {
+        List<Slot<V>> evicted;
+        synchronized (slots) {
+            evicted = new ArrayList<>(slots.values());
+            slots.clear();
+        }
+        evicted.forEach(this::release);
+    }
+
+    private V await(Slot<V> slot) throws Exception {
+        try {
+            return slot.value.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw e;
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) throw (Exception) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw e;
+        }
+    }
+
+    private void release(Slot<V> slot) {
+        // A value still loading is released as soon as it arrives; a failed load has nothing to release
+        slot.value.thenAccept(onEvict);
+    }
+
+    private void evictExpired() {
+        List<Slot<V>> evicted = new ArrayList<>();
+        synchronized (slots) {
+            collectExpired(System.currentTimeMillis(), evicted);
+        }
+        evicted.forEach(this::release);
+    }
+
+    private void collectExpired(long now, List<Slot<V>> evicted) {
+        Iterator<Map.Entry<String, Slot<V>>> it = slots.entrySet().iterator();
+        while (it.hasNext()) {
+            Slot<V> slot = it.next().getValue();
+            if (now - slot.lastAccess > idleTtlMillis) {
+                evicted.add(slot);
+                it.remove();
+            }
+        }
+    }
+
+    private void startEvictor() {
+        if (evictor != null) return;
+
+        evictor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "eDastakhat-" + name + "-cache-evictor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long period = Math.max(1000L, idleTtlMillis / 2);
+        evictor.scheduleWithFixedDelay(this::evictExpired, period, period, TimeUnit.MILLISECONDS);
+        Runtime.getRuntime().addShutdownHook(new Thread(this::clear, "eDastakhat-" + name + "-cache-shutdown"));
+    }
+
+    private static final class Slot<V> {
+        private final CompletableFuture<V> value = new CompletableFuture<>();
+        private volatile long lastAccess;
+    }
+}
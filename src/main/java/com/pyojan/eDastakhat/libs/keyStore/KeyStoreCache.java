@@ -0,0 +1,129 @@
+package com.pyojan.eDastakhat.libs.keyStore;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.security.SecureRandom;
+import java.util.Arrays;
+
+/**
+ * Process-wide cache of loaded {@link KeyStore} instances, keyed by their source.
+ * <p>
+ * A PKCS#12 store is keyed by file path and last-modified time, a PKCS#11 store by library path and token.
+ * The key also carries an HMAC of the password or PIN under a random per-process secret, so a wrong secret
+ * never returns a store that was unlocked with the right one, and the key reveals nothing about the secret.
+ * </p>
+ * The cache holds at most {@code edastakhat.keyStoreCache.capacity} stores (default 8), and drops a store
+ * unused for {@code edastakhat.keyStoreCache.ttlSeconds} (default 600). Each store is loaded by the first
+ * request that needs it, so a slow token login or PBKDF run only delays the requests for the same store.
+ */
+public final class KeyStoreCache {
+
+    private static final ExpiringCache<KeyStore> CACHE = new ExpiringCache<>(
+            "keyStore",
+            Long.getLong("edastakhat.keyStoreCache.ttlSeconds", 600L) * 1000L,
+            Integer.getInteger("edastakhat.keyStoreCache.capacity", 8),
+            CertificateIndex::invalidate
+    );
+
+    private static final byte[] SECRET_KEY = randomSecretKey();
+
+    private KeyStoreCache() {
+        throw new UnsupportedOperationException("Utility class. Do not instantiate.");
+    }
+
+    /**
+     * Loads a key store from its source.
+     */
+    @FunctionalInterface
+    public interface Loader {
+        KeyStore load() throws Exception;
+    }
+
+    /**
+     * Returns the cached key store for the given key, loading it with the given loader on a miss.
+     * A failed load is not cached.
+     *
+     * @param key    the cache key, see {@link #pkcs12Key(Path, char[])} and {@link #pkcs11Key(String, String, char[])}
+     * @param loader the loader invoked on a cache miss
+     * @return the loaded key store
+     * @throws Exception if the loader fails
+     */
+    public static KeyStore getOrLoad(String key, Loader loader) throws Exception {
+        return CACHE.get(key, loader::load);
+    }
+
+    /**
+     * Removes a key store from the cache, e.g. after the token was removed.
+     *
+     * @param key the cache key
+     */
+    public static void invalidate(String key) {
+        CACHE.invalidate(key);
+    }
+
+    /**
+     * Removes all cached key stores.
+     */
+    public static void clear() {
+        CACHE.clear();
+    }
+
+    /**
+     * Builds the cache key for a PKCS#12 file. Replacing the file changes its modification time
+     * and therefore the key.
+     *
+     * @param pkcs12File the PKCS#12 file
+     * @param password   the password used to open the file
+     * @return the cache key
+     * @throws IOException if the file attributes cannot be read
+     */
+    public static String pkcs12Key(Path pkcs12File, char[] password) throws IOException {
+        Path path = pkcs12File.toAbsolutePath().normalize();
+        return "PKCS12|" + path + "|" + Files.getLastModifiedTime(path).toMillis() + "|" + secretDigest(password);
+    }
+
+    /**
+     * Builds the cache key for a PKCS#11 token.
+     *
+     * @param pkcs11LibPath the PKCS#11 library path
+     * @param tokenId       the token serial, or the slot index if no serial was given
+     * @param pin           the PIN used to log in
+     * @return the cache key
+     */
+    public static String pkcs11Key(String pkcs11LibPath, String tokenId, char[] pin) {
+        return "PKCS11|" + pkcs11LibPath + "|" + tokenId + "|" + secretDigest(pin);
+    }
+
+    private static String secretDigest(char[] secret) {
+        ByteBuffer encoded = StandardCharsets.UTF_8.encode(CharBuffer.wrap(secret));
+        byte[] bytes = new byte[encoded.remaining()];
+        encoded.get(bytes);
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(SECRET_KEY, "HmacSHA256"));
+            byte[] hash = mac.doFinal(bytes);
+            StringBuilder hex = new StringBuilder(hash.length * 2);
+            for (byte b : hash) hex.append(String.format("%02x", b));
+            return hex.toString();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HmacSHA256 is not available", e);
+        } finally {
+            Arrays.fill(bytes, (byte) 0);
+            if (encoded.hasArray()) Arrays.fill(encoded.array(), (byte) 0);
+        }
+    }
+
+    private static byte[] randomSecretKey() {
+        byte[] key = new byte[32];
+        new SecureRandom().nextBytes(key);
+        return key;
+    }
+}
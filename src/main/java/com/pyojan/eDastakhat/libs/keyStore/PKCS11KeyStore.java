@@ -2,14 +2,10 @@ package com.pyojan.eDastakhat.libs.keyStore;
 
 import com.pyojan.eDastakhat.exceptions.*;
 import lombok.Setter;
-import org.bouncycastle.jce.provider.BouncyCastleProvider;
 import sun.security.pkcs11.SunPKCS11;
-import sun.security.pkcs11.wrapper.CK_TOKEN_INFO;
-import sun.security.pkcs11.wrapper.PKCS11;
+import sun.security.pkcs11.wrapper.PKCS11Exception;
 
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
 import java.security.*;
 import java.security.cert.CertificateException;
 import java.security.cert.CertificateExpiredException;
@@ -20,11 +16,22 @@ public class PKCS11KeyStore extends CertificateValidator {
 
     private static final String PKCS11_TYPE = "PKCS11";
 
-    private final BouncyCastleProvider bcProvider = new BouncyCastleProvider();
+    // PKCS#11 return values (v2.20) that mean the session or token is gone
+    private static final long CKR_DEVICE_ERROR = 0x30L;
+    private static final long CKR_DEVICE_REMOVED = 0x32L;
+    private static final long CKR_SESSION_CLOSED = 0xB0L;
+    private static final long CKR_SESSION_HANDLE_INVALID = 0xB3L;
+    private static final long CKR_TOKEN_NOT_PRESENT = 0xE0L;
+    private static final long CKR_TOKEN_NOT_RECOGNIZED = 0xE1L;
+    private static final long CKR_USER_NOT_LOGGED_IN = 0x101L;
+
     private SunPKCS11 pkcs11Provider;
     private KeyStore keyStore;
+    private CertificateIndex certificateIndex;
     private char[] pin;
     private String pkcs11LibPath;
+    private long slotListIndex;
+    private String keyStoreCacheKey;
     @Setter private String tokenSerial;
     @Setter  private String certSerialHex;
 
@@ -38,32 +45,73 @@ public class PKCS11KeyStore extends CertificateValidator {
         this.pin = pin.toCharArray();
 
         long slot = tokenSerial != null ? findSlotByTokenSerial() : 0; // if tokenSerial is null, use the first slot
-        String config = String.format("name=PKCS11\nlibrary=%s\nslotListIndex=%d", pkcs11LibPath, slot);
-        ByteArrayInputStream configStream = new ByteArrayInputStream(config.getBytes(StandardCharsets.UTF_8));
+        initSlot(slot);
+    }
 
-        pkcs11Provider = new SunPKCS11(configStream);
-        Security.addProvider(pkcs11Provider);
-        Security.addProvider(bcProvider);
+    /**
+     * Initializes the key store on an explicit slot list index, bypassing the token serial lookup.
+     *
+     * @param pkcs11LibPath  path to the PKCS#11 library
+     * @param pin            the token PIN
+     * @param slotListIndex  0-based index in the slot list
+     * @throws Exception if the provider or key store cannot be initialized
+     */
+    public void init(String pkcs11LibPath, String pin, long slotListIndex) throws Exception {
+        this.pkcs11LibPath = pkcs11LibPath;
+        this.pin = pin.toCharArray();
+        initSlot(slotListIndex);
+    }
+
+    /**
+     * Drops the provider and cached key store of this token, so the next {@code init} opens fresh sessions.
+     * Used to recover after the token reported an invalid session handle or was re-inserted.
+     */
+    public void invalidate() {
+        if (keyStore != null) CertificateIndex.invalidate(keyStore);
+        if (keyStoreCacheKey != null) KeyStoreCache.invalidate(keyStoreCacheKey);
+        if (pkcs11LibPath != null) {
+            ProviderRegistry.removePkcs11(pkcs11LibPath, slotListIndex);
+            TokenInventory.invalidate(pkcs11LibPath);
+        }
+
+        keyStore = null;
+        certificateIndex = null;
+        pkcs11Provider = null;
+    }
+
+    private void initSlot(long slot) throws Exception {
+        this.slotListIndex = slot;
+
+        pkcs11Provider = ProviderRegistry.getPkcs11(pkcs11LibPath, slot);
+        ProviderRegistry.getBouncyCastle();
+
+        String tokenId = tokenSerial != null ? tokenSerial : "slot" + slot;
+        keyStoreCacheKey = KeyStoreCache.pkcs11Key(pkcs11LibPath, tokenId, this.pin);
+        keyStore = KeyStoreCache.getOrLoad(keyStoreCacheKey, this::loadKeyStore);
+        certificateIndex = CertificateIndex.of(keyStore);
+    }
 
+    private KeyStore loadKeyStore() throws InvalidPINException {
+        KeyStore store;
         try {
-            keyStore = KeyStore.getInstance(PKCS11_TYPE, pkcs11Provider);
+            store = KeyStore.getInstance(PKCS11_TYPE, pkcs11Provider);
         } catch (KeyStoreException e) {
             throw new KeyStoreInitializationException("Failed to create KeyStore instance", e);
         }
 
         try {
-            keyStore.load(null, this.pin);
+            store.load(null, this.pin);
         } catch (IOException e) {
             throw new InvalidPINException("PIN is incorrect", e);
         } catch (NoSuchAlgorithmException | CertificateException e) {
             throw new KeyStoreInitializationException("KeyStore loading failed due to algorithm or certificate issues", e);
         }
+        return store;
     }
 
 
     public PublicKey getPublicKey(String serialHex) throws Exception {
-        String alias = findAliasByCertSerial(serialHex);
-        return keyStore.getCertificate(alias).getPublicKey();
+        return findEntryByCertSerial(serialHex).getCertificate().getPublicKey();
     }
 
     public PublicKey getPublicKey() throws Exception {
@@ -71,7 +119,7 @@ public class PKCS11KeyStore extends CertificateValidator {
     }
 
     public PrivateKey getPrivateKey(String serialHex) throws Exception {
-        String alias = findAliasByCertSerial(serialHex);
+        String alias = findEntryByCertSerial(serialHex).getAlias();
         try {
             Key key = keyStore.getKey(alias, pin);
             if (!(key instanceof PrivateKey)) {
@@ -81,6 +129,10 @@ public class PKCS11KeyStore extends CertificateValidator {
             return (PrivateKey) key;
         } catch (UnrecoverableKeyException e) {
             throw new InvalidPINException("PIN is incorrect.", e);
+        } catch (Exception e) {
+            // A cached login of a removed or re-inserted token; the next request logs in again
+            if (isSessionLost(e)) invalidate();
+            throw e;
         }
     }
 
@@ -89,10 +141,7 @@ public class PKCS11KeyStore extends CertificateValidator {
     }
 
     public X509Certificate[] getCertificateChain(String serialHex) throws Exception {
-        String alias = findAliasByCertSerial(serialHex);
-        return Arrays.stream(keyStore.getCertificateChain(alias))
-                .map(cert -> (X509Certificate) cert)
-                .toArray(X509Certificate[]::new);
+        return findEntryByCertSerial(serialHex).getCertificateChain().clone();
     }
 
     public X509Certificate[] getCertificateChain() throws Exception {
@@ -101,46 +150,74 @@ public class PKCS11KeyStore extends CertificateValidator {
 
 
     public X509Certificate getCertificate(String serialHex) throws Exception {
-        String alias = findAliasByCertSerial(serialHex);
-        return (X509Certificate) keyStore.getCertificate(alias);
+        return findEntryByCertSerial(serialHex).getCertificate();
     }
 
     public X509Certificate getCertificate() throws Exception {
         return getCertificate(certSerialHex);
     }
 
+    /**
+     * Cheap liveness probe of the token: asks the provider whether the signing certificate's alias is still
+     * present, which needs a working session.
+     *
+     * @return true if the token answered, false otherwise
+     */
+    public boolean isHealthy() {
+        if (keyStore == null) return false;
+        try {
+            return keyStore.containsAlias(findEntryByCertSerial(certSerialHex).getAlias());
+        } catch (Exception e) {
+            return false;
+        }
+    }
 
 
-    // Internal Helpers
 
-    private long findSlotByTokenSerial() throws Exception {
-        PKCS11 pkcs11 = PKCS11.getInstance(pkcs11LibPath, "C_GetFunctionList", null, false);
-        long[] slots = pkcs11.C_GetSlotList(true);
-
-        for (long slot : slots) {
-            CK_TOKEN_INFO info = pkcs11.C_GetTokenInfo(slot);
-            String serial = new String(info.serialNumber).trim();
-            if (serial.equalsIgnoreCase(tokenSerial)) {
-                return (slot-1); // because the slot index is 0-based
+    /**
+     * Checks whether the failure means the PKCS#11 session, or the token behind it, is gone. The key store
+     * and keys of this token are then useless until the token is opened again, see {@link #invalidate()}.
+     *
+     * @param error the failure, e.g. of a key operation with a key of this token
+     * @return true if the session or token was lost
+     */
+    public static boolean isSessionLost(Throwable error) {
+        for (Throwable t = error; t != null; t = t.getCause()) {
+            if (t instanceof PKCS11Exception) {
+                long code = ((PKCS11Exception) t).getErrorCode();
+                if (code == CKR_SESSION_HANDLE_INVALID
+                        || code == CKR_SESSION_CLOSED
+                        || code == CKR_DEVICE_REMOVED
+                        || code == CKR_DEVICE_ERROR
+                        || code == CKR_TOKEN_NOT_PRESENT
+                        || code == CKR_TOKEN_NOT_RECOGNIZED
+                        || code == CKR_USER_NOT_LOGGED_IN) {
+                    return true;
+                }
+            }
+            String message = t.getMessage();
+            if (message != null && (message.contains("CKR_SESSION_HANDLE_INVALID") || message.contains("CKR_DEVICE_REMOVED")
+                    || message.contains("CKR_TOKEN_NOT_PRESENT"))) {
+                return true;
             }
         }
+        return false;
+    }
 
-        throw new TokenNotFoundException("Token with serial " + tokenSerial + " not found");
+    // Internal Helpers
+
+    private long findSlotByTokenSerial() throws Exception {
+        return TokenInventory.findBySerial(pkcs11LibPath, tokenSerial).getSlotListIndex();
     }
 
-    private String findAliasByCertSerial(String serialHex) throws Exception {
-        Enumeration<String> aliases = keyStore.aliases();
-        while (aliases.hasMoreElements()) {
-            String alias = aliases.nextElement();
-            X509Certificate cert = (X509Certificate) keyStore.getCertificate(alias);
-            String certSerial = cert.getSerialNumber().toString(16);
-            if (certSerial.equalsIgnoreCase(serialHex)) {
-                if(isExpired(cert)) throw new CertificateExpiredException("Certificate with serial " + serialHex + " is expired");
-                if(!isDigitalSignature(cert)) throw new NotADigitalSignatureException("Certificate with serial " + serialHex + " is not a digital signature");
+    private CertificateIndex.IndexedEntry findEntryByCertSerial(String serialHex) throws Exception {
+        CertificateIndex.IndexedEntry entry = certificateIndex.find(serialHex);
+        if (entry == null) throw new CertificateNotFoundException("Certificate with serial " + serialHex + " not found");
 
-                return alias;
-            }
-        }
-        throw new CertificateNotFoundException("Certificate with serial " + serialHex + " not found");
+        X509Certificate cert = entry.getCertificate();
+        if(isExpired(cert)) throw new CertificateExpiredException("Certificate with serial " + serialHex + " is expired");
+        if(!isDigitalSignature(cert)) throw new NotADigitalSignatureException("Certificate with serial " + serialHex + " is not a digital signature");
+
+        return entry;
     }
 }
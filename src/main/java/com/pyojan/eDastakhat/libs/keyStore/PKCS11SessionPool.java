@@ -0,0 +1,344 @@
+package com.pyojan.eDastakhat.libs.keyStore;
+
+import com.pyojan.eDastakhat.exceptions.KeyStoreInitializationException;
+import com.pyojan.eDastakhat.libs.metrics.OperationalMetrics;
+import lombok.Getter;
+
+import java.security.PrivateKey;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A pool of PKCS#11 signing sessions spread over one or more slots of the same library.
+ * <p>
+ * A single {@link PKCS11KeyStore} is bound to one slot and gives one signing stream. Network HSMs and
+ * multi-token racks expose many slots, each able to run several operations at once. This pool opens one
+ * provider per slot and hands out a configurable number of sessions per slot to concurrent signers, so the
+ * device can run at its full rate.
+ * </p>
+ * When an operation fails with {@code CKR_SESSION_HANDLE_INVALID} (or the token was removed), the slot is
+ * reconnected and the operation retried once. Every {@code edastakhat.sessionPool.healthCheckSeconds}
+ * (default 60, 0 to disable) a background thread runs {@link #healthCheck()}, which probes every slot and
+ * reconnects the ones that stopped answering. {@link #execute} waits at most
+ * {@code edastakhat.sessionPool.acquireTimeoutSeconds} (default 60) for an idle session, so a hung or
+ * overloaded token fails the operation instead of blocking it forever.
+ * <p>
+ * The PDF and XML signing services take their keys from a {@link #shared shared} pool when
+ * {@code SigningCredentials.tokenSlots} is set, and run every key operation inside {@link #execute}.
+ * </p>
+ *
+ * <pre>{@code
+ * try (PKCS11SessionPool pool = new PKCS11SessionPool(lib, new long[]{0, 1, 2}, 4, pin, certSerial)) {
+ *     String signedBase64 = pool.execute(session -> signer.sign(reader, session.getProviderName(),
+ *             session.getPrivateKey(), session.getCertificateChain(), ...));
+ * }
+ * }</pre>
+ */
+public class PKCS11SessionPool implements AutoCloseable {
+
+    private static final ExpiringCache<PKCS11SessionPool> SHARED = new ExpiringCache<>(
+            "sessionPool",
+            Long.getLong("edastakhat.sessionPool.ttlSeconds", 600L) * 1000L,
+            Integer.getInteger("edastakhat.sessionPool.capacity", 4),
+            PKCS11SessionPool::closeInBackground
+    );
+
+    private static final long ACQUIRE_TIMEOUT_MILLIS = Long.getLong("edastakhat.sessionPool.acquireTimeoutSeconds", 60L) * 1000L;
+    private static final long HEALTH_CHECK_MILLIS = Long.getLong("edastakhat.sessionPool.healthCheckSeconds", 60L) * 1000L;
+
+    // One thread probes the slots of every pool; it is only started by the first pool
+    private static final ScheduledExecutorService HEALTH_CHECKER = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "eDastakhat-session-pool-health");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final String pkcs11LibPath;
+    private final String pin;
+    private final String certSerialHex;
+    private final List<SlotBackend> slots = new ArrayList<>();
+    private final BlockingQueue<Session> idleSessions = new LinkedBlockingQueue<>();
+    private final int totalSessions;
+    private final ScheduledFuture<?> healthCheckTask;
+    private volatile boolean closed;
+
+    /**
+     * Opens the pool.
+     *
+     * @param pkcs11LibPath   path to the PKCS#11 library
+     * @param slotListIndexes 0-based slot list indexes to use
+     * @param sessionsPerSlot number of concurrent sessions handed out per slot
+     * @param pin             the PIN, shared by all slots
+     * @param certSerialHex   serial of the signing certificate, present on every slot
+     * @throws Exception if a slot cannot be opened
+     */
+    public PKCS11SessionPool(String pkcs11LibPath, long[] slotListIndexes, int sessionsPerSlot, String pin, String certSerialHex) throws Exception {
+        if (slotListIndexes == null || slotListIndexes.length == 0) throw new IllegalArgumentException("At least one slot is required");
+        if (sessionsPerSlot < 1) throw new IllegalArgumentException("sessionsPerSlot must be at least 1");
+
+        this.pkcs11LibPath = pkcs11LibPath;
+        this.pin = pin;
+        this.certSerialHex = certSerialHex;
+
+        for (long slotListIndex : slotListIndexes) {
+            SlotBackend slot = new SlotBackend(slotListIndex);
+            slot.connect();
+            slots.add(slot);
+        }
+        // Interleave the slots, so a handful of concurrent signers is already spread over every slot
+        for (int i = 0; i < sessionsPerSlot; i++) {
+            for (SlotBackend slot : slots) idleSessions.add(new Session(slot));
+        }
+        this.totalSessions = idleSessions.size();
+        this.healthCheckTask = HEALTH_CHECK_MILLIS > 0
+                ? HEALTH_CHECKER.scheduleWithFixedDelay(this::healthCheck, HEALTH_CHECK_MILLIS, HEALTH_CHECK_MILLIS, TimeUnit.MILLISECONDS)
+                : null;
+    }
+
+    /**
+     * Returns the pool shared by all callers with the same library, slots, session count, PIN and
+     * certificate, opening it on first use. A shared pool unused for {@code edastakhat.sessionPool.ttlSeconds}
+     * (default 600), or pushed out by more than {@code edastakhat.sessionPool.capacity} pools (default 4),
+     * is closed in the background: it waits for its leased sessions to come back, then logs out of its
+     * slots.
+     *
+     * @param pkcs11LibPath   path to the PKCS#11 library
+     * @param slotListIndexes 0-based slot list indexes to use
+     * @param sessionsPerSlot number of concurrent sessions handed out per slot
+     * @param pin             the PIN, shared by all slots
+     * @param certSerialHex   serial of the signing certificate, present on every slot
+     * @return the shared pool
+     * @throws Exception if a slot cannot be opened
+     */
+    public static PKCS11SessionPool shared(String pkcs11LibPath, long[] slotListIndexes, int sessionsPerSlot, String pin, String certSerialHex) throws Exception {
+        String tokenId = "slots" + Arrays.toString(slotListIndexes) + "x" + sessionsPerSlot + "|" + certSerialHex;
+        String key = KeyStoreCache.pkcs11Key(pkcs11LibPath, tokenId, pin.toCharArray());
+        return SHARED.get(key, () -> new PKCS11SessionPool(pkcs11LibPath, slotListIndexes, sessionsPerSlot, pin, certSerialHex));
+    }
+
+    /**
+     * Work done with a pooled session.
+     */
+    @FunctionalInterface
+    public interface SessionCallback<T> {
+        T apply(Session session) throws Exception;
+    }
+
+    /**
+     * A session handed out by the pool. The key material always reflects the slot's current connection, so a
+     * session stays valid across reconnects.
+     */
+    public static final class Session {
+        private final SlotBackend slot;
+
+        private Session(SlotBackend slot) {
+            this.slot = slot;
+        }
+
+        public long getSlotListIndex() {
+            return slot.slotListIndex;
+        }
+
+        public String getProviderName() {
+            return slot.providerName;
+        }
+
+        public PrivateKey getPrivateKey() {
+            return slot.privateKey;
+        }
+
+        public X509Certificate[] getCertificateChain() {
+            return slot.certificateChain.clone();
+        }
+    }
+
+    /**
+     * Waits for an idle session.
+     *
+     * @param timeout how long to wait
+     * @param unit    the unit of the timeout
+     * @return an idle session, to be given back with {@link #release(Session)}
+     * @throws InterruptedException if interrupted while waiting
+     * @throws KeyStoreInitializationException if no session became idle in time or the pool is closed
+     */
+    public Session acquire(long timeout, TimeUnit unit) throws InterruptedException {
+        if (closed) throw new KeyStoreInitializationException("PKCS#11 session pool is closed");
+
+        Session session = idleSessions.poll();
+        if (session == null) {
+            // Queue depth of key operations waiting for the token
+            OperationalMetrics.keySessionWaitStarted();
+            try {
+                session = idleSessions.poll(timeout, unit);
+            } finally {
+                OperationalMetrics.keySessionWaitFinished();
+            }
+        }
+        if (session == null) {
+            throw new KeyStoreInitializationException(String.format(
+                    "No PKCS#11 session of slots %s became idle within %d ms. The token may be hung, or more "
+                            + "signers wait than the pool has sessions.", getSlotListIndexes(), unit.toMillis(timeout)));
+        }
+        return session;
+    }
+
+    /**
+     * Returns a session to the pool.
+     *
+     * @param session the session obtained from {@link #acquire(long, TimeUnit)}
+     */
+    public void release(Session session) {
+        if (session == null) return;
+
+        idleSessions.offer(session);
+        if (closed) {
+            synchronized (this) {
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Runs the callback with an idle session, reconnecting the slot and retrying once if the session handle
+     * turned out to be invalid. Waits at most {@code edastakhat.sessionPool.acquireTimeoutSeconds} for an
+     * idle session.
+     *
+     * @param callback the work to do
+     * @param <T>      the result type
+     * @return the callback result
+     * @throws KeyStoreInitializationException if no session became idle in time or the pool is closed
+     * @throws Exception if the callback fails
+     */
+    public <T> T execute(SessionCallback<T> callback) throws Exception {
+        Session session = acquire(ACQUIRE_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        try {
+            long generation = session.slot.generation;
+            try {
+                return callback.apply(session);
+            } catch (Exception e) {
+                if (!PKCS11KeyStore.isSessionLost(e)) throw e;
+
+                session.slot.reconnect(generation);
+                return callback.apply(session);
+            }
+        } finally {
+            release(session);
+        }
+    }
+
+    /**
+     * Probes every slot and reconnects the ones whose token no longer answers.
+     *
+     * @return the number of slots that were reconnected
+     */
+    public int healthCheck() {
+        int reconnected = 0;
+        for (SlotBackend slot : slots) {
+            long generation = slot.generation;
+            if (slot.keyStore.isHealthy()) continue;
+
+            try {
+                slot.reconnect(generation);
+                reconnected++;
+            } catch (Exception ignored) {
+                // Slot stays unhealthy, next health check or operation will try again
+            }
+        }
+        return reconnected;
+    }
+
+    /**
+     * @return the certificate chain of the signing certificate, as found on the first slot
+     */
+    public X509Certificate[] getCertificateChain() {
+        return slots.get(0).certificateChain.clone();
+    }
+
+    /**
+     * @return the slot list indexes served by this pool
+     */
+    public List<Long> getSlotListIndexes() {
+        List<Long> indexes = new ArrayList<>();
+        for (SlotBackend slot : slots) indexes.add(slot.slotListIndex);
+        return Collections.unmodifiableList(indexes);
+    }
+
+    /**
+     * Closes the pool: stops handing out sessions, waits up to the acquire timeout for the leased sessions
+     * to come back, then logs out of every slot.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        if (healthCheckTask != null) healthCheckTask.cancel(false);
+
+        long deadline = System.currentTimeMillis() + ACQUIRE_TIMEOUT_MILLIS;
+        synchronized (this) {
+            while (idleSessions.size() < totalSessions) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) break;
+                try {
+                    wait(remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        }
+        idleSessions.clear();
+        for (SlotBackend slot : slots) slot.keyStore.invalidate();
+    }
+
+    /**
+     * Closes an evicted shared pool without holding up the request that evicted it.
+     */
+    private static void closeInBackground(PKCS11SessionPool pool) {
+        Thread closer = new Thread(pool::close, "eDastakhat-session-pool-close");
+        closer.setDaemon(true);
+        closer.start();
+    }
+
+    private final class SlotBackend {
+        private final long slotListIndex;
+        private volatile PKCS11KeyStore keyStore;
+        private volatile String providerName;
+        private volatile PrivateKey privateKey;
+        private volatile X509Certificate[] certificateChain;
+        private volatile long generation;
+
+        private SlotBackend(long slotListIndex) {
+            this.slotListIndex = slotListIndex;
+        }
+
+        private void connect() throws Exception {
+            PKCS11KeyStore store = new PKCS11KeyStore();
+            store.setCertSerialHex(certSerialHex);
+            store.init(pkcs11LibPath, pin, slotListIndex);
+
+            privateKey = store.getPrivateKey();
+            certificateChain = store.getCertificateChain();
+            providerName = store.getProvider().getName();
+            keyStore = store;
+        }
+
+        /**
+         * Reconnects the slot unless another thread already did so since {@code seenGeneration}.
+         */
+        private synchronized void reconnect(long seenGeneration) throws Exception {
+            if (generation != seenGeneration) return;
+
+            keyStore.invalidate();
+            connect();
+            generation++;
+        }
+    }
+}
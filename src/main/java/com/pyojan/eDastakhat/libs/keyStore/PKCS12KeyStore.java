@@ -6,11 +6,12 @@ import com.pyojan.eDastakhat.exceptions.KeyStoreInitializationException;
 import com.pyojan.eDastakhat.exceptions.NotADigitalSignatureException;
 import lombok.*;
 import net.sf.oval.constraint.NotNull;
-import org.bouncycastle.jce.provider.BouncyCastleProvider;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.security.*;
 import java.security.cert.Certificate;
@@ -23,7 +24,7 @@ import java.util.Enumeration;
 public class PKCS12KeyStore extends CertificateValidator {
     @Setter @NotNull private String pkcs12FilePath;
     @Setter @NotNull private String pkcs12Password;
-    @Getter private final Provider provider = new BouncyCastleProvider();
+    @Getter private final Provider provider = ProviderRegistry.getBouncyCastle();
 
     private KeyStore keyStore;
 
@@ -40,9 +41,20 @@ public class PKCS12KeyStore extends CertificateValidator {
                 throw new IllegalArgumentException("PKCS#12 file path or password not provided.");
             }
 
-            Security.addProvider(provider);
-            keyStore = KeyStore.getInstance("PKCS12", provider);
-            keyStore.load(Files.newInputStream(Paths.get(pkcs12FilePath)), pkcs12Password.toCharArray());
+            Path path = Paths.get(pkcs12FilePath);
+            char[] password = pkcs12Password.toCharArray();
+            try {
+                // Loading decrypts every key of the file, so the unlocked store is kept in PrivateKeyCache only
+                keyStore = PrivateKeyCache.getInstance().getOrUnlock(KeyStoreCache.pkcs12Key(path, password), () -> {
+                    KeyStore store = KeyStore.getInstance("PKCS12", provider);
+                    try (InputStream in = Files.newInputStream(path)) {
+                        store.load(in, password);
+                    }
+                    return store;
+                });
+            } finally {
+                Arrays.fill(password, '\0');
+            }
         } catch (IOException e) {
             String fileName = new File(pkcs12FilePath).getName();
             if (e.getMessage() != null && e.getMessage().contains("PKCS12 key store mac invalid")) {
@@ -52,14 +64,17 @@ public class PKCS12KeyStore extends CertificateValidator {
             }
         } catch (CertificateException | NoSuchAlgorithmException | KeyStoreException e) {
             throw new KeyStoreInitializationException("Failed to initialize PKCS#12 KeyStore", e);
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new KeyStoreInitializationException("Failed to initialize PKCS#12 KeyStore", e);
         }
     }
 
     public PrivateKey getPrivateKey() {
         if(keyStore == null) throw new KeyStoreInitializationException("KeyStore not initialized yet, call loadKeyStore() first");
         try {
-            String alias = getFirstAlias();
-            return (PrivateKey) keyStore.getKey(alias, pkcs12Password.toCharArray());
+            return recoverKey(getFirstAlias());
         } catch (UnrecoverableKeyException e) {
             throw new RuntimeException("Unable to recover the private key from the PKCS#12 store", e);
         } catch (Exception e) {
@@ -70,8 +85,7 @@ public class PKCS12KeyStore extends CertificateValidator {
     public PrivateKey getPrivateKey(String certSerialHex) throws NotADigitalSignatureException {
         if(keyStore == null) throw new KeyStoreInitializationException("KeyStore not initialized yet, call loadKeyStore() first");
         try {
-            String alias = findAliasBySerialNumber(certSerialHex);
-            return (PrivateKey) keyStore.getKey(alias, pkcs12Password.toCharArray());
+            return recoverKey(findAliasBySerialNumber(certSerialHex));
         } catch (UnrecoverableKeyException e) {
             throw new RuntimeException("Unable to recover the private key for certificate with serial " + certSerialHex, e);
         } catch (Exception e) {
@@ -82,17 +96,17 @@ public class PKCS12KeyStore extends CertificateValidator {
     public X509Certificate[] getCertificateChain() {
         if(keyStore == null) throw new KeyStoreInitializationException("KeyStore not initialized yet, call loadKeyStore() first");
         try {
-            String alias = getFirstAlias();
-            X509Certificate cert = (X509Certificate) keyStore.getCertificate(alias);
+            X509Certificate[] chain = getChain(getFirstAlias());
 
-            if (!isDigitalSignature(cert)) {
-                throw new NotADigitalSignatureException("Default certificate with serial " + cert.getSerialNumber().toString(16) + " is not valid for digital signatures");
+            if (!isDigitalSignature(chain[0])) {
+                throw new NotADigitalSignatureException("Default certificate with serial " + chain[0].getSerialNumber().toString(16) + " is not valid for digital signatures");
             }
 
-            Certificate[] chain = keyStore.getCertificateChain(alias);
-            return Arrays.copyOf(chain, chain.length, X509Certificate[].class);
+            return chain;
 
-        } catch (KeyStoreException | NotADigitalSignatureException e) {
+        } catch (KeyStoreInitializationException | CertificateNotFoundException e) {
+            throw e;
+        } catch (Exception e) {
             throw new KeyStoreInitializationException("Failed to retrieve certificate chain from KeyStore or certificate is not a digital signature", e);
         }
     }
@@ -100,38 +114,46 @@ public class PKCS12KeyStore extends CertificateValidator {
     public X509Certificate[] getCertificateChain(String certSerialHex) {
         if(keyStore == null) throw new KeyStoreInitializationException("KeyStore not initialized yet, call loadKeyStore() first");
         try {
-            String alias = findAliasBySerialNumber(certSerialHex);
-            X509Certificate cert = (X509Certificate) keyStore.getCertificate(alias);
+            X509Certificate[] chain = getChain(findAliasBySerialNumber(certSerialHex));
 
-            if (!isDigitalSignature(cert)) {
+            if (!isDigitalSignature(chain[0])) {
                 throw new NotADigitalSignatureException("Certificate with serial " + certSerialHex + " is not valid for digital signatures");
             }
 
-            Certificate[] chain = keyStore.getCertificateChain(alias);
-            return Arrays.copyOf(chain, chain.length, X509Certificate[].class);
+            return chain;
 
-        } catch (KeyStoreException | NotADigitalSignatureException e) {
+        } catch (KeyStoreInitializationException | CertificateNotFoundException e) {
+            throw e;
+        } catch (Exception e) {
             throw new KeyStoreInitializationException("Failed to retrieve certificate chain from KeyStore or certificate is not a digital signature", e);
         }
     }
 
-    private String findAliasBySerialNumber(String certSerialHex) {
+    /**
+     * Reads a private key from the unlocked store. The password copy is wiped after use; the password
+     * String given by the caller cannot be wiped.
+     */
+    private PrivateKey recoverKey(String alias) throws GeneralSecurityException {
+        char[] password = pkcs12Password.toCharArray();
         try {
-            Enumeration<String> aliases = keyStore.aliases();
-            while (aliases.hasMoreElements()) {
-                String alias = aliases.nextElement();
-                Certificate cert = keyStore.getCertificate(alias);
-                if (cert instanceof X509Certificate) {
-                    X509Certificate x509 = (X509Certificate) cert;
-                    if (x509.getSerialNumber().toString(16).equalsIgnoreCase(certSerialHex)) {
-                        return alias;
-                    }
-                }
-            }
-        } catch (KeyStoreException e) {
-            throw new KeyStoreInitializationException("Error accessing aliases in KeyStore", e);
+            return (PrivateKey) keyStore.getKey(alias, password);
+        } finally {
+            Arrays.fill(password, '\0');
+        }
+    }
+
+    private X509Certificate[] getChain(String alias) throws KeyStoreException {
+        Certificate[] chain = keyStore.getCertificateChain(alias);
+        if (chain == null) chain = new Certificate[]{keyStore.getCertificate(alias)};
+        return Arrays.copyOf(chain, chain.length, X509Certificate[].class);
+    }
+
+    private String findAliasBySerialNumber(String certSerialHex) {
+        CertificateIndex.IndexedEntry entry = CertificateIndex.of(keyStore).find(certSerialHex);
+        if (entry == null) {
+            throw new CertificateNotFoundException("No certificate with serial " + certSerialHex + " found in PKCS#12 keystore.");
         }
-        throw new CertificateNotFoundException("No certificate with serial " + certSerialHex + " found in PKCS#12 keystore.");
+        return entry.getAlias();
     }
 
     private String getFirstAlias() throws KeyStoreException {
@@ -0,0 +1,77 @@
+package com.pyojan.eDastakhat.libs.keyStore;
+
+import java.security.KeyStore;
+
+/**
+ * In-process cache of unlocked PKCS#12 key stores with an idle TTL and a capacity cap.
+ * <p>
+ * Opening a PKCS#12 file with a high PBKDF iteration count takes hundreds of milliseconds. The BouncyCastle
+ * provider decrypts every key of the file while loading it, so the loaded store holds the unlocked keys and
+ * reading a key from it afterwards is a map lookup. This cache is therefore the one place unlocked PKCS#12
+ * keys are kept: it caches the loaded store, keyed like {@link KeyStoreCache#pkcs12Key}, so a signing
+ * service pays for the PBKDF once per file instead of once per document.
+ * </p>
+ * <p>
+ * Entries idle longer than the TTL, or pushed out by the capacity cap, are evicted: the cache drops the
+ * store and its certificate index, and the keys become unreachable once the requests using them finish.
+ * The BouncyCastle key classes do not implement {@link javax.security.auth.Destroyable#destroy()}, so their
+ * memory is reclaimed by the garbage collector rather than wiped.
+ * </p>
+ * The TTL and capacity can be tuned with the system properties {@code edastakhat.keyCache.ttlSeconds}
+ * (default 300) and {@code edastakhat.keyCache.capacity} (default 16).
+ */
+public final class PrivateKeyCache {
+
+    private static final PrivateKeyCache INSTANCE = new PrivateKeyCache(
+            Long.getLong("edastakhat.keyCache.ttlSeconds", 300L) * 1000L,
+            Integer.getInteger("edastakhat.keyCache.capacity", 16)
+    );
+
+    private final ExpiringCache<KeyStore> entries;
+
+    PrivateKeyCache(long idleTtlMillis, int capacity) {
+        this.entries = new ExpiringCache<>("privateKey", idleTtlMillis, capacity, CertificateIndex::invalidate);
+    }
+
+    public static PrivateKeyCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Loads and unlocks a key store.
+     */
+    @FunctionalInterface
+    public interface Unlocker {
+        KeyStore unlock() throws Exception;
+    }
+
+    /**
+     * Returns the cached unlocked store for the given key, unlocking it with the given unlocker on a miss or
+     * when the cached store has been idle longer than the TTL. The unlock runs outside the cache lock, so
+     * only requests for the same store wait for it.
+     *
+     * @param key      the cache key, see {@link KeyStoreCache#pkcs12Key}
+     * @param unlocker the unlocker invoked on a cache miss
+     * @return the unlocked key store
+     * @throws Exception if the unlocker fails
+     */
+    public KeyStore getOrUnlock(String key, Unlocker unlocker) throws Exception {
+        return entries.get(key, unlocker::unlock);
+    }
+
+    /**
+     * Evicts a single store.
+     *
+     * @param key the cache key
+     */
+    public void evict(String key) {
+        entries.invalidate(key);
+    }
+
+    /**
+     * Evicts all stores.
+     */
+    public void evictAll() {
+        entries.clear();
+    }
+}
@@ -0,0 +1,91 @@
+package com.pyojan.eDastakhat.libs.keyStore;
+
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import sun.security.pkcs11.SunPKCS11;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.Provider;
+import java.security.Security;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Process-wide registry of the JCA providers used by the key stores and verifiers.
+ * <p>
+ * Building a {@link BouncyCastleProvider} or a {@link SunPKCS11} provider is expensive, and registering
+ * the same provider again on every operation only grows the JCA provider list. This registry creates each
+ * provider once per JVM and registers it with {@link Security} at most once.
+ * </p>
+ */
+public final class ProviderRegistry {
+
+    private static final Map<String, SunPKCS11> PKCS11_PROVIDERS = new ConcurrentHashMap<>();
+    private static final AtomicInteger PKCS11_COUNTER = new AtomicInteger();
+
+    private ProviderRegistry() {
+        throw new UnsupportedOperationException("Utility class. Do not instantiate.");
+    }
+
+    /**
+     * Returns the shared BouncyCastle provider, registering it with {@link Security} on first use.
+     *
+     * @return the process-wide BouncyCastle provider
+     */
+    public static Provider getBouncyCastle() {
+        return BouncyCastleHolder.INSTANCE;
+    }
+
+    /**
+     * Returns the SunPKCS11 provider bound to the given library and slot index, creating and registering
+     * it on first use.
+     *
+     * @param pkcs11LibPath  path to the PKCS#11 library
+     * @param slotListIndex  0-based index in the slot list
+     * @return the cached SunPKCS11 provider for this library and slot
+     */
+    public static SunPKCS11 getPkcs11(String pkcs11LibPath, long slotListIndex) {
+        String key = pkcs11LibPath + "#" + slotListIndex;
+        return PKCS11_PROVIDERS.computeIfAbsent(key, k -> {
+            // Each provider needs a unique name, otherwise Security.addProvider ignores it
+            String config = String.format("name=eDastakhat%d\nlibrary=%s\nslotListIndex=%d",
+                    PKCS11_COUNTER.incrementAndGet(), pkcs11LibPath, slotListIndex);
+            SunPKCS11 provider = new SunPKCS11(new ByteArrayInputStream(config.getBytes(StandardCharsets.UTF_8)));
+            Security.addProvider(provider);
+            return provider;
+        });
+    }
+
+    /**
+     * Unregisters and forgets the SunPKCS11 provider bound to the given library and slot index. The next call
+     * to {@link #getPkcs11(String, long)} creates a new provider with new sessions.
+     *
+     * @param pkcs11LibPath  path to the PKCS#11 library
+     * @param slotListIndex  0-based index in the slot list
+     */
+    public static void removePkcs11(String pkcs11LibPath, long slotListIndex) {
+        SunPKCS11 provider = PKCS11_PROVIDERS.remove(pkcs11LibPath + "#" + slotListIndex);
+        if (provider == null) return;
+
+        try {
+            provider.logout();
+        } catch (Exception ignored) {
+            // Session is already gone, nothing to log out from
+        }
+        Security.removeProvider(provider.getName());
+    }
+
+    private static final class BouncyCastleHolder {
+        private static final Provider INSTANCE = register();
+
+        private static Provider register() {
+            Provider installed = Security.getProvider(BouncyCastleProvider.PROVIDER_NAME);
+            if (installed != null) return installed;
+
+            Provider provider = new BouncyCastleProvider();
+            Security.addProvider(provider);
+            return provider;
+        }
+    }
+}
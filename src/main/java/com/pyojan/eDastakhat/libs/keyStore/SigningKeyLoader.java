@@ -0,0 +1,115 @@
+package com.pyojan.eDastakhat.libs.keyStore;
+
+import com.pyojan.eDastakhat.exceptions.SignerException;
+import com.pyojan.eDastakhat.models.SigningCredentials;
+import com.pyojan.eDastakhat.utils.OSDetector;
+import lombok.Getter;
+
+import java.security.PrivateKey;
+import java.security.cert.X509Certificate;
+
+/**
+ * Loads the signing key named by {@link SigningCredentials}, for the PDF and the XML signers alike.
+ * <p>
+ * A PKCS#11 library takes precedence over a PFX file; with neither, the Windows certificate store is used.
+ * With token slots, the key is used through a shared {@link PKCS11SessionPool}. The certificate serial
+ * selects the certificate in every store; a PFX file without one uses its first key.
+ * </p>
+ */
+public final class SigningKeyLoader {
+
+    private SigningKeyLoader() {
+        throw new UnsupportedOperationException("Utility class. Do not instantiate.");
+    }
+
+    /**
+     * Loads the private key, its certificate chain and its provider.
+     *
+     * @param credentials where the key comes from, or null for the Windows certificate store
+     * @return the loaded key
+     * @throws SignerException if the store has no matching key, or the Windows store is used elsewhere
+     * @throws Exception if the key store cannot be opened
+     */
+    public static LoadedKey load(SigningCredentials credentials) throws Exception {
+        if (credentials == null) credentials = SigningCredentials.builder().build();
+        String certificateSerial = credentials.getCertificateSerial();
+
+        LoadedKey key;
+        if (credentials.getTokenLibraryPath() != null && credentials.getTokenSlots() != null && !credentials.getTokenSlots().isEmpty()) {
+            // Several slots of one library: each key operation borrows a session of the shared pool
+            PKCS11SessionPool sessionPool = PKCS11SessionPool.shared(
+                    credentials.getTokenLibraryPath(),
+                    credentials.getTokenSlots().stream().mapToLong(Long::longValue).toArray(),
+                    credentials.getSessionsPerSlot() == null ? 1 : credentials.getSessionsPerSlot(),
+                    credentials.getPin(),
+                    certificateSerial
+            );
+            key = new LoadedKey(null, null, sessionPool.getCertificateChain(), null, sessionPool);
+        } else if (credentials.getTokenLibraryPath() != null) {
+            PKCS11KeyStore pkcs11KeyStore = new PKCS11KeyStore();
+            if (credentials.getTokenSerial() != null) pkcs11KeyStore.setTokenSerial(credentials.getTokenSerial()); // Token Serial is optional
+            pkcs11KeyStore.setCertSerialHex(certificateSerial);
+            pkcs11KeyStore.init(credentials.getTokenLibraryPath(), credentials.getPin());
+
+            key = new LoadedKey(pkcs11KeyStore.getPrivateKey(), pkcs11KeyStore.getProvider().getName(),
+                    pkcs11KeyStore.getCertificateChain(), pkcs11KeyStore, null);
+        } else if (credentials.getPfxPath() != null) {
+            PKCS12KeyStore pkcs12KeyStore = new PKCS12KeyStore(credentials.getPfxPath(), credentials.getPin());
+            boolean hasSerial = certificateSerial != null;
+
+            key = new LoadedKey(
+                    hasSerial ? pkcs12KeyStore.getPrivateKey(certificateSerial) : pkcs12KeyStore.getPrivateKey(),
+                    pkcs12KeyStore.getProvider().getName(),
+                    hasSerial ? pkcs12KeyStore.getCertificateChain(certificateSerial) : pkcs12KeyStore.getCertificateChain(),
+                    null, null);
+        } else {
+            if (!OSDetector.isWindows()) throw new SignerException("Only Windows is supported for this operation. Please use --t or --pf argument.");
+
+            WindowKeyStore windowKeyStore = new WindowKeyStore();
+            windowKeyStore.setSerialHex(certificateSerial);
+
+            key = new LoadedKey(windowKeyStore.getPrivateKey(), windowKeyStore.getProvider(),
+                    windowKeyStore.getCertificateChain(), null, null);
+        }
+
+        if (key.certificateChain == null || key.certificateChain.length == 0) throw new SignerException("Unable to find certificate chain, please try again with correct arguments");
+        if (key.sessionPool != null) return key;
+        if (key.privateKey == null) throw new SignerException("Unable to find private key, please try again with correct arguments");
+        if (key.provider == null) throw new SignerException("Unable to find provider, please try again.");
+        return key;
+    }
+
+    /**
+     * A private key with its certificate chain and the name of the provider that performs its operations.
+     * A key spread over several token slots has no single private key; each operation borrows a session of
+     * its session pool instead.
+     */
+    @Getter
+    public static final class LoadedKey {
+        // Null with a session pool
+        private final PrivateKey privateKey;
+        // Null with a session pool
+        private final String provider;
+        private final X509Certificate[] certificateChain;
+        // The token the key lives on, or null for a PFX file, the Windows store or a session pool
+        private final PKCS11KeyStore token;
+        // The sessions the key is used through, or null for a single key
+        private final PKCS11SessionPool sessionPool;
+
+        private LoadedKey(PrivateKey privateKey, String provider, X509Certificate[] certificateChain,
+                          PKCS11KeyStore token, PKCS11SessionPool sessionPool) {
+            this.privateKey = privateKey;
+            this.provider = provider;
+            this.certificateChain = certificateChain;
+            this.token = token;
+            this.sessionPool = sessionPool;
+        }
+
+        /**
+         * @return the signing certificate, the first of the chain
+         */
+        public X509Certificate getCertificate() {
+            return certificateChain[0];
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package com.pyojan.eDastakhat.libs.keyStore;
+
+import com.pyojan.eDastakhat.exceptions.TokenNotFoundException;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import sun.security.pkcs11.wrapper.CK_SLOT_INFO;
+import sun.security.pkcs11.wrapper.CK_TOKEN_INFO;
+import sun.security.pkcs11.wrapper.PKCS11;
+import sun.security.pkcs11.wrapper.PKCS11Exception;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Inventory of the tokens present in the slots of a PKCS#11 library.
+ * <p>
+ * Enumerating slots ({@code C_GetSlotList}) and reading every token's info ({@code C_GetTokenInfo}) is slow
+ * with several tokens plugged in, and used to run on every signing call before the provider was built. The
+ * inventory enumerates once per library and serves lookups by token serial from a cache. The cache is
+ * refreshed when the set of occupied slots changes (token inserted or removed) and dropped when a session
+ * on one of its tokens fails, see {@link #invalidate(String)}.
+ * </p>
+ */
+public final class TokenInventory {
+
+    private static final Map<String, Inventory> INVENTORIES = new ConcurrentHashMap<>();
+
+    private TokenInventory() {
+        throw new UnsupportedOperationException("Utility class. Do not instantiate.");
+    }
+
+    /**
+     * A token found in a slot.
+     */
+    @Getter
+    @AllArgsConstructor
+    public static class TokenInfo {
+        private final long slotId;
+        private final long slotListIndex;
+        private final String serialNumber;
+        private final String label;
+        private final String manufacturer;
+        private final String model;
+        private final String slotDescription;
+    }
+
+    /**
+     * Lists the tokens present in the slots of the given library.
+     *
+     * @param pkcs11LibPath path to the PKCS#11 library
+     * @return the tokens, in slot order
+     * @throws Exception if the library cannot be queried
+     */
+    public static List<TokenInfo> listTokens(String pkcs11LibPath) throws Exception {
+        return Collections.unmodifiableList(new ArrayList<>(getInventory(pkcs11LibPath).tokensBySerial.values()));
+    }
+
+    /**
+     * Finds the token with the given serial number.
+     *
+     * @param pkcs11LibPath path to the PKCS#11 library
+     * @param tokenSerial   the token serial number, case-insensitive
+     * @return the token
+     * @throws TokenNotFoundException if no present token has this serial
+     * @throws Exception if the library cannot be queried
+     */
+    public static TokenInfo findBySerial(String pkcs11LibPath, String tokenSerial) throws Exception {
+        TokenInfo token = getInventory(pkcs11LibPath).tokensBySerial.get(tokenSerial.trim().toUpperCase());
+        if (token == null) throw new TokenNotFoundException("Token with serial " + tokenSerial + " not found");
+        return token;
+    }
+
+    /**
+     * Drops the cached inventory of the given library, so the next lookup enumerates the slots again.
+     *
+     * @param pkcs11LibPath path to the PKCS#11 library
+     */
+    public static void invalidate(String pkcs11LibPath) {
+        INVENTORIES.remove(pkcs11LibPath);
+    }
+
+    private static final class Inventory {
+        private final long[] slotIds;
+        private final Map<String, TokenInfo> tokensBySerial;
+
+        private Inventory(long[] slotIds, Map<String, TokenInfo> tokensBySerial) {
+            this.slotIds = slotIds;
+            this.tokensBySerial = tokensBySerial;
+        }
+    }
+
+    /**
+     * Returns the cached inventory of the library. A single {@code C_GetSlotList} call detects slot events:
+     * if the set of slots with a token present changed since the last enumeration, the tokens are read again.
+     * Otherwise no {@code C_GetTokenInfo} call is made.
+     */
+    private static Inventory getInventory(String pkcs11LibPath) throws Exception {
+        PKCS11 pkcs11 = PKCS11.getInstance(pkcs11LibPath, "C_GetFunctionList", null, false);
+        long[] slotIds = pkcs11.C_GetSlotList(true);
+
+        Inventory inventory = INVENTORIES.get(pkcs11LibPath);
+        if (inventory != null && Arrays.equals(inventory.slotIds, slotIds)) return inventory;
+
+        inventory = new Inventory(slotIds, enumerate(pkcs11, slotIds));
+        INVENTORIES.put(pkcs11LibPath, inventory);
+        return inventory;
+    }
+
+    private static Map<String, TokenInfo> enumerate(PKCS11 pkcs11, long[] slotIds) throws PKCS11Exception {
+        Map<String, TokenInfo> inventory = new LinkedHashMap<>();
+
+        // SunPKCS11's slotListIndex is the position in the list of all slots, empty ones included;
+        // slot IDs themselves are arbitrary and need not be contiguous
+        long[] allSlotIds = pkcs11.C_GetSlotList(false);
+        for (int slotListIndex = 0; slotListIndex < allSlotIds.length; slotListIndex++) {
+            long slot = allSlotIds[slotListIndex];
+            if (!contains(slotIds, slot)) continue;
+
+            CK_TOKEN_INFO info = pkcs11.C_GetTokenInfo(slot);
+            CK_SLOT_INFO slotInfo = pkcs11.C_GetSlotInfo(slot);
+            String serial = new String(info.serialNumber).trim();
+
+            inventory.put(serial.toUpperCase(), new TokenInfo(
+                    slot,
+                    slotListIndex,
+                    serial,
+                    new String(info.label).trim(),
+                    new String(info.manufacturerID).trim(),
+                    new String(info.model).trim(),
+                    new String(slotInfo.slotDescription).trim()
+            ));
+        }
+
+        return inventory;
+    }
+
+    private static boolean contains(long[] values, long value) {
+        for (long v : values) {
+            if (v == value) return true;
+        }
+        return false;
+    }
+}
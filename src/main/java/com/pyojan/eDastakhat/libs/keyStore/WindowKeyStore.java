@@ -6,31 +6,28 @@ import com.pyojan.eDastakhat.exceptions.NotADigitalSignatureException;
 import com.pyojan.eDastakhat.exceptions.PrivateKeyAccessException;
 import lombok.Getter;
 import lombok.Setter;
-import org.bouncycastle.jce.provider.BouncyCastleProvider;
 
 import java.io.IOException;
 import java.security.*;
-import java.security.cert.Certificate;
 import java.security.cert.CertificateExpiredException;
 import java.security.cert.X509Certificate;
 import java.security.cert.CertificateException;
-import java.util.Arrays;
-import java.util.Enumeration;
 
 public class WindowKeyStore extends CertificateValidator {
 
     private final KeyStore keyStore;
+    private final CertificateIndex certificateIndex;
 
     @Getter private final String provider = "SunMSCAPI";
-    @Getter private final BouncyCastleProvider cryptoProvider = new BouncyCastleProvider();
+    @Getter private final Provider cryptoProvider = ProviderRegistry.getBouncyCastle();
 
     @Setter private String serialHex;
 
     public WindowKeyStore() throws KeyStoreInitializationException {
         try {
-            Security.addProvider(cryptoProvider);
             this.keyStore = KeyStore.getInstance("Windows-MY", provider);
             this.keyStore.load(null, null);
+            this.certificateIndex = CertificateIndex.of(keyStore);
         } catch (KeyStoreException | NoSuchProviderException e) {
             throw new KeyStoreInitializationException("Failed to initialize KeyStore: " + e.getMessage(), e);
         } catch (IOException | NoSuchAlgorithmException | CertificateException e) {
@@ -39,29 +36,16 @@ public class WindowKeyStore extends CertificateValidator {
     }
 
     public X509Certificate getCertificate() throws KeyStoreInitializationException, CertificateNotFoundException {
-        try {
-            String alias = findAliasByCertSerial(serialHex);
-            Certificate cert = keyStore.getCertificate(alias);
-            if (cert instanceof X509Certificate) {
-                return (X509Certificate) cert;
-            } else {
-                throw new CertificateNotFoundException("Certificate not found or not X509");
-            }
-        } catch (KeyStoreException e) {
-            throw new KeyStoreInitializationException("Failed to fetch certificate: " + e.getMessage(), e);
-        }
+        return findEntryByCertSerial(serialHex).getCertificate();
     }
 
     public X509Certificate[] getCertificateChain() throws Exception {
-        String alias = findAliasByCertSerial(serialHex);
-        return Arrays.stream(keyStore.getCertificateChain(alias))
-                .map(cert -> (X509Certificate) cert)
-                .toArray(X509Certificate[]::new);
+        return findEntryByCertSerial(serialHex).getCertificateChain().clone();
     }
 
     public PrivateKey getPrivateKey() throws KeyStoreInitializationException, CertificateNotFoundException, PrivateKeyAccessException {
         try {
-            String alias = findAliasByCertSerial(serialHex);
+            String alias = findEntryByCertSerial(serialHex).getAlias();
             return (PrivateKey) keyStore.getKey(alias, null);
         } catch (UnrecoverableKeyException e) {
             throw new PrivateKeyAccessException("Invalid PIN or access denied to private key", e);
@@ -70,26 +54,15 @@ public class WindowKeyStore extends CertificateValidator {
         }
     }
 
-    private String findAliasByCertSerial(String serialHex) throws CertificateNotFoundException, KeyStoreInitializationException {
-        try {
-            Enumeration<String> aliases = keyStore.aliases();
-            while (aliases.hasMoreElements()) {
-                String alias = aliases.nextElement();
-                Certificate cert = keyStore.getCertificate(alias);
-                if (cert instanceof X509Certificate) {
-                    String serial = ((X509Certificate) cert).getSerialNumber().toString(16);
-                    String providedSerialHex = serialHex.startsWith("0") ? serialHex.substring(1) : serialHex;
+    private CertificateIndex.IndexedEntry findEntryByCertSerial(String serialHex) throws CertificateNotFoundException {
+        CertificateIndex.IndexedEntry entry = certificateIndex.find(serialHex);
+        if (entry == null) throw new CertificateNotFoundException(String.format("Certificate with serial %s not found", serialHex));
 
-                    if (serial.equalsIgnoreCase(providedSerialHex)) {
-                        if(isExpired((X509Certificate) cert)) throw new CertificateExpiredException("Certificate with serial " + serialHex + " is expired");
-                        if(!isDigitalSignature((X509Certificate) cert)) throw new NotADigitalSignatureException("Certificate with serial " + serialHex + " is not a digital signature");
-                        return alias;
-                    }
-                }
-            }
-            throw new CertificateNotFoundException(String.format("Certificate with serial %s not found", serialHex));
-        } catch (KeyStoreException e) {
-            throw new KeyStoreInitializationException("Error searching for alias", e);
+        try {
+            X509Certificate cert = entry.getCertificate();
+            if(isExpired(cert)) throw new CertificateExpiredException("Certificate with serial " + serialHex + " is expired");
+            if(!isDigitalSignature(cert)) throw new NotADigitalSignatureException("Certificate with serial " + serialHex + " is not a digital signature");
+            return entry;
         } catch (CertificateExpiredException | NotADigitalSignatureException e) {
             throw new RuntimeException(e);
         }
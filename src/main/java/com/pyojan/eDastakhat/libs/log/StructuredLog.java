@@ -0,0 +1,295 @@
+package com.pyojan.eDastakhat.libs.log;
+
+import com.google.gson.Gson;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Asynchronous structured log that writes one JSON object per line.
+ * <p>
+ * Logging is off until {@link #configure(Writer, Level)} is called. Callers build the entry and hand it
+ * to a bounded queue without waiting; a single daemon thread serializes and writes the entries. When the
+ * queue is full, entries are dropped and counted instead of blocking the signing thread, and a failing
+ * destination is ignored. Logging never throws and never ends the process. A shutdown hook drains the
+ * queue for up to two seconds, so entries logged just before {@code System.exit} are written.
+ * <p>
+ * Each entry carries the correlation ID of the job running on the current thread, see
+ * {@link #beginJob(String)}, so the lines of one signing job can be picked out of a shared log and matched
+ * with the {@code correlationId} of its JSON response.
+ */
+public final class StructuredLog {
+
+    /**
+     * Severity of a log entry.
+     */
+    public enum Level { DEBUG, INFO, WARN, ERROR }
+
+    private static final int QUEUE_CAPACITY = 8192;
+    private static final long SHUTDOWN_DRAIN_MILLIS = 2000;
+    private static final Gson GSON = new Gson();
+    private static final ThreadLocal<Job> CURRENT_JOB = new ThreadLocal<>();
+
+    private static final BlockingQueue<Map<String, Object>> QUEUE = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private static final AtomicLong DROPPED = new AtomicLong();
+
+    private static volatile Writer destination;
+    private static volatile Level minLevel = Level.INFO;
+    private static Thread writerThread;
+
+    private StructuredLog() {
+        throw new UnsupportedOperationException("Utility class. Do not instantiate.");
+    }
+
+    /**
+     * Turns logging on, or switches its destination.
+     *
+     * @param writer Where to write the JSON lines; the log flushes it after each batch of entries
+     * @param level  The lowest level to write
+     */
+    public static synchronized void configure(Writer writer, Level level) {
+        destination = writer;
+        minLevel = level == null ? Level.INFO : level;
+        if (writerThread == null) {
+            writerThread = new Thread(StructuredLog::drainForever, "eDastakhat-log");
+            writerThread.setDaemon(true);
+            writerThread.start();
+            Runtime.getRuntime().addShutdownHook(new Thread(StructuredLog::drainOnShutdown, "eDastakhat-log-shutdown"));
+        }
+    }
+
+    /**
+     * @param level The level to check
+     * @return True if entries of the given level are written
+     */
+    public static boolean isEnabled(Level level) {
+        return destination != null && level.compareTo(minLevel) >= 0;
+    }
+
+    /**
+     * Starts a job on the current thread with a new correlation ID. The job of the enclosing scope, if any,
+     * is recorded as the parent and restored when the returned scope is closed.
+     *
+     * @param kind What the job does, e.g. "pdf-sign" or "xml-batch"
+     * @return The job scope, to be closed in a finally block or try-with-resources
+     */
+    public static Job beginJob(String kind) {
+        return beginJob(kind, currentJobId());
+    }
+
+    /**
+     * Starts a job on the current thread with a new correlation ID and an explicit parent, for work handed
+     * to another thread.
+     *
+     * @param kind        What the job does
+     * @param parentJobId Correlation ID of the job that started this one, or null
+     * @return The job scope
+     */
+    public static Job beginJob(String kind, String parentJobId) {
+        Job job = new Job(kind, UUID.randomUUID().toString(), parentJobId, CURRENT_JOB.get(), System.nanoTime());
+        CURRENT_JOB.set(job);
+        return job;
+    }
+
+    /**
+     * @return The job running on the current thread, or null; pass it to another thread and call
+     *         {@link Job#attach()} there to log under the same correlation ID
+     */
+    public static Job currentJob() {
+        return CURRENT_JOB.get();
+    }
+
+    /**
+     * @return The correlation ID of the job running on the current thread, or null
+     */
+    public static String currentJobId() {
+        Job job = CURRENT_JOB.get();
+        return job == null ? null : job.id;
+    }
+
+    /**
+     * @return Milliseconds since the current thread's job started, or -1 without a job
+     */
+    public static long currentJobElapsedMillis() {
+        Job job = CURRENT_JOB.get();
+        return job == null ? -1 : TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - job.startNanos);
+    }
+
+    /**
+     * Queues a DEBUG entry, see {@link #log(Level, String, Throwable, Object...)}.
+     */
+    public static void debug(String event, Object... fields) {
+        log(Level.DEBUG, event, null, fields);
+    }
+
+    /**
+     * Queues a INFO entry, see {@link #log(Level, String, Throwable, Object...)}.
+     */
+    public static void info(String event, Object... fields) {
+        log(Level.INFO, event, null, fields);
+    }
+
+    /**
+     * Queues a WARN entry, see {@link #log(Level, String, Throwable, Object...)}.
+     */
+    public static void warn(String event, Object... fields) {
+        log(Level.WARN, event, null, fields);
+    }
+
+    /**
+     * Queues an ERROR entry with the exception, see {@link #log(Level, String, Throwable, Object...)}.
+     */
+    public static void error(String event, Throwable error, Object... fields) {
+        log(Level.ERROR, event, error, fields);
+    }
+
+    /**
+     * Queues an entry without blocking.
+     *
+     * @param level  Severity
+     * @param event  Short dotted name of what happened, e.g. "stage.slow"
+     * @param error  Exception to include with its stack trace, or null
+     * @param fields Alternating field names and values; values must be immutable or no longer modified
+     */
+    public static void log(Level level, String event, Throwable error, Object... fields) {
+        if (!isEnabled(level)) return;
+        try {
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("ts", Instant.now().toString());
+            entry.put("level", level.name());
+            entry.put("event", event);
+            Job job = CURRENT_JOB.get();
+            if (job != null) {
+                entry.put("correlationId", job.id);
+                if (job.parentId != null) entry.put("parentCorrelationId", job.parentId);
+                entry.put("job", job.kind);
+            }
+            entry.put("thread", Thread.currentThread().getName());
+            for (int i = 0; i + 1 < fields.length; i += 2) {
+                entry.put(String.valueOf(fields[i]), fields[i + 1]);
+            }
+            if (error != null) {
+                entry.put("error", error.getClass().getName());
+                entry.put("message", error.getMessage());
+                StringWriter stackTrace = new StringWriter();
+                error.printStackTrace(new PrintWriter(stackTrace));
+                entry.put("stackTrace", stackTrace.toString());
+            }
+            if (!QUEUE.offer(entry)) DROPPED.incrementAndGet();
+        } catch (RuntimeException e) {
+            // Logging must never fail the caller
+            DROPPED.incrementAndGet();
+        }
+    }
+
+    private static void drainForever() {
+        List<Map<String, Object>> batch = new ArrayList<>();
+        while (true) {
+            try {
+                batch.add(QUEUE.take());
+            } catch (InterruptedException e) {
+                return;
+            }
+            QUEUE.drainTo(batch);
+            write(batch);
+            batch.clear();
+        }
+    }
+
+    private static void drainOnShutdown() {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(SHUTDOWN_DRAIN_MILLIS);
+        List<Map<String, Object>> batch = new ArrayList<>();
+        while (!QUEUE.isEmpty() && System.nanoTime() < deadline) {
+            QUEUE.drainTo(batch);
+            write(batch);
+            batch.clear();
+        }
+        long dropped = DROPPED.getAndSet(0);
+        if (dropped > 0) {
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("ts", Instant.now().toString());
+            entry.put("level", Level.WARN.name());
+            entry.put("event", "log.dropped");
+            entry.put("count", dropped);
+            batch.add(entry);
+            write(batch);
+        }
+    }
+
+    private static synchronized void write(List<Map<String, Object>> batch) {
+        Writer writer = destination;
+        if (writer == null || batch.isEmpty()) return;
+        try {
+            for (Map<String, Object> entry : batch) {
+                String json;
+                try {
+                    json = GSON.toJson(entry);
+                } catch (RuntimeException e) {
+                    DROPPED.incrementAndGet();
+                    continue;
+                }
+                writer.write(json);
+                writer.write(System.lineSeparator());
+            }
+            writer.flush();
+        } catch (IOException e) {
+            // The destination is gone; keep the process running
+            DROPPED.addAndGet(batch.size());
+        }
+    }
+
+    /**
+     * A job running on the current thread. Closing it restores the enclosing job.
+     */
+    public static final class Job implements AutoCloseable {
+        private final String kind;
+        private final String id;
+        private final String parentId;
+        private final Job previous;
+        private final long startNanos;
+
+        private Job(String kind, String id, String parentId, Job previous, long startNanos) {
+            this.kind = kind;
+            this.id = id;
+            this.parentId = parentId;
+            this.previous = previous;
+            this.startNanos = startNanos;
+        }
+
+        /**
+         * Continues this job on the current thread, e.g. in a stage of an asynchronous pipeline.
+         *
+         * @return A scope with the same correlation ID, to be closed when the thread's part is done
+         */
+        public Job attach() {
+            Job attached = new Job(kind, id, parentId, CURRENT_JOB.get(), startNanos);
+            CURRENT_JOB.set(attached);
+            return attached;
+        }
+
+        /**
+         * @return The correlation ID of this job
+         */
+        public String getId() {
+            return id;
+        }
+
+        @Override
+        public void close() {
+            if (previous == null) CURRENT_JOB.remove();
+            else CURRENT_JOB.set(previous);
+        }
+    }
+}
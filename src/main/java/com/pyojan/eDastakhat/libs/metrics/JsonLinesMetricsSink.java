@@ -0,0 +1,42 @@
+package com.pyojan.eDastakhat.libs.metrics;
+
+import com.google.gson.Gson;
+import com.pyojan.eDastakhat.models.SigningMetrics;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Appends the metrics of each operation to a file as one JSON object per line, so runs can be collected
+ * and compared with standard JSON Lines tooling.
+ */
+public class JsonLinesMetricsSink implements MetricsSink {
+
+    private static final Gson GSON = new Gson();
+
+    private final Path file;
+
+    /**
+     * @param file The file to append to; it and its parent directories are created when missing
+     */
+    public JsonLinesMetricsSink(Path file) {
+        this.file = file;
+    }
+
+    @Override
+    public synchronized void publish(SigningMetrics metrics) throws IOException {
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null && !Files.exists(parent)) {
+            Files.createDirectories(parent);
+        }
+        try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            writer.write(GSON.toJson(metrics));
+            writer.write(System.lineSeparator());
+        }
+    }
+}
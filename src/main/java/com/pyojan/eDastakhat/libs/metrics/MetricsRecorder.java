@@ -0,0 +1,374 @@
+package com.pyojan.eDastakhat.libs.metrics;
+
+import com.pyojan.eDastakhat.libs.log.StructuredLog;
+import com.pyojan.eDastakhat.models.SigningMetrics;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.ServiceLoader;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records wall time, bytes read and written, and allocated bytes for the stages of one signing operation.
+ * <p>
+ * Stages are opened with {@link #stage(String)} in a try-with-resources block. A stage that runs several
+ * times, such as the signature of each page, is reported once with its count and summed totals. Nested
+ * stages are named {@code parent.child}. Allocated bytes come from the current thread's allocation
+ * counter and are only reported on JVMs that expose it ({@code com.sun.management.ThreadMXBean}).
+ * <p>
+ * {@link #finish()} builds the {@link SigningMetrics} and publishes them to every registered
+ * {@link MetricsSink}. Stages of one operation may run on different threads, e.g. in an asynchronous
+ * pipeline; a stage is nested in the innermost stage open on the same thread. The operation's allocated
+ * bytes are only reported when it finishes on the thread that started it. {@link #disabled()} returns a
+ * shared recorder that keeps no per-operation data, for callers that did not ask for metrics.
+ * Every recorder, disabled or not, reports stage durations to the process-wide {@link OperationalMetrics}.
+ * <p>
+ * When a slow-stage threshold is set, see {@link #setSlowStageThresholdMillis(long)}, a stage that takes
+ * longer logs a {@code stage.slow} entry to the {@link StructuredLog} with the time spent in each of its
+ * nested stages, and an operation that takes longer logs {@code operation.slow} with its full metrics.
+ */
+public final class MetricsRecorder {
+
+    private static final com.sun.management.ThreadMXBean ALLOCATION_COUNTER = detectAllocationCounter();
+    private static final List<MetricsSink> SINKS = new CopyOnWriteArrayList<>(loadSinks());
+    private static final MetricsRecorder DISABLED = new MetricsRecorder(null, false);
+    private static volatile long slowStageThresholdNanos = -1;
+
+    private final String operation;
+    private final boolean enabled;
+    private final Instant startedAt = Instant.now();
+    private final long startNanos = System.nanoTime();
+    private final long startAllocated;
+    private final Thread startThread = Thread.currentThread();
+    private final Map<String, StageTotals> stages = new LinkedHashMap<>();
+    private final Deque<Stage> openStages = new ArrayDeque<>();
+    private long bytesRead;
+    private long bytesWritten;
+
+    private MetricsRecorder(String operation, boolean enabled) {
+        this.operation = operation;
+        this.enabled = enabled;
+        this.startAllocated = enabled ? allocatedBytes() : 0;
+    }
+
+    /**
+     * Starts recording an operation on the current thread.
+     *
+     * @param operation Name of the operation, e.g. "pdf-sign"
+     * @return A new recorder
+     */
+    public static MetricsRecorder start(String operation) {
+        return new MetricsRecorder(operation, true);
+    }
+
+    /**
+     * @return A shared recorder whose stages only feed {@link OperationalMetrics} and whose
+     *         {@link #finish()} returns null
+     */
+    public static MetricsRecorder disabled() {
+        return DISABLED;
+    }
+
+    /**
+     * Registers a sink that receives the metrics of every operation finished after this call.
+     *
+     * @param sink The sink to add
+     */
+    public static void addSink(MetricsSink sink) {
+        if (sink != null) SINKS.add(sink);
+    }
+
+    /**
+     * Removes a sink added with {@link #addSink(MetricsSink)}.
+     *
+     * @param sink The sink to remove
+     */
+    public static void removeSink(MetricsSink sink) {
+        SINKS.remove(sink);
+    }
+
+    /**
+     * @return True if at least one sink is registered
+     */
+    public static boolean hasSinks() {
+        return !SINKS.isEmpty();
+    }
+
+    /**
+     * Sets the duration above which stages and operations are logged with their timing breakdown.
+     *
+     * @param millis The threshold in milliseconds, or a negative value to stop logging slow stages
+     */
+    public static void setSlowStageThresholdMillis(long millis) {
+        slowStageThresholdNanos = millis < 0 ? -1 : TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+
+    /**
+     * @return True if slow stages are logged
+     */
+    public static boolean isSlowStageLoggingEnabled() {
+        return slowStageThresholdNanos >= 0 && StructuredLog.isEnabled(StructuredLog.Level.WARN);
+    }
+
+    /**
+     * @return True if this recorder measures its stages
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Opens a stage. Close it, normally with try-with-resources, when the stage is over.
+     *
+     * @param name Name of the stage; use {@code parent.child} for stages nested in another one
+     * @return The open stage
+     */
+    public Stage stage(String name) {
+        if (!enabled) return new Stage(null, null, name);
+        synchronized (this) {
+            // Report stages in the order they were first opened, parents before their children
+            stages.computeIfAbsent(name, key -> new StageTotals());
+            Stage stage = new Stage(this, innermostOpenStage(), name);
+            openStages.push(stage);
+            return stage;
+        }
+    }
+
+    /**
+     * Adds bytes read by the operation as a whole. Stage byte counts are reported per stage only,
+     * because nested stages would otherwise be counted twice.
+     *
+     * @param bytes Number of bytes read
+     */
+    public synchronized void addBytesRead(long bytes) {
+        bytesRead += bytes;
+    }
+
+    /**
+     * Adds bytes written by the operation as a whole.
+     *
+     * @param bytes Number of bytes written
+     */
+    public synchronized void addBytesWritten(long bytes) {
+        bytesWritten += bytes;
+    }
+
+    /**
+     * Ends the operation, publishes the metrics to the registered sinks and returns them.
+     *
+     * @return The metrics of the operation, or null for a disabled recorder
+     */
+    public SigningMetrics finish() {
+        if (!enabled) return null;
+
+        long allocated = allocatedBytes();
+        List<SigningMetrics.Stage> stageMetrics = new ArrayList<>();
+        SigningMetrics metrics;
+        synchronized (this) {
+            for (Map.Entry<String, StageTotals> entry : stages.entrySet()) {
+                StageTotals totals = entry.getValue();
+                stageMetrics.add(SigningMetrics.Stage.builder()
+                        .name(entry.getKey())
+                        .count(totals.count)
+                        .wallMillis(toMillis(totals.nanos))
+                        .bytesRead(totals.bytesRead)
+                        .bytesWritten(totals.bytesWritten)
+                        .allocatedBytes(ALLOCATION_COUNTER == null ? null : totals.allocatedBytes)
+                        .build());
+            }
+            metrics = SigningMetrics.builder()
+                    .operation(operation)
+                    .startedAt(startedAt.toString())
+                    .wallMillis(toMillis(System.nanoTime() - startNanos))
+                    .bytesRead(bytesRead)
+                    .bytesWritten(bytesWritten)
+                    .allocatedBytes(ALLOCATION_COUNTER == null || Thread.currentThread() != startThread
+                            ? null
+                            : allocated - startAllocated)
+                    .stages(stageMetrics)
+                    .build();
+        }
+
+        if (isSlow(System.nanoTime() - startNanos)) {
+            StructuredLog.warn("operation.slow", "operation", operation, "wallMillis", metrics.getWallMillis(),
+                    "thresholdMillis", toMillis(slowStageThresholdNanos), "metrics", metrics);
+        }
+
+        for (MetricsSink sink : SINKS) {
+            try {
+                sink.publish(metrics);
+            } catch (Exception e) {
+                // Metrics are diagnostic; a failing sink must not fail the signing
+                StructuredLog.warn("metrics.sinkFailed", "sink", sink.getClass().getName(), "message", e.getMessage());
+            }
+        }
+        return metrics;
+    }
+
+    private Stage innermostOpenStage() {
+        for (Stage open : openStages) {
+            if (open.thread == Thread.currentThread()) return open;
+        }
+        return null;
+    }
+
+    private synchronized void closed(Stage stage) {
+        openStages.remove(stage);
+    }
+
+    private static boolean isSlow(long nanos) {
+        long threshold = slowStageThresholdNanos;
+        return threshold >= 0 && nanos >= threshold && StructuredLog.isEnabled(StructuredLog.Level.WARN);
+    }
+
+    private synchronized void record(String name, long nanos, long allocated, long read, long written) {
+        StageTotals totals = stages.get(name);
+        totals.count++;
+        totals.nanos += nanos;
+        totals.bytesRead += read;
+        totals.bytesWritten += written;
+        totals.allocatedBytes += allocated;
+    }
+
+    private static double toMillis(long nanos) {
+        return Math.round(nanos / 1_000.0) / 1_000.0;
+    }
+
+    private static long allocatedBytes() {
+        return ALLOCATION_COUNTER == null ? 0 : ALLOCATION_COUNTER.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private static com.sun.management.ThreadMXBean detectAllocationCounter() {
+        try {
+            ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+            if (!(threadBean instanceof com.sun.management.ThreadMXBean)) return null;
+
+            com.sun.management.ThreadMXBean counter = (com.sun.management.ThreadMXBean) threadBean;
+            if (!counter.isThreadAllocatedMemorySupported()) return null;
+            if (!counter.isThreadAllocatedMemoryEnabled()) counter.setThreadAllocatedMemoryEnabled(true);
+            return counter;
+        } catch (LinkageError | RuntimeException e) {
+            // Not a HotSpot-compatible JVM, or the counter cannot be enabled
+            return null;
+        }
+    }
+
+    private static List<MetricsSink> loadSinks() {
+        List<MetricsSink> sinks = new ArrayList<>();
+        try {
+            for (MetricsSink sink : ServiceLoader.load(MetricsSink.class)) {
+                sinks.add(sink);
+            }
+        } catch (Error e) {
+            // ServiceConfigurationError: a broken provider entry must not break signing
+            StructuredLog.warn("metrics.sinkLoadFailed", "sink", MetricsSink.class.getName(), "message", e.getMessage());
+        }
+        return sinks;
+    }
+
+    private static final class StageTotals {
+        private int count;
+        private long nanos;
+        private long bytesRead;
+        private long bytesWritten;
+        private long allocatedBytes;
+    }
+
+    /**
+     * An open stage. Closing it adds its measurements to the recorder; closing it again has no effect.
+     */
+    public static final class Stage implements AutoCloseable {
+
+        private final MetricsRecorder recorder;
+        private final Stage parent;
+        private final Thread thread = Thread.currentThread();
+        private final String name;
+        private final long startNanos;
+        private final long startAllocated;
+        // Time spent in the nested stages of this run of the stage, for the slow-stage log
+        private Map<String, long[]> children;
+        private long read;
+        private long written;
+        private boolean closed;
+
+        private Stage(MetricsRecorder recorder, Stage parent, String name) {
+            this.recorder = recorder;
+            this.parent = parent;
+            this.name = name;
+            this.startNanos = System.nanoTime();
+            this.startAllocated = recorder == null ? 0 : allocatedBytes();
+        }
+
+        /**
+         * @param bytes Number of bytes read during this stage
+         */
+        public void addBytesRead(long bytes) {
+            read += bytes;
+        }
+
+        /**
+         * @param bytes Number of bytes written during this stage
+         */
+        public void addBytesWritten(long bytes) {
+            written += bytes;
+        }
+
+        @Override
+        public void close() {
+            if (closed) return;
+            closed = true;
+            long nanos = System.nanoTime() - startNanos;
+            long allocated = recorder == null ? 0 : allocatedBytes() - startAllocated;
+            OperationalMetrics.stage(name, nanos);
+            if (recorder != null) {
+                recorder.closed(this);
+                recorder.record(name, nanos, allocated, read, written);
+            }
+            if (slowStageThresholdNanos < 0) return;
+
+            if (parent != null) parent.addChild(name, nanos);
+            if (isSlow(nanos)) logSlow(nanos, allocated);
+        }
+
+        private synchronized void addChild(String child, long nanos) {
+            if (children == null) children = new LinkedHashMap<>();
+            long[] totals = children.computeIfAbsent(child, key -> new long[2]);
+            totals[0]++;
+            totals[1] += nanos;
+        }
+
+        private void logSlow(long nanos, long allocated) {
+            List<Map<String, Object>> breakdown = new ArrayList<>();
+            long nestedNanos = 0;
+            synchronized (this) {
+                if (children != null) {
+                    for (Map.Entry<String, long[]> child : children.entrySet()) {
+                        Map<String, Object> entry = new LinkedHashMap<>();
+                        entry.put("stage", child.getKey());
+                        entry.put("count", child.getValue()[0]);
+                        entry.put("wallMillis", toMillis(child.getValue()[1]));
+                        breakdown.add(entry);
+                        nestedNanos += child.getValue()[1];
+                    }
+                }
+            }
+            StructuredLog.warn("stage.slow",
+                    "stage", name,
+                    "wallMillis", toMillis(nanos),
+                    "thresholdMillis", toMillis(slowStageThresholdNanos),
+                    "selfMillis", breakdown.isEmpty() ? null : toMillis(Math.max(0, nanos - nestedNanos)),
+                    "bytesRead", read,
+                    "bytesWritten", written,
+                    "allocatedBytes", recorder == null || ALLOCATION_COUNTER == null ? null : allocated,
+                    "breakdown", breakdown.isEmpty() ? null : breakdown);
+        }
+    }
+}
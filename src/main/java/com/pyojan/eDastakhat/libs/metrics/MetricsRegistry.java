@@ -0,0 +1,291 @@
+package com.pyojan.eDastakhat.libs.metrics;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
+import java.util.function.Function;
+
+/**
+ * A small, dependency-free registry of counters, gauges and histograms that renders the Prometheus text
+ * exposition format (version 0.0.4, which OpenMetrics scrapers also accept).
+ * <p>
+ * Updates are lock-free: counters and histogram buckets are {@link LongAdder}s, and labeled children are
+ * looked up in a {@link ConcurrentHashMap} by label value, so recording does not allocate once a child
+ * exists. Callers on hot paths can also keep a reference to a child. Families are registered once and
+ * are never removed.
+ */
+public final class MetricsRegistry {
+
+    /**
+     * Default latency buckets in seconds, from 1 ms to 30 s.
+     */
+    public static final double[] LATENCY_BUCKETS = {
+            0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10, 30
+    };
+
+    private final Map<String, Family<?>> families = new ConcurrentHashMap<>();
+    private final List<Family<?>> registrationOrder = new ArrayList<>();
+
+    /**
+     * Registers a counter family.
+     *
+     * @param name      Metric name, ending in {@code _total}
+     * @param help      Description shown to scrapers
+     * @param labelName Name of the single label, or null for an unlabeled counter
+     * @return The family
+     */
+    public Family<Counter> counter(String name, String help, String labelName) {
+        return register(new Family<>(name, help, "counter", labelName, value -> new Counter()));
+    }
+
+    /**
+     * Registers a gauge family whose children are set or adjusted by the caller.
+     *
+     * @param name      Metric name
+     * @param help      Description shown to scrapers
+     * @param labelName Name of the single label, or null for an unlabeled gauge
+     * @return The family
+     */
+    public Family<Gauge> gauge(String name, String help, String labelName) {
+        return register(new Family<>(name, help, "gauge", labelName, value -> new Gauge(null)));
+    }
+
+    /**
+     * Registers an unlabeled gauge whose value is computed when scraped.
+     *
+     * @param name  Metric name
+     * @param help  Description shown to scrapers
+     * @param value Supplier of the current value; must be cheap and thread-safe
+     */
+    public void computedGauge(String name, String help, DoubleSupplier value) {
+        register(new Family<>(name, help, "gauge", null, ignored -> new Gauge(value)));
+    }
+
+    /**
+     * Registers a histogram family.
+     *
+     * @param name      Metric name, usually ending in the unit, e.g. {@code _seconds}
+     * @param help      Description shown to scrapers
+     * @param buckets   Upper bounds of the buckets, in ascending order, without {@code +Inf}
+     * @param labelName Name of the single label, or null for an unlabeled histogram
+     * @return The family
+     */
+    public Family<Histogram> histogram(String name, String help, double[] buckets, String labelName) {
+        double[] bounds = buckets.clone();
+        Arrays.sort(bounds);
+        return register(new Family<>(name, help, "histogram", labelName, value -> new Histogram(bounds)));
+    }
+
+    private synchronized <T extends Metric> Family<T> register(Family<T> family) {
+        if (families.putIfAbsent(family.name, family) != null) {
+            throw new IllegalArgumentException("Metric already registered: " + family.name);
+        }
+        registrationOrder.add(family);
+        return family;
+    }
+
+    /**
+     * Renders every metric in the Prometheus text exposition format.
+     *
+     * @return The scrape body
+     */
+    public String scrape() {
+        List<Family<?>> snapshot;
+        synchronized (this) {
+            snapshot = new ArrayList<>(registrationOrder);
+        }
+
+        StringBuilder out = new StringBuilder(8192);
+        for (Family<?> family : snapshot) {
+            out.append("# HELP ").append(family.name).append(' ').append(escapeHelp(family.help)).append('\n');
+            out.append("# TYPE ").append(family.name).append(' ').append(family.type).append('\n');
+            for (Map.Entry<String, ? extends Metric> child : family.children.entrySet()) {
+                String labels = family.labelName == null
+                        ? ""
+                        : family.labelName + "=\"" + escapeLabel(child.getKey()) + "\"";
+                child.getValue().write(out, family.name, labels);
+            }
+        }
+        return out.toString();
+    }
+
+    private static String escapeHelp(String help) {
+        return help.replace("\\", "\\\\").replace("\n", "\\n");
+    }
+
+    private static String escapeLabel(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    private static void sample(StringBuilder out, String name, String labels, String value) {
+        out.append(name);
+        if (!labels.isEmpty()) out.append('{').append(labels).append('}');
+        out.append(' ').append(value).append('\n');
+    }
+
+    private static String format(double value) {
+        if (value == Math.rint(value) && !Double.isInfinite(value) && Math.abs(value) < 1e15) {
+            return Long.toString((long) value);
+        }
+        return Double.toString(value);
+    }
+
+    /**
+     * A metric name with its children, one per label value.
+     *
+     * @param <T> The metric type
+     */
+    public static final class Family<T extends Metric> {
+        private static final String UNLABELED = "";
+
+        private final String name;
+        private final String help;
+        private final String type;
+        private final String labelName;
+        private final Function<String, T> factory;
+        private final Map<String, T> children = new ConcurrentHashMap<>();
+
+        private Family(String name, String help, String type, String labelName, Function<String, T> factory) {
+            this.name = name;
+            this.help = help;
+            this.type = type;
+            this.labelName = labelName;
+            this.factory = factory;
+            if (labelName == null) children.put(UNLABELED, factory.apply(UNLABELED));
+        }
+
+        /**
+         * @param labelValue Value of the family's label
+         * @return The child for the label value, created on first use
+         */
+        public T labels(String labelValue) {
+            if (labelName == null) throw new IllegalStateException(name + " has no label");
+            String key = labelValue == null ? "" : labelValue;
+            T child = children.get(key);
+            return child != null ? child : children.computeIfAbsent(key, factory);
+        }
+
+        /**
+         * @return The only child of an unlabeled family
+         */
+        public T get() {
+            if (labelName != null) throw new IllegalStateException(name + " requires the label " + labelName);
+            return children.get(UNLABELED);
+        }
+    }
+
+    /**
+     * Base type of the metrics held by a {@link Family}.
+     */
+    public abstract static class Metric {
+        abstract void write(StringBuilder out, String name, String labels);
+    }
+
+    /**
+     * A monotonically increasing count.
+     */
+    public static final class Counter extends Metric {
+        private final LongAdder value = new LongAdder();
+
+        public void inc() {
+            value.increment();
+        }
+
+        public void inc(long amount) {
+            value.add(amount);
+        }
+
+        public long getValue() {
+            return value.sum();
+        }
+
+        @Override
+        void write(StringBuilder out, String name, String labels) {
+            sample(out, name, labels, Long.toString(value.sum()));
+        }
+    }
+
+    /**
+     * A value that goes up and down, either held here or computed when scraped.
+     */
+    public static final class Gauge extends Metric {
+        private final AtomicLong value = new AtomicLong();
+        private final DoubleSupplier supplier;
+
+        private Gauge(DoubleSupplier supplier) {
+            this.supplier = supplier;
+        }
+
+        public void inc() {
+            value.incrementAndGet();
+        }
+
+        public void dec() {
+            value.decrementAndGet();
+        }
+
+        public void set(long newValue) {
+            value.set(newValue);
+        }
+
+        public double getValue() {
+            return supplier == null ? value.get() : supplier.getAsDouble();
+        }
+
+        @Override
+        void write(StringBuilder out, String name, String labels) {
+            sample(out, name, labels, format(getValue()));
+        }
+    }
+
+    /**
+     * A distribution of observed values in fixed buckets, with their sum and count.
+     */
+    public static final class Histogram extends Metric {
+        private final double[] bounds;
+        private final LongAdder[] buckets;
+        private final DoubleAdder sum = new DoubleAdder();
+
+        private Histogram(double[] bounds) {
+            this.bounds = bounds;
+            this.buckets = new LongAdder[bounds.length + 1];
+            for (int i = 0; i < buckets.length; i++) buckets[i] = new LongAdder();
+        }
+
+        public void observe(double value) {
+            int i = 0;
+            while (i < bounds.length && value > bounds[i]) i++;
+            buckets[i].increment();
+            sum.add(value);
+        }
+
+        /**
+         * Observes a duration measured with {@link System#nanoTime()}, in seconds.
+         *
+         * @param nanos The duration in nanoseconds
+         */
+        public void observeNanos(long nanos) {
+            observe(nanos / 1_000_000_000.0);
+        }
+
+        @Override
+        void write(StringBuilder out, String name, String labels) {
+            String prefix = labels.isEmpty() ? "" : labels + ",";
+            long cumulative = 0;
+            for (int i = 0; i < bounds.length; i++) {
+                cumulative += buckets[i].sum();
+                sample(out, name + "_bucket", prefix + "le=\"" + format(bounds[i]) + "\"", Long.toString(cumulative));
+            }
+            cumulative += buckets[bounds.length].sum();
+            sample(out, name + "_bucket", prefix + "le=\"+Inf\"", Long.toString(cumulative));
+            sample(out, name + "_sum", labels, format(sum.sum()));
+            sample(out, name + "_count", labels, Long.toString(cumulative));
+        }
+    }
+}
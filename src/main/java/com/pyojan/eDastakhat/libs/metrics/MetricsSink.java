@@ -0,0 +1,21 @@
+package com.pyojan.eDastakhat.libs.metrics;
+
+import com.pyojan.eDastakhat.models.SigningMetrics;
+
+/**
+ * Receives the metrics of every finished operation.
+ * <p>
+ * Sinks are registered with {@link MetricsRecorder#addSink(MetricsSink)}, or discovered through
+ * {@link java.util.ServiceLoader} from a {@code META-INF/services/com.pyojan.eDastakhat.libs.metrics.MetricsSink}
+ * entry on the classpath. A failing sink never fails the signing operation.
+ */
+public interface MetricsSink {
+
+    /**
+     * Publishes the metrics of one finished operation.
+     *
+     * @param metrics The recorded metrics
+     * @throws Exception if the metrics cannot be published
+     */
+    void publish(SigningMetrics metrics) throws Exception;
+}
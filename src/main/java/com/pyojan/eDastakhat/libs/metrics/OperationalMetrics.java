@@ -0,0 +1,214 @@
+package com.pyojan.eDastakhat.libs.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+
+/**
+ * The process-wide operational metrics of eDastakhat, always on and exposed by {@link PrometheusEndpoint}.
+ * <p>
+ * Rates such as documents signed per second come from the counters, e.g.
+ * {@code rate(edastakhat_documents_signed_total[1m])}. Cache hit ratios come from the hit and miss
+ * counters. Every update is a {@link java.util.concurrent.atomic.LongAdder} increment, so recording
+ * costs a few nanoseconds and does not allocate.
+ */
+public final class OperationalMetrics {
+
+    private static final MetricsRegistry REGISTRY = new MetricsRegistry();
+    private static final MemoryMXBean MEMORY = ManagementFactory.getMemoryMXBean();
+
+    private static final MetricsRegistry.Family<MetricsRegistry.Counter> DOCUMENTS_SIGNED = REGISTRY.counter(
+            "edastakhat_documents_signed_total", "Documents signed successfully", "format");
+    private static final MetricsRegistry.Family<MetricsRegistry.Counter> SIGNING_FAILURES = REGISTRY.counter(
+            "edastakhat_signing_failures_total", "Documents whose signing failed", "format");
+    private static final MetricsRegistry.Family<MetricsRegistry.Counter> SIGNATURES = REGISTRY.counter(
+            "edastakhat_signatures_total", "Signatures created; a multi-page PDF signing creates one per page", "format");
+    private static final MetricsRegistry.Family<MetricsRegistry.Histogram> SIGNING_DURATION = REGISTRY.histogram(
+            "edastakhat_signing_duration_seconds", "Time to sign one document", MetricsRegistry.LATENCY_BUCKETS, "format");
+
+    private static final MetricsRegistry.Family<MetricsRegistry.Counter> DOCUMENTS_VERIFIED = REGISTRY.counter(
+            "edastakhat_documents_verified_total", "Documents whose signatures were verified", "format");
+    private static final MetricsRegistry.Family<MetricsRegistry.Counter> VERIFICATION_FAILURES = REGISTRY.counter(
+            "edastakhat_verification_failures_total", "Documents that could not be verified", "format");
+    private static final MetricsRegistry.Family<MetricsRegistry.Histogram> VERIFICATION_DURATION = REGISTRY.histogram(
+            "edastakhat_verification_duration_seconds", "Time to verify one document", MetricsRegistry.LATENCY_BUCKETS, "format");
+
+    private static final MetricsRegistry.Family<MetricsRegistry.Histogram> STAGE_DURATION = REGISTRY.histogram(
+            "edastakhat_stage_duration_seconds", "Time spent in each signing stage", MetricsRegistry.LATENCY_BUCKETS, "stage");
+
+    private static final MetricsRegistry.Family<MetricsRegistry.Histogram> REMOTE_CALL_DURATION = REGISTRY.histogram(
+            "edastakhat_remote_call_duration_seconds", "Latency of TSA, OCSP and CRL requests", MetricsRegistry.LATENCY_BUCKETS, "service");
+    private static final MetricsRegistry.Family<MetricsRegistry.Counter> REMOTE_CALL_ERRORS = REGISTRY.counter(
+            "edastakhat_remote_call_errors_total", "Failed or empty TSA, OCSP and CRL requests", "service");
+
+    private static final MetricsRegistry.Family<MetricsRegistry.Counter> CACHE_HITS = REGISTRY.counter(
+            "edastakhat_cache_hits_total", "Cache lookups served from the cache", "cache");
+    private static final MetricsRegistry.Family<MetricsRegistry.Counter> CACHE_MISSES = REGISTRY.counter(
+            "edastakhat_cache_misses_total", "Cache lookups that had to load the value", "cache");
+
+    private static final MetricsRegistry.Gauge KEY_OPERATIONS_IN_FLIGHT = REGISTRY.gauge(
+            "edastakhat_key_operations_in_flight", "Private key operations running", null).get();
+    private static final MetricsRegistry.Gauge KEY_SESSIONS_WAITING = REGISTRY.gauge(
+            "edastakhat_key_session_waiters", "Threads waiting for an idle PKCS#11 session", null).get();
+    private static final MetricsRegistry.Gauge DOCUMENTS_IN_FLIGHT = REGISTRY.gauge(
+            "edastakhat_documents_in_flight", "Documents being signed or verified", null).get();
+
+    static {
+        REGISTRY.computedGauge("edastakhat_heap_used_bytes", "Used heap memory",
+                () -> MEMORY.getHeapMemoryUsage().getUsed());
+        REGISTRY.computedGauge("edastakhat_heap_used_bytes_per_document_in_flight",
+                "Used heap memory divided by the documents in flight, or 0 when idle",
+                () -> {
+                    double inFlight = DOCUMENTS_IN_FLIGHT.getValue();
+                    return inFlight <= 0 ? 0 : MEMORY.getHeapMemoryUsage().getUsed() / inFlight;
+                });
+    }
+
+    private OperationalMetrics() {
+        throw new UnsupportedOperationException("Utility class. Do not instantiate.");
+    }
+
+    /**
+     * @return The registry holding every operational metric, for scraping or for adding metrics
+     */
+    public static MetricsRegistry registry() {
+        return REGISTRY;
+    }
+
+    /**
+     * Marks the start of signing or verifying a document.
+     *
+     * @return The start time, to pass to {@link #documentSigned}, {@link #signingFailed},
+     *         {@link #documentVerified} or {@link #verificationFailed}
+     */
+    public static long documentStarted() {
+        DOCUMENTS_IN_FLIGHT.inc();
+        return System.nanoTime();
+    }
+
+    /**
+     * Records a document signed successfully.
+     *
+     * @param format     "pdf" or "xml"
+     * @param startNanos The value returned by {@link #documentStarted()}
+     */
+    public static void documentSigned(String format, long startNanos) {
+        DOCUMENTS_IN_FLIGHT.dec();
+        DOCUMENTS_SIGNED.labels(format).inc();
+        SIGNING_DURATION.labels(format).observeNanos(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Records a document whose signing failed.
+     *
+     * @param format     "pdf" or "xml"
+     * @param startNanos The value returned by {@link #documentStarted()}
+     */
+    public static void signingFailed(String format, long startNanos) {
+        DOCUMENTS_IN_FLIGHT.dec();
+        SIGNING_FAILURES.labels(format).inc();
+        SIGNING_DURATION.labels(format).observeNanos(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Records a document whose signatures were verified, valid or not.
+     *
+     * @param format     "pdf" or "xml"
+     * @param startNanos The value returned by {@link #documentStarted()}
+     */
+    public static void documentVerified(String format, long startNanos) {
+        DOCUMENTS_IN_FLIGHT.dec();
+        DOCUMENTS_VERIFIED.labels(format).inc();
+        VERIFICATION_DURATION.labels(format).observeNanos(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Records a document that could not be verified, e.g. because it could not be parsed.
+     *
+     * @param format     "pdf" or "xml"
+     * @param startNanos The value returned by {@link #documentStarted()}
+     */
+    public static void verificationFailed(String format, long startNanos) {
+        DOCUMENTS_IN_FLIGHT.dec();
+        VERIFICATION_FAILURES.labels(format).inc();
+        VERIFICATION_DURATION.labels(format).observeNanos(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Records one signature added to a document.
+     *
+     * @param format "pdf" or "xml"
+     */
+    public static void signatureCreated(String format) {
+        SIGNATURES.labels(format).inc();
+    }
+
+    /**
+     * Records several signatures added to one document, e.g. one per record element.
+     *
+     * @param format "pdf" or "xml"
+     * @param count  Number of signatures
+     */
+    public static void signaturesCreated(String format, int count) {
+        SIGNATURES.labels(format).inc(count);
+    }
+
+    /**
+     * Records a stage duration, see {@link MetricsRecorder#stage(String)} for the stage names.
+     *
+     * @param stage Name of the stage
+     * @param nanos Duration of the stage
+     */
+    public static void stage(String stage, long nanos) {
+        STAGE_DURATION.labels(stage).observeNanos(nanos);
+    }
+
+    /**
+     * Records a TSA, OCSP or CRL request.
+     *
+     * @param service "tsa", "ocsp" or "crl"
+     * @param nanos   Duration of the request
+     * @param failed  True if the request threw or returned nothing
+     */
+    public static void remoteCall(String service, long nanos, boolean failed) {
+        REMOTE_CALL_DURATION.labels(service).observeNanos(nanos);
+        if (failed) REMOTE_CALL_ERRORS.labels(service).inc();
+    }
+
+    /**
+     * Records a cache lookup.
+     *
+     * @param cache Name of the cache, e.g. "font", "image", "keyStore", "privateKey" or "appearance"
+     * @param hit   True if the value was served from the cache
+     */
+    public static void cacheLookup(String cache, boolean hit) {
+        (hit ? CACHE_HITS : CACHE_MISSES).labels(cache).inc();
+    }
+
+    /**
+     * Marks the start of a private key operation; pair with {@link #keyOperationFinished()}.
+     */
+    public static void keyOperationStarted() {
+        KEY_OPERATIONS_IN_FLIGHT.inc();
+    }
+
+    /**
+     * Marks the end of a private key operation.
+     */
+    public static void keyOperationFinished() {
+        KEY_OPERATIONS_IN_FLIGHT.dec();
+    }
+
+    /**
+     * Marks a thread starting to wait for a PKCS#11 session; pair with {@link #keySessionWaitFinished()}.
+     */
+    public static void keySessionWaitStarted() {
+        KEY_SESSIONS_WAITING.inc();
+    }
+
+    /**
+     * Marks a thread no longer waiting for a PKCS#11 session.
+     */
+    public static void keySessionWaitFinished() {
+        KEY_SESSIONS_WAITING.dec();
+    }
+}
@@ -0,0 +1,98 @@
+package com.pyojan.eDastakhat.libs.metrics;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Serves {@link OperationalMetrics} on {@code http://127.0.0.1:<port>/metrics} in the Prometheus text format.
+ * <p>
+ * The endpoint binds to the loopback interface only; expose it to a remote scraper through a sidecar or a
+ * reverse proxy. Scrapes run on a single thread, so a slow scraper never competes with signing for more
+ * than one core.
+ */
+public final class PrometheusEndpoint implements AutoCloseable {
+
+    private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    private PrometheusEndpoint(HttpServer server, ExecutorService executor) {
+        this.server = server;
+        this.executor = executor;
+    }
+
+    /**
+     * Starts the endpoint.
+     *
+     * @param port Loopback port to listen on, or 0 for a free port
+     * @return The running endpoint
+     * @throws IOException if the port cannot be bound
+     */
+    public static PrometheusEndpoint start(int port) throws IOException {
+        return start(port, OperationalMetrics.registry());
+    }
+
+    /**
+     * Starts the endpoint for the given registry.
+     *
+     * @param port     Loopback port to listen on, or 0 for a free port
+     * @param registry The metrics to serve
+     * @return The running endpoint
+     * @throws IOException if the port cannot be bound
+     */
+    public static PrometheusEndpoint start(int port, MetricsRegistry registry) throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "eDastakhat-metrics");
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.createContext("/metrics", exchange -> handle(exchange, registry));
+        server.setExecutor(executor);
+        server.start();
+        return new PrometheusEndpoint(server, executor);
+    }
+
+    /**
+     * @return The port the endpoint listens on
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    private static void handle(HttpExchange exchange, MetricsRegistry registry) throws IOException {
+        try {
+            if (!"GET".equals(exchange.getRequestMethod()) && !"HEAD".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            byte[] body = registry.scrape().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+            if ("HEAD".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(200, -1);
+                return;
+            }
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+}
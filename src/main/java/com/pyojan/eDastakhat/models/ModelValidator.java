@@ -32,6 +32,13 @@ public class ModelValidator {
         this.modal = readSignatureOptionJsonFileReturnAsModel(signatureOptionJsonPath);
     }
 
+    public ModelValidator(SignatureOptions signatureOptions) {
+        if (signatureOptions == null) {
+            throw new NullPointerException("Signature options are required.");
+        }
+        this.modal = signatureOptions;
+    }
+
     private SignatureOptions readSignatureOptionJsonFileReturnAsModel(Path signatureOptionJsonPath) throws IOException {
         String jsonContent = new String(Files.readAllBytes(signatureOptionJsonPath));
         return gson.fromJson(jsonContent, SignatureOptions.class);
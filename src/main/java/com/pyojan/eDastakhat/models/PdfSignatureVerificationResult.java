@@ -57,6 +57,7 @@ public class PdfSignatureVerificationResult {
         private int signatureIndex;
         private String signatureName;
         private int pageNumber;
+        private SignaturePosition position;
         private Date signingTime;
         private String reason;
         private String location;
@@ -68,6 +69,16 @@ public class PdfSignatureVerificationResult {
         private List<String> warnings;
     }
 
+    @Data
+    @Builder
+    public static class SignaturePosition {
+        private float llx;
+        private float lly;
+        private float urx;
+        private float ury;
+        private boolean visible;
+    }
+
     @Data
     @Builder
     public static class CertificateInfo {
@@ -0,0 +1,20 @@
+package com.pyojan.eDastakhat.models;
+
+import lombok.Builder;
+import lombok.Data;
+
+@Data
+@Builder
+public class PdfSigningRequest {
+    private String inputPath;
+    // Output file or directory; null writes next to the input
+    private String outputPath;
+    // Password of an encrypted input PDF
+    private String password;
+    private SignatureOptions options;
+    private SigningCredentials credentials;
+    @Builder.Default
+    private boolean watermark = true;
+    // Return the per-stage metrics with the result
+    private boolean collectMetrics;
+}
@@ -30,6 +30,13 @@ public class SignatureOptions {
     @Length(max = 60, message = "customText cannot be longer than 60 characters")
     private String customText = "";
 
+    // Optional TrueType/OpenType font for the signature text, e.g. a Devanagari font for Hindi names
+    private String fontPath;
+
+    // Optional seal or handwritten signature image drawn in the signature box
+    @AssertValid
+    private SignatureImage image;
+
     private boolean greenTick;
     private boolean changesAllowed;
     private boolean enableLtv;
@@ -47,4 +54,22 @@ public class SignatureOptions {
         private String username;
         private String password;
     }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class SignatureImage {
+        @NotEmpty(message = "image.path cannot be empty")
+        private String path;
+
+        // LEFT or RIGHT: image beside the text, BACKGROUND: image behind the text, FULL: image only
+        @MatchPattern(
+                pattern = "^(?i)(left|right|background|full)$",
+                message = "Invalid image placement. Allowed values: 'LEFT', 'RIGHT', 'BACKGROUND', 'FULL'"
+        )
+        private String placement = "LEFT";
+
+        @Range(min = 0, max = 1, message = "image.opacity must be between 0 and 1")
+        private float opacity = 1f;
+    }
 }
@@ -0,0 +1,29 @@
+package com.pyojan.eDastakhat.models;
+
+import lombok.Builder;
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * Where the signing key comes from. Set either {@code pfxPath} or {@code tokenLibraryPath}; with neither,
+ * the Windows certificate store is used.
+ */
+@Data
+@Builder
+public class SigningCredentials {
+    // PFX/PKCS#12 file
+    private String pfxPath;
+    // PKCS#11 library of a hardware token
+    private String tokenLibraryPath;
+    // PIN of the token or password of the PFX file
+    private String pin;
+    // Selects one of several tokens on the same library
+    private String tokenSerial;
+    // Selects one of several certificates, as a hex serial number
+    private String certificateSerial;
+    // Signs on several slots of the token library at once, as 0-based slot list indexes; overrides tokenSerial
+    private List<Long> tokenSlots;
+    // Concurrent sessions per slot of tokenSlots, 1 if not set
+    private Integer sessionsPerSlot;
+}
@@ -0,0 +1,31 @@
+package com.pyojan.eDastakhat.models;
+
+import lombok.Builder;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+@Builder
+public class SigningMetrics {
+    private String operation;
+    private String startedAt;
+    private double wallMillis;
+    private long bytesRead;
+    private long bytesWritten;
+    // Null when the JVM does not expose per-thread allocation counters
+    private Long allocatedBytes;
+    private List<Stage> stages;
+
+    @Data
+    @Builder
+    public static class Stage {
+        // Nested stages are named parent.child and are included in the parent's totals
+        private String name;
+        private int count;
+        private double wallMillis;
+        private long bytesRead;
+        private long bytesWritten;
+        private Long allocatedBytes;
+    }
+}
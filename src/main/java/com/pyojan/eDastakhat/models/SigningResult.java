@@ -0,0 +1,16 @@
+package com.pyojan.eDastakhat.models;
+
+import lombok.Builder;
+import lombok.Data;
+
+@Data
+@Builder
+public class SigningResult {
+    private String signedFilePath;
+    // Number of elements signed, only set when signing XML per element
+    private Integer signatureCount;
+    // True if an earlier signed copy of the same request was returned; null otherwise
+    private Boolean deduplicated;
+    // Per-stage metrics, only set when requested
+    private SigningMetrics metrics;
+}
@@ -0,0 +1,22 @@
+package com.pyojan.eDastakhat.models;
+
+import lombok.Builder;
+import lombok.Data;
+
+import java.nio.file.Path;
+import java.util.List;
+
+@Data
+@Builder
+public class XmlBatchSigningRequest {
+    private List<Path> inputs;
+    // Output directory; null writes each signed file next to its input
+    private Path outputDirectory;
+    private SigningCredentials credentials;
+    // Worker threads, or 0 for the number of processors
+    private int threads;
+    private boolean streaming;
+    private String elementSelector;
+    // Journal file for resuming an interrupted batch; null signs every file
+    private Path journal;
+}
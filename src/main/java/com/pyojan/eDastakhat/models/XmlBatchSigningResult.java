@@ -0,0 +1,36 @@
+package com.pyojan.eDastakhat.models;
+
+import lombok.Builder;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+@Builder
+public class XmlBatchSigningResult {
+    private BatchSummary summary;
+    private List<FileResult> files;
+
+    @Data
+    @Builder
+    public static class BatchSummary {
+        private int totalFiles;
+        private int signedFiles;
+        private int failedFiles;
+        // Files signed by an earlier run according to the journal; included in signedFiles
+        private int skippedFiles;
+        private int threads;
+        private long elapsedMillis;
+    }
+
+    @Data
+    @Builder
+    public static class FileResult {
+        private String inputPath;
+        private String signedFilePath;
+        private boolean signed;
+        private String error;
+        // True if the journal shows the file was signed by an earlier run; null otherwise
+        private Boolean skipped;
+    }
+}
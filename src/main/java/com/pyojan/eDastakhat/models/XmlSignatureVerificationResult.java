@@ -0,0 +1,70 @@
+package com.pyojan.eDastakhat.models;
+
+import lombok.Builder;
+import lombok.Data;
+
+import java.util.Date;
+import java.util.List;
+
+@Data
+@Builder
+public class XmlSignatureVerificationResult {
+    private DocumentInfo document;
+    private List<SignatureInfo> signatures;
+
+    @Data
+    @Builder
+    public static class DocumentInfo {
+        private String rootElement;
+        private Date verificationTime;
+        private VerificationSummary verificationSummary;
+        private List<String> warnings;
+    }
+
+    @Data
+    @Builder
+    public static class VerificationSummary {
+        private int totalSignatures;
+        private int validSignatures;
+        private int invalidSignatures;
+        private boolean allSignaturesValid;
+    }
+
+    @Data
+    @Builder
+    public static class SignatureInfo {
+        private int signatureIndex;
+        private String signatureId;
+        private String parentElement;
+        private boolean enveloped;
+        private String signatureMethod;
+        private String canonicalizationMethod;
+        private boolean signatureValueValid;
+        private boolean signatureValid;
+        private List<ReferenceInfo> references;
+        private CertificateInfo certificate;
+        private List<String> warnings;
+    }
+
+    @Data
+    @Builder
+    public static class ReferenceInfo {
+        private int referenceIndex;
+        private String uri;
+        private String digestMethod;
+        private List<String> transforms;
+        private boolean digestValid;
+        private String error;
+    }
+
+    @Data
+    @Builder
+    public static class CertificateInfo {
+        private String subjectDN;
+        private String issuerDN;
+        private Date validFrom;
+        private Date validTo;
+        private String serialNumber;
+        private String certificateType;
+    }
+}
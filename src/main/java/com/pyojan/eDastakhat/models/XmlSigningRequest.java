@@ -0,0 +1,17 @@
+package com.pyojan.eDastakhat.models;
+
+import lombok.Builder;
+import lombok.Data;
+
+@Data
+@Builder
+public class XmlSigningRequest {
+    private String inputPath;
+    // Output file or directory; null writes next to the input
+    private String outputPath;
+    private SigningCredentials credentials;
+    // Sign with bounded memory, for very large documents
+    private boolean streaming;
+    // Element name or XPath; each matching element gets its own signature
+    private String elementSelector;
+}
@@ -0,0 +1,402 @@
+package com.pyojan.eDastakhat.services;
+
+import com.itextpdf.text.pdf.security.TSAClient;
+import com.pyojan.eDastakhat.libs.log.StructuredLog;
+import com.pyojan.eDastakhat.models.ModelValidator;
+import com.pyojan.eDastakhat.models.PdfSignatureVerificationResult;
+import com.pyojan.eDastakhat.models.PdfSigningRequest;
+import com.pyojan.eDastakhat.models.SignatureOptions;
+import com.pyojan.eDastakhat.models.SigningResult;
+import com.pyojan.eDastakhat.models.XmlSignatureVerificationResult;
+import com.pyojan.eDastakhat.models.XmlSigningRequest;
+import com.pyojan.eDastakhat.services.pdf.PdfSigner;
+import com.pyojan.eDastakhat.services.pdf.SignedDocumentCache;
+import com.pyojan.eDastakhat.utils.VirtualThreads;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Signs documents asynchronously, as a pipeline of stages that each run on the executor suited to their
+ * latency profile, and returns a {@link CompletableFuture} per document.
+ * <p>
+ * A PDF is signed in these stages:
+ * <ol>
+ *     <li>reading, watermarking and parsing the document, on the CPU executor;</li>
+ *     <li>loading the key, on the key executor, in parallel with the first stage;</li>
+ *     <li>checking the timestamp authority, on the network executor, also in parallel;</li>
+ *     <li>signing each page digest-first: rendering the appearance and hashing the document on the CPU
+ *         executor, fetching CRLs and OCSP responses for LTV on the network executor, the private key
+ *         operation on the key executor, and timestamping and embedding the signature on the network
+ *         executor, or on the CPU executor without a timestamp;</li>
+ *     <li>writing, on the CPU executor.</li>
+ * </ol>
+ * A document only holds a thread while one of its stages runs, and each executor's bounded queue is the
+ * buffer in front of its stage. So the CPU threads prepare and hash the next documents while the key signs
+ * one and the TSA timestamps another, and the key executor's size bounds the operations a token or HSM
+ * sees at once.
+ * <p>
+ * With {@code SigningCredentials.tokenSlots}, every key operation on the key executor borrows a session of a
+ * shared {@link com.pyojan.eDastakhat.libs.keyStore.PKCS11SessionPool} spread over those slots. Size the key
+ * executor to the slots times {@code sessionsPerSlot}: fewer threads leave sessions idle, more threads wait
+ * for a session.
+ * <p>
+ * Backpressure: at most {@code maxInFlight} documents are accepted at a time. Submitting another one blocks
+ * the caller until a document completes, so a fast producer cannot queue unbounded work or memory. The
+ * executors' queues are bounded as well. The service is thread-safe; close it to stop its threads.
+ * <p>
+ * On JDK 21 or later, {@link #withVirtualThreads(int, int, int)} runs the network-bound stages on virtual
+ * threads, so thousands of documents can wait on TSA, OCSP and CRL responses at little cost. The CPU and key
+ * executors keep platform threads: CPU work gains nothing from virtual threads, and the key executor's
+ * size is what bounds the operations on a token.
+ */
+public class AsyncSigningService implements AutoCloseable {
+
+    private static final int DEFAULT_NETWORK_THREADS = 64;
+    private static final int DEFAULT_MAX_IN_FLIGHT = 256;
+    private static final int DEFAULT_VIRTUAL_MAX_IN_FLIGHT = 4096;
+
+    private final ExecutorService cpuExecutor;
+    private final ExecutorService keyExecutor;
+    private final ExecutorService networkExecutor;
+    private final Semaphore inFlight;
+    private final boolean virtualThreads;
+    private final SigningService signingService = new SigningService();
+    private volatile SignedDocumentCache signedDocumentCache;
+
+    /**
+     * Creates a service with one CPU thread and one key thread per available processor, 64 network threads,
+     * and room for 256 documents in flight.
+     */
+    public AsyncSigningService() {
+        this(Runtime.getRuntime().availableProcessors(), Runtime.getRuntime().availableProcessors(),
+                DEFAULT_NETWORK_THREADS, DEFAULT_MAX_IN_FLIGHT);
+    }
+
+    /**
+     * Creates a service with the given executor sizes.
+     *
+     * @param cpuThreads     threads for parsing, rendering and serializing
+     * @param keyThreads     threads for loading keys and for private key operations; use the number of
+     *                       sessions of a token or HSM
+     * @param networkThreads threads for signing that waits on TSA, OCSP and CRL requests
+     * @param maxInFlight    documents accepted before submitting blocks
+     */
+    public AsyncSigningService(int cpuThreads, int keyThreads, int networkThreads, int maxInFlight) {
+        this(boundedPool("eDastakhat-cpu", cpuThreads, maxInFlight),
+                boundedPool("eDastakhat-key", keyThreads, maxInFlight),
+                boundedPool("eDastakhat-network", networkThreads, maxInFlight),
+                maxInFlight, false);
+    }
+
+    private AsyncSigningService(ExecutorService cpuExecutor, ExecutorService keyExecutor,
+                                ExecutorService networkExecutor, int maxInFlight, boolean virtualThreads) {
+        if (maxInFlight < 1) throw new IllegalArgumentException("maxInFlight must be at least 1.");
+        this.cpuExecutor = cpuExecutor;
+        this.keyExecutor = keyExecutor;
+        this.networkExecutor = networkExecutor;
+        this.inFlight = new Semaphore(maxInFlight);
+        this.virtualThreads = virtualThreads;
+    }
+
+    /**
+     * Creates a service whose network-bound stages each run on a virtual thread of their own, with one CPU
+     * thread and one key thread per available processor and room for 4096 documents in flight.
+     * On a JVM older than JDK 21 the network stages fall back to a pool of 64 platform threads.
+     *
+     * @return the service
+     */
+    public static AsyncSigningService withVirtualThreads() {
+        return withVirtualThreads(Runtime.getRuntime().availableProcessors(),
+                Runtime.getRuntime().availableProcessors(), DEFAULT_VIRTUAL_MAX_IN_FLIGHT);
+    }
+
+    /**
+     * Creates a service whose network-bound stages each run on a virtual thread of their own.
+     * On a JVM older than JDK 21 the network stages fall back to a pool of 64 platform threads;
+     * {@link #isUsingVirtualThreads()} tells which one is in use.
+     *
+     * @param cpuThreads  threads for parsing, rendering and serializing
+     * @param keyThreads  threads for loading keys and for private key operations
+     * @param maxInFlight documents accepted before submitting blocks; this is also the bound on the
+     *                    virtual threads, which are otherwise unlimited
+     * @return the service
+     */
+    public static AsyncSigningService withVirtualThreads(int cpuThreads, int keyThreads, int maxInFlight) {
+        boolean supported = VirtualThreads.isSupported();
+        ExecutorService networkExecutor = supported
+                ? VirtualThreads.newThreadPerTaskExecutor("eDastakhat-network")
+                : boundedPool("eDastakhat-network", DEFAULT_NETWORK_THREADS, maxInFlight);
+        return new AsyncSigningService(
+                boundedPool("eDastakhat-cpu", cpuThreads, maxInFlight),
+                boundedPool("eDastakhat-key", keyThreads, maxInFlight),
+                networkExecutor,
+                maxInFlight,
+                supported);
+    }
+
+    /**
+     * Returns an earlier signed copy for a repeated PDF request instead of signing again. A duplicate then
+     * costs the cached key lookup and a hash of the input on the CPU executor; the input is only parsed
+     * and the TSA only contacted after a miss.
+     *
+     * @param signedDocumentCache the cache, or null to sign every request
+     */
+    public void setSignedDocumentCache(SignedDocumentCache signedDocumentCache) {
+        this.signedDocumentCache = signedDocumentCache;
+    }
+
+    /**
+     * @return true if the network-bound stages run on virtual threads
+     */
+    public boolean isUsingVirtualThreads() {
+        return virtualThreads;
+    }
+
+    /**
+     * Signs a PDF file and writes the signed copy to disk.
+     * Blocks the caller only while {@code maxInFlight} documents are already in flight.
+     *
+     * @param request the input and output paths, signature options and key to sign with
+     * @return a future completed with the path of the signed file, and the metrics when requested, or
+     *         completed exceptionally with the cause of the failure
+     */
+    public CompletableFuture<SigningResult> signPdf(PdfSigningRequest request) {
+        try {
+            new ModelValidator(request.getOptions()).validatePdfPayloadModel();
+        } catch (RuntimeException e) {
+            return failed(e);
+        }
+        if (!acquire()) return failed(new InterruptedException("Interrupted while waiting to submit the document"));
+        try {
+            return pdfPipeline(request);
+        } catch (RuntimeException e) {
+            // An executor rejected a stage, e.g. after close()
+            inFlight.release();
+            return failed(e);
+        }
+    }
+
+    private CompletableFuture<SigningResult> pdfPipeline(PdfSigningRequest request) {
+        StructuredLog.Job job = StructuredLog.currentJob();
+        PdfSigner pdfSigner = new PdfSigner();
+        pdfSigner.setSignedDocumentCache(signedDocumentCache);
+        pdfSigner.startMetrics(request);
+
+        CompletableFuture<PdfSigner.SigningKey> signingKey = CompletableFuture.supplyAsync(
+                inJob(job, () -> pdfSigner.loadSigningKey(request.getCredentials())), keyExecutor);
+
+        CompletableFuture<String> signed;
+        if (pdfSigner.getSignedDocumentCache() == null) {
+            signed = signNewDocument(job, pdfSigner, request, signingKey);
+        } else {
+            // The lookup needs the signing certificate; parsing and the TSA wait for a miss
+            signed = signingKey
+                    .thenApplyAsync(key -> inJob(job, () -> pdfSigner.findSignedCopy(request, key)).get(), cpuExecutor)
+                    .thenCompose(copy -> copy != null
+                            ? CompletableFuture.completedFuture(copy)
+                            : signNewDocument(job, pdfSigner, request, signingKey));
+        }
+
+        return signed.handle((signedFilePath, error) -> {
+            try {
+                SigningResult result = SigningResult.builder()
+                        .signedFilePath(signedFilePath)
+                        .deduplicated(pdfSigner.isSignedCopyReused() ? Boolean.TRUE : null)
+                        .metrics(pdfSigner.finishMetrics(request))
+                        .build();
+                if (error != null) throw error instanceof CompletionException
+                        ? (CompletionException) error
+                        : new CompletionException(error);
+                return result;
+            } finally {
+                inFlight.release();
+            }
+        });
+    }
+
+    /**
+     * Parses the document and prepares the TSA client in parallel with the key load, then signs it in
+     * pipelined phases.
+     */
+    private CompletableFuture<String> signNewDocument(StructuredLog.Job job, PdfSigner pdfSigner,
+                                                      PdfSigningRequest request,
+                                                      CompletableFuture<PdfSigner.SigningKey> signingKey) {
+        SignatureOptions options = request.getOptions();
+        CompletableFuture<PdfSigner.PreparedDocument> document = CompletableFuture.supplyAsync(
+                inJob(job, () -> pdfSigner.prepareDocument(request)), cpuExecutor);
+        CompletableFuture<TSAClient> tsaClient = CompletableFuture.supplyAsync(
+                inJob(job, () -> pdfSigner.createTsaClient(options)), networkExecutor);
+
+        PdfSigner.PhaseRunner runner = new JobPhaseRunner(job);
+        return CompletableFuture.allOf(document, signingKey, tsaClient)
+                .thenCompose(ignored -> pdfSigner.signDocumentPipelined(
+                        document.join(), signingKey.join(), tsaClient.join(), options, runner))
+                .whenComplete((signedFilePath, error) -> {
+                    if (error != null && document.isDone() && !document.isCompletedExceptionally()) {
+                        document.join().close();
+                    }
+                    if (error != null && signingKey.isDone() && !signingKey.isCompletedExceptionally()) {
+                        signingKey.join().invalidateIfSessionLost(error);
+                    }
+                });
+    }
+
+    /**
+     * Signs an XML file on the CPU executor and writes the signed copy to disk. XML signing makes no
+     * network requests, so it is a single stage.
+     * Blocks the caller only while {@code maxInFlight} documents are already in flight.
+     *
+     * @param request the input and output paths, key to sign with and signing mode
+     * @return a future completed with the path of the signed file, or completed exceptionally
+     */
+    public CompletableFuture<SigningResult> signXml(XmlSigningRequest request) {
+        return submit(() -> signingService.signXml(request));
+    }
+
+    /**
+     * Verifies every signature of a PDF file on the CPU executor. Verification checks the revocation data
+     * embedded in the signatures and makes no network requests.
+     * Blocks the caller only while {@code maxInFlight} documents are already in flight.
+     *
+     * @param pdfPath path of the signed PDF
+     * @return a future completed with the verification result of each signature, or completed exceptionally
+     */
+    public CompletableFuture<PdfSignatureVerificationResult> verifyPdf(String pdfPath) {
+        return submit(() -> signingService.verifyPdf(pdfPath));
+    }
+
+    /**
+     * Verifies every signature of an XML file on the CPU executor.
+     * Blocks the caller only while {@code maxInFlight} documents are already in flight.
+     *
+     * @param xmlPath path of the signed XML
+     * @return a future completed with the verification result of each signature, or completed exceptionally
+     */
+    public CompletableFuture<XmlSignatureVerificationResult> verifyXml(String xmlPath) {
+        return submit(() -> signingService.verifyXml(xmlPath));
+    }
+
+    /**
+     * @return the number of documents that can be submitted before submitting blocks
+     */
+    public int availableCapacity() {
+        return inFlight.availablePermits();
+    }
+
+    /**
+     * Stops accepting stage tasks once the documents in flight have completed, and lets the threads exit.
+     */
+    @Override
+    public void close() {
+        cpuExecutor.shutdown();
+        keyExecutor.shutdown();
+        networkExecutor.shutdown();
+    }
+
+    /**
+     * Runs a single-stage document job on the CPU executor, within the in-flight limit.
+     */
+    private <T> CompletableFuture<T> submit(Stage<T> stage) {
+        if (!acquire()) return failed(new InterruptedException("Interrupted while waiting to submit the document"));
+
+        CompletableFuture<T> result;
+        try {
+            result = CompletableFuture.supplyAsync(inJob(StructuredLog.currentJob(), stage), cpuExecutor);
+        } catch (RuntimeException e) {
+            inFlight.release();
+            return failed(e);
+        }
+        return result.whenComplete((value, error) -> inFlight.release());
+    }
+
+    private boolean acquire() {
+        try {
+            inFlight.acquire();
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private static <T> CompletableFuture<T> failed(Throwable error) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        future.completeExceptionally(error);
+        return future;
+    }
+
+    /**
+     * Wraps a stage so it logs under the submitting job's correlation ID and reports checked exceptions
+     * through the future.
+     */
+    private static <T> Supplier<T> inJob(StructuredLog.Job job, Stage<T> stage) {
+        return () -> {
+            try (StructuredLog.Job ignored = job == null ? null : job.attach()) {
+                return stage.run();
+            } catch (CompletionException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new CompletionException(e);
+            }
+        };
+    }
+
+    private interface Stage<T> {
+        T run() throws Exception;
+    }
+
+    /**
+     * Runs the signing phases of one document on this service's executors, under the document's job.
+     */
+    private final class JobPhaseRunner implements PdfSigner.PhaseRunner {
+        private final StructuredLog.Job job;
+
+        private JobPhaseRunner(StructuredLog.Job job) {
+            this.job = job;
+        }
+
+        @Override
+        public <T> CompletableFuture<T> run(Resource resource, Callable<T> phase) {
+            ExecutorService executor = resource == Resource.KEY ? keyExecutor
+                    : resource == Resource.NETWORK ? networkExecutor
+                    : cpuExecutor;
+            return CompletableFuture.supplyAsync(inJob(job, phase::call), executor);
+        }
+    }
+
+    private static ExecutorService boundedPool(String name, int threads, int queueCapacity) {
+        if (threads < 1) throw new IllegalArgumentException(name + " needs at least one thread.");
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), new DaemonThreadFactory(name),
+                // Never reached while maxInFlight bounds the stage tasks; if it is, the submitter runs the task
+                new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    private static final class DaemonThreadFactory implements ThreadFactory {
+        private final String name;
+        private final AtomicInteger count = new AtomicInteger();
+
+        private DaemonThreadFactory(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, name + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,214 @@
+package com.pyojan.eDastakhat.services;
+
+import com.pyojan.eDastakhat.libs.BatchJournal;
+import com.pyojan.eDastakhat.libs.keyStore.PKCS11KeyStore;
+import com.pyojan.eDastakhat.libs.keyStore.SigningKeyLoader;
+import com.pyojan.eDastakhat.libs.keyStore.TokenInventory;
+import com.pyojan.eDastakhat.libs.metrics.OperationalMetrics;
+import com.pyojan.eDastakhat.models.ModelValidator;
+import com.pyojan.eDastakhat.models.PdfSignatureVerificationResult;
+import com.pyojan.eDastakhat.models.PdfSigningRequest;
+import com.pyojan.eDastakhat.models.SigningResult;
+import com.pyojan.eDastakhat.models.XmlBatchSigningRequest;
+import com.pyojan.eDastakhat.models.XmlBatchSigningResult;
+import com.pyojan.eDastakhat.models.XmlSignatureVerificationResult;
+import com.pyojan.eDastakhat.models.XmlSigningRequest;
+import com.pyojan.eDastakhat.services.pdf.PdfSignatureVerifier;
+import com.pyojan.eDastakhat.services.pdf.PdfSigner;
+import com.pyojan.eDastakhat.services.pdf.SignedDocumentCache;
+import com.pyojan.eDastakhat.services.xml.StreamingXMLSigner;
+import com.pyojan.eDastakhat.services.xml.XMLBatchSigner;
+import com.pyojan.eDastakhat.services.xml.XMLSignatureVerifier;
+import com.pyojan.eDastakhat.services.xml.XMLSigner;
+import com.pyojan.eDastakhat.services.xml.XmlElementSelector;
+import com.pyojan.eDastakhat.utils.FileUtil;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.security.GeneralSecurityException;
+import java.security.PrivateKey;
+import java.security.cert.X509Certificate;
+import java.util.List;
+
+/**
+ * Signs and verifies PDF and XML documents in-process and returns the results as objects.
+ * <p>
+ * This is the entry point for embedding eDastakhat in another Java application. Unlike the command line,
+ * it never prints the result and never exits the JVM: failures are thrown to the caller. The service keeps
+ * no state of its own, so one instance can be shared by any number of threads. Loaded keystores, private
+ * keys, fonts and images are cached process-wide, so only the first document signed with a key pays for
+ * loading it.
+ * <p>
+ * With a {@link SignedDocumentCache}, a repeated PDF request returns the earlier signed copy.
+ */
+public class SigningService {
+
+    private final SignedDocumentCache signedDocumentCache;
+
+    /**
+     * Creates a service that signs every request.
+     */
+    public SigningService() {
+        this(null);
+    }
+
+    /**
+     * Creates a service that returns an earlier signed copy for a repeated PDF request.
+     *
+     * @param signedDocumentCache the cache, or null to sign every request; it can be shared between services
+     */
+    public SigningService(SignedDocumentCache signedDocumentCache) {
+        this.signedDocumentCache = signedDocumentCache;
+    }
+
+    /**
+     * Signs a PDF file and writes the signed copy to disk.
+     *
+     * @param request the input and output paths, signature options and key to sign with
+     * @return the path of the signed file, whether it was deduplicated, and the per-stage metrics when requested
+     * @throws IllegalArgumentException if the signature options are invalid
+     * @throws Exception if the key cannot be loaded or the document cannot be signed
+     */
+    public SigningResult signPdf(PdfSigningRequest request) throws Exception {
+        new ModelValidator(request.getOptions()).validatePdfPayloadModel();
+
+        // PdfSigner keeps per-document state, so every call gets its own
+        PdfSigner pdfSigner = new PdfSigner();
+        pdfSigner.setSignedDocumentCache(signedDocumentCache);
+        return pdfSigner.sign(request);
+    }
+
+    /**
+     * Signs an XML file and writes the signed copy to disk. With an element selector each matching element
+     * gets its own signature; otherwise the whole document is signed, in streaming mode if requested.
+     *
+     * @param request the input and output paths, key to sign with and signing mode
+     * @return the path of the signed file, and the number of signed elements in per-element mode
+     * @throws Exception if the key cannot be loaded or the document cannot be signed
+     */
+    public SigningResult signXml(XmlSigningRequest request) throws Exception {
+        SigningKeyLoader.LoadedKey key = SigningKeyLoader.load(request.getCredentials());
+
+        String outputPath = FileUtil.prepareDistPath(
+                request.getOutputPath(),
+                request.getInputPath(),
+                FileUtil.Extension.XML
+        );
+
+        Integer signatureCount;
+        long started = OperationalMetrics.documentStarted();
+        try {
+            signatureCount = key.getSessionPool() == null
+                    ? signXmlFile(request, outputPath, key.getCertificate(), key.getPrivateKey())
+                    : key.getSessionPool().execute(session ->
+                            signXmlFile(request, outputPath, key.getCertificate(), session.getPrivateKey()));
+            OperationalMetrics.signaturesCreated("xml", signatureCount != null ? signatureCount : 1);
+            OperationalMetrics.documentSigned("xml", started);
+        } catch (Exception e) {
+            OperationalMetrics.signingFailed("xml", started);
+            if (key.getToken() != null && PKCS11KeyStore.isSessionLost(e)) key.getToken().invalidate();
+            throw e;
+        }
+        return SigningResult.builder()
+                .signedFilePath(outputPath)
+                .signatureCount(signatureCount)
+                .build();
+    }
+
+    /**
+     * Signs one XML file with the given key.
+     *
+     * @return the number of signed elements in per-element mode, otherwise null
+     */
+    private static Integer signXmlFile(XmlSigningRequest request, String outputPath, X509Certificate certificate,
+                                       PrivateKey privateKey) throws Exception {
+        if (request.getElementSelector() != null) {
+            // Per-element mode: one signature per selected record, computed in a single streaming pass
+            XmlElementSelector selector = XmlElementSelector.parse(request.getElementSelector());
+            StreamingXMLSigner elementSigner = new StreamingXMLSigner(certificate, privateKey, selector);
+            return elementSigner.signXmlFile(Paths.get(request.getInputPath()), Paths.get(outputPath));
+        } else if (request.isStreaming()) {
+            // Streaming mode: bounded memory for very large documents
+            StreamingXMLSigner streamingSigner = new StreamingXMLSigner(certificate, privateKey);
+            streamingSigner.signXmlFile(Paths.get(request.getInputPath()), Paths.get(outputPath));
+        } else {
+            XMLSigner xmlSigner = new XMLSigner(certificate, privateKey);
+            String signedXml = xmlSigner.signXmlFromFile(request.getInputPath());
+            FileUtil.writeToDisk(signedXml, outputPath);
+        }
+        return null;
+    }
+
+    /**
+     * Signs many XML files with one loaded key on a pool of worker threads. A file that fails is reported
+     * in the result and does not stop the batch. With a journal, files signed by an earlier run of the same
+     * batch are skipped.
+     *
+     * @param request the input files, output directory, key to sign with and signing mode
+     * @return the result of each file and a summary
+     * @throws IllegalArgumentException if there are no input files, two inputs would be signed into the same output file,
+     *                                  or an input is the output of another input
+     * @throws Exception if the key cannot be loaded, or the output directory or journal cannot be opened
+     */
+    public XmlBatchSigningResult signXmlBatch(XmlBatchSigningRequest request) throws Exception {
+        if (request.getInputs() == null || request.getInputs().isEmpty()) {
+            throw new IllegalArgumentException("No XML files to sign.");
+        }
+
+        // The key is loaded once and shared by every worker; with token slots, the workers share the slots' sessions
+        SigningKeyLoader.LoadedKey key = SigningKeyLoader.load(request.getCredentials());
+        XmlElementSelector elementSelector = request.getElementSelector() != null ? XmlElementSelector.parse(request.getElementSelector()) : null;
+        XMLBatchSigner batchSigner = key.getSessionPool() == null
+                ? new XMLBatchSigner(key.getCertificate(), key.getPrivateKey(), request.getThreads(), request.isStreaming(), elementSelector)
+                : new XMLBatchSigner(key.getCertificate(), key.getSessionPool(), request.getThreads(), request.isStreaming(), elementSelector);
+        XmlBatchSigningResult result;
+        if (request.getJournal() == null) {
+            result = batchSigner.signAll(request.getInputs(), request.getOutputDirectory());
+        } else {
+            try (BatchJournal journal = BatchJournal.open(request.getJournal())) {
+                result = batchSigner.signAll(request.getInputs(), request.getOutputDirectory(), journal);
+            }
+        }
+
+        // Failed files are reported, not thrown; drop the cached login if the token stopped answering
+        if (key.getToken() != null && result.getSummary().getFailedFiles() > 0 && !key.getToken().isHealthy()) {
+            key.getToken().invalidate();
+        }
+        return result;
+    }
+
+    /**
+     * Verifies every signature of a PDF file.
+     *
+     * @param pdfPath path of the signed PDF
+     * @return the verification result of each signature
+     * @throws IOException if the file cannot be read
+     * @throws GeneralSecurityException if a signature cannot be processed
+     */
+    public PdfSignatureVerificationResult verifyPdf(String pdfPath) throws IOException, GeneralSecurityException {
+        return new PdfSignatureVerifier().verifySignatures(pdfPath);
+    }
+
+    /**
+     * Verifies every signature of an XML file.
+     *
+     * @param xmlPath path of the signed XML
+     * @return the verification result of each signature
+     * @throws IOException if the file cannot be read
+     * @throws GeneralSecurityException if a signature cannot be processed
+     */
+    public XmlSignatureVerificationResult verifyXml(String xmlPath) throws IOException, GeneralSecurityException {
+        return new XMLSignatureVerifier().verifySignatures(xmlPath);
+    }
+
+    /**
+     * Lists the tokens present for a PKCS#11 library.
+     *
+     * @param pkcs11LibPath path of the PKCS#11 library
+     * @return the tokens found, one per slot with a token
+     * @throws Exception if the library cannot be loaded
+     */
+    public List<TokenInventory.TokenInfo> listTokens(String pkcs11LibPath) throws Exception {
+        return TokenInventory.listTokens(pkcs11LibPath);
+    }
+}
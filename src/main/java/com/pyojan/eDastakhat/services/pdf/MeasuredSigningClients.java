@@ -0,0 +1,119 @@
+package com.pyojan.eDastakhat.services.pdf;
+
+import com.itextpdf.text.pdf.security.CrlClient;
+import com.itextpdf.text.pdf.security.ExternalSignature;
+import com.itextpdf.text.pdf.security.OcspClient;
+import com.itextpdf.text.pdf.security.TSAClient;
+import com.pyojan.eDastakhat.libs.metrics.MetricsRecorder;
+import com.pyojan.eDastakhat.libs.metrics.OperationalMetrics;
+
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Wraps the clients that {@code MakeSignature.signDetached} calls, so the private key operation, the
+ * timestamp request and the CRL and OCSP fetches are reported as stages of their own instead of
+ * disappearing into the total signing time. The remote requests also feed the latency and error
+ * metrics of {@link OperationalMetrics}, and the key operation its in-flight gauge.
+ */
+final class MeasuredSigningClients {
+
+    private MeasuredSigningClients() {
+        throw new UnsupportedOperationException("Utility class. Do not instantiate.");
+    }
+
+    static ExternalSignature signature(ExternalSignature signature, MetricsRecorder recorder, String stage) {
+        return new ExternalSignature() {
+            @Override
+            public String getHashAlgorithm() {
+                return signature.getHashAlgorithm();
+            }
+
+            @Override
+            public String getEncryptionAlgorithm() {
+                return signature.getEncryptionAlgorithm();
+            }
+
+            @Override
+            public byte[] sign(byte[] message) throws GeneralSecurityException {
+                OperationalMetrics.keyOperationStarted();
+                try (MetricsRecorder.Stage measured = recorder.stage(stage)) {
+                    measured.addBytesRead(message.length);
+                    byte[] signed = signature.sign(message);
+                    measured.addBytesWritten(signed.length);
+                    return signed;
+                } finally {
+                    OperationalMetrics.keyOperationFinished();
+                }
+            }
+        };
+    }
+
+    static TSAClient tsa(TSAClient tsaClient, MetricsRecorder recorder, String stage) {
+        if (tsaClient == null) return null;
+        return new TSAClient() {
+            @Override
+            public int getTokenSizeEstimate() {
+                return tsaClient.getTokenSizeEstimate();
+            }
+
+            @Override
+            public MessageDigest getMessageDigest() throws GeneralSecurityException {
+                return tsaClient.getMessageDigest();
+            }
+
+            @Override
+            public byte[] getTimeStampToken(byte[] imprint) throws Exception {
+                long start = System.nanoTime();
+                byte[] token = null;
+                try (MetricsRecorder.Stage measured = recorder.stage(stage)) {
+                    token = tsaClient.getTimeStampToken(imprint);
+                    if (token != null) measured.addBytesRead(token.length);
+                    return token;
+                } finally {
+                    OperationalMetrics.remoteCall("tsa", System.nanoTime() - start, token == null);
+                }
+            }
+        };
+    }
+
+    static List<CrlClient> crl(List<CrlClient> crlClients, MetricsRecorder recorder, String stage) {
+        if (crlClients == null) return null;
+        List<CrlClient> measuredClients = new ArrayList<>(crlClients.size());
+        for (CrlClient crlClient : crlClients) {
+            measuredClients.add((certificate, url) -> {
+                long start = System.nanoTime();
+                Collection<byte[]> crls = null;
+                try (MetricsRecorder.Stage measured = recorder.stage(stage)) {
+                    crls = crlClient.getEncoded(certificate, url);
+                    if (crls != null) {
+                        for (byte[] crl : crls) measured.addBytesRead(crl.length);
+                    }
+                    return crls;
+                } finally {
+                    OperationalMetrics.remoteCall("crl", System.nanoTime() - start, crls == null);
+                }
+            });
+        }
+        return measuredClients;
+    }
+
+    static OcspClient ocsp(OcspClient ocspClient, MetricsRecorder recorder, String stage) {
+        if (ocspClient == null) return null;
+        return (X509Certificate checkCert, X509Certificate issuerCert, String url) -> {
+            long start = System.nanoTime();
+            byte[] response = null;
+            try (MetricsRecorder.Stage measured = recorder.stage(stage)) {
+                response = ocspClient.getEncoded(checkCert, issuerCert, url);
+                if (response != null) measured.addBytesRead(response.length);
+                return response;
+            } finally {
+                OperationalMetrics.remoteCall("ocsp", System.nanoTime() - start, response == null);
+            }
+        };
+    }
+}
@@ -1,10 +1,13 @@
 package com.pyojan.eDastakhat.services.pdf;
 
 import com.google.gson.GsonBuilder;
+import com.itextpdf.text.Rectangle;
 import com.itextpdf.text.pdf.AcroFields;
 import com.itextpdf.text.pdf.PdfReader;
 import com.itextpdf.text.pdf.PdfSignatureAppearance;
 import com.itextpdf.text.pdf.security.PdfPKCS7;
+import com.pyojan.eDastakhat.libs.keyStore.ProviderRegistry;
+import com.pyojan.eDastakhat.libs.metrics.OperationalMetrics;
 import com.pyojan.eDastakhat.models.PdfSignatureVerificationResult;
 import com.pyojan.eDastakhat.models.PdfSignatureVerificationResult.*;
 import org.bouncycastle.jce.provider.BouncyCastleProvider;
@@ -13,7 +16,6 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.security.GeneralSecurityException;
-import java.security.Security;
 import java.security.cert.X509Certificate;
 import java.util.*;
 
@@ -26,7 +28,7 @@ public class PdfSignatureVerifier {
     private static final String PROVIDER_NAME = BouncyCastleProvider.PROVIDER_NAME;
 
     static {
-        Security.addProvider(new BouncyCastleProvider());
+        ProviderRegistry.getBouncyCastle();
     }
 
     /**
@@ -38,9 +40,17 @@ public class PdfSignatureVerifier {
      * @throws GeneralSecurityException If a security-related error occurs during verification.
      */
     public PdfSignatureVerificationResult verifySignatures(byte[] pdfData) throws IOException, GeneralSecurityException {
-        PdfReader reader = new PdfReader(pdfData);
-
-        return verifyDocumentSignatures(reader);
+        long started = OperationalMetrics.documentStarted();
+        try {
+            PdfReader reader = new PdfReader(pdfData);
+
+            PdfSignatureVerificationResult result = verifyDocumentSignatures(reader);
+            OperationalMetrics.documentVerified("pdf", started);
+            return result;
+        } catch (IOException | GeneralSecurityException | RuntimeException e) {
+            OperationalMetrics.verificationFailed("pdf", started);
+            throw e;
+        }
     }
 
     /**
@@ -72,7 +82,8 @@ public class PdfSignatureVerifier {
             throw new IllegalArgumentException("No signatures found in the PDF.");
         }
 
-        List<SignatureInfo> signatures = verifyAllSignatures(acroFields, signatureNames);
+        Map<String, AcroFields.FieldPosition> positions = buildSignaturePositionIndex(acroFields, signatureNames);
+        List<SignatureInfo> signatures = verifyAllSignatures(acroFields, signatureNames, positions);
 
         return PdfSignatureVerificationResult.builder()
                 .document(buildDocumentInfo(reader, signatureNames, signatures))
@@ -80,20 +91,44 @@ public class PdfSignatureVerifier {
                 .build();
     }
 
+    /**
+     * Builds an index from each signature field name to the position of its widget annotation.
+     * The index is built once per document, so each signature lookup is a single map access
+     * instead of a walk over the pages.
+     *
+     * @param acroFields     The AcroFields instance containing signature information.
+     * @param signatureNames The list of signature names in the PDF.
+     * @return A map of signature name to the first widget position (page and rectangle) of that field.
+     */
+    private Map<String, AcroFields.FieldPosition> buildSignaturePositionIndex(AcroFields acroFields, List<String> signatureNames) {
+        Map<String, AcroFields.FieldPosition> positions = new HashMap<>(signatureNames.size() * 2);
+
+        for (String sigName : signatureNames) {
+            List<AcroFields.FieldPosition> fieldPositions = acroFields.getFieldPositions(sigName);
+            if (fieldPositions != null && !fieldPositions.isEmpty()) {
+                positions.put(sigName, fieldPositions.get(0));
+            }
+        }
+
+        return positions;
+    }
+
     /**
      * Verifies all signatures in the PDF and collects their verification details.
      *
      * @param acroFields     The AcroFields instance containing signature information.
      * @param signatureNames The list of signature names in the PDF.
+     * @param positions      The index of signature widget positions built for this document.
      * @return A list of SignatureInfo objects detailing each signature's verification status.
      * @throws GeneralSecurityException If a security-related error occurs during verification.
      */
-    private List<SignatureInfo> verifyAllSignatures(AcroFields acroFields, List<String> signatureNames) throws GeneralSecurityException {
+    private List<SignatureInfo> verifyAllSignatures(AcroFields acroFields, List<String> signatureNames,
+                                                    Map<String, AcroFields.FieldPosition> positions) throws GeneralSecurityException {
         List<SignatureInfo> signatures = new ArrayList<>();
 
         for (int i = 0; i < signatureNames.size(); i++) {
             String sigName = signatureNames.get(i);
-            signatures.add(verifySignature(acroFields, sigName, i, signatureNames.size()));
+            signatures.add(verifySignature(acroFields, sigName, positions.get(sigName), i, signatureNames.size()));
         }
 
         return signatures;
@@ -104,12 +139,14 @@ public class PdfSignatureVerifier {
      *
      * @param acroFields      The AcroFields instance containing signature information.
      * @param sigName         The name of the signature to verify.
+     * @param fieldPosition   The widget position of the signature field, or null if the field has no widget.
      * @param index           The index of the signature (0-based).
      * @param totalSignatures The total number of signatures in the PDF.
      * @return A SignatureInfo object containing the verification details for the signature.
      * @throws GeneralSecurityException If a security-related error occurs during verification.
      */
-    private SignatureInfo verifySignature(AcroFields acroFields, String sigName, int index, int totalSignatures)
+    private SignatureInfo verifySignature(AcroFields acroFields, String sigName, AcroFields.FieldPosition fieldPosition,
+                                          int index, int totalSignatures)
             throws GeneralSecurityException {
         PdfPKCS7 pkcs7 = acroFields.verifySignature(sigName, PROVIDER_NAME);
         X509Certificate cert = pkcs7.getSigningCertificate();
@@ -120,7 +157,8 @@ public class PdfSignatureVerifier {
         return SignatureInfo.builder()
                 .signatureIndex(index + 1)
                 .signatureName(sigName)
-                .pageNumber(1) // iText 5 doesn't map signatures to pages directly
+                .pageNumber(fieldPosition != null ? fieldPosition.page : 0)
+                .position(buildSignaturePosition(fieldPosition))
                 .signingTime(pkcs7.getSignDate().getTime())
                 .reason(pkcs7.getReason())
                 .location(pkcs7.getLocation())
@@ -133,6 +171,25 @@ public class PdfSignatureVerifier {
                 .build();
     }
 
+    /**
+     * Builds the widget rectangle information for a signature field.
+     *
+     * @param fieldPosition The widget position of the signature field, may be null.
+     * @return A SignaturePosition object, or null if the field has no widget.
+     */
+    private SignaturePosition buildSignaturePosition(AcroFields.FieldPosition fieldPosition) {
+        if (fieldPosition == null || fieldPosition.position == null) return null;
+
+        Rectangle rect = fieldPosition.position;
+        return SignaturePosition.builder()
+                .llx(rect.getLeft())
+                .lly(rect.getBottom())
+                .urx(rect.getRight())
+                .ury(rect.getTop())
+                .visible(rect.getWidth() > 0 && rect.getHeight() > 0)
+                .build();
+    }
+
     /**
      * Builds certificate information for a given X509 certificate.
      *
@@ -8,18 +8,24 @@ import com.pyojan.eDastakhat.exceptions.SignerException;
 import com.pyojan.eDastakhat.exceptions.TsaException;
 import com.pyojan.eDastakhat.exceptions.UserCancelledException;
 import com.pyojan.eDastakhat.libs.PdfWaterMarker;
-import com.pyojan.eDastakhat.libs.Response;
 import com.pyojan.eDastakhat.libs.keyStore.PKCS11KeyStore;
-import com.pyojan.eDastakhat.libs.keyStore.PKCS12KeyStore;
-import com.pyojan.eDastakhat.libs.keyStore.WindowKeyStore;
+import com.pyojan.eDastakhat.libs.keyStore.PKCS11SessionPool;
+import com.pyojan.eDastakhat.libs.keyStore.SigningKeyLoader;
+import com.pyojan.eDastakhat.libs.log.StructuredLog;
+import com.pyojan.eDastakhat.libs.metrics.MetricsRecorder;
+import com.pyojan.eDastakhat.libs.metrics.MetricsSink;
+import com.pyojan.eDastakhat.libs.metrics.OperationalMetrics;
+import com.pyojan.eDastakhat.models.PdfSigningRequest;
 import com.pyojan.eDastakhat.models.SignatureOptions;
+import com.pyojan.eDastakhat.models.SigningCredentials;
+import com.pyojan.eDastakhat.models.SigningMetrics;
+import com.pyojan.eDastakhat.models.SigningResult;
 import com.pyojan.eDastakhat.utils.FileUtil;
-import com.pyojan.eDastakhat.utils.OSDetector;
 import com.pyojan.eDastakhat.utils.Utils;
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.Setter;
 import net.sf.oval.constraint.NotNull;
-import org.apache.commons.cli.CommandLine;
 
 import java.io.*;
 import java.security.PrivateKey;
@@ -27,7 +33,8 @@ import java.security.cert.Certificate;
 import java.security.cert.X509Certificate;
 import java.util.Arrays;
 import java.util.Base64;
-import java.util.LinkedHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
 
 @Getter
 @Setter
@@ -35,74 +42,214 @@ public class PdfSigner {
 
     private final Signer signer = new Signer();
 
-    /**
-     * Execute the signing process.
-     *
-     * @param commandLine the {@link CommandLine} containing all the command line options
-     * @param options     the {@link SignatureOptions} which contains all the signature options
-     * @throws Exception if any error occurs during the signing process
-     */
-    public void executeSign(@NotNull CommandLine commandLine, SignatureOptions options) throws Exception {
+    private MetricsRecorder metricsRecorder = MetricsRecorder.disabled();
 
-        String pdfPath = commandLine.getOptionValue("i");
-        String pdfPassword = commandLine.getOptionValue("pw");
-        String dist = commandLine.getOptionValue("o");
-        boolean notApplyWatermark = commandLine.hasOption("nw");
+    private SignedDocumentCache signedDocumentCache;
 
-        // Load the input PDF as a byte array (with or without a watermark)
-        byte[] inputPdfBytes = applyWaterMark(options, notApplyWatermark, pdfPath);
+    // Set by findSignedCopy for this document; signDocument records the signed copy under it
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private String deduplicationKey;
 
-        String outputPath = FileUtil.prepareDistPath(dist, pdfPath, FileUtil.Extension.PDF);
-        PdfReader reader = (pdfPassword == null || pdfPassword.isEmpty()) ?
-                new PdfReader(new ByteArrayInputStream(inputPdfBytes)) :
-                new PdfReader(new ByteArrayInputStream(inputPdfBytes), pdfPassword.getBytes());
+    // True if findSignedCopy returned an earlier signed copy
+    @Setter(AccessLevel.NONE)
+    private boolean signedCopyReused;
 
+    /**
+     * Sets the recorder for the stages of this signer and of the {@link Signer} it delegates to.
+     *
+     * @param metricsRecorder the recorder, or null to stop recording
+     */
+    public void setMetricsRecorder(MetricsRecorder metricsRecorder) {
+        this.metricsRecorder = metricsRecorder == null ? MetricsRecorder.disabled() : metricsRecorder;
+        signer.setMetricsRecorder(this.metricsRecorder);
+    }
 
-        PrivateKey privateKey = null;
-        String provider = null;
-        X509Certificate[] certificateChain = null;
+    /**
+     * Returns an earlier signed copy for a repeated request instead of signing again, see
+     * {@link SignedDocumentCache}.
+     *
+     * @param signedDocumentCache the cache, or null to sign every request
+     */
+    public void setSignedDocumentCache(SignedDocumentCache signedDocumentCache) {
+        this.signedDocumentCache = signedDocumentCache;
+    }
 
+    /**
+     * Signs a PDF file and writes the signed copy to disk.
+     * <p>
+     * With {@code collectMetrics} the result carries the wall time, bytes read and written, and allocated
+     * bytes of each stage. Metrics are also published to every registered {@link MetricsSink}, also when
+     * signing fails. A {@code PdfSigner} signs one document at a time; use one instance per thread.
+     *
+     * @param request the input and output paths, signature options and key to sign with
+     * @return the path of the signed file, and the metrics when requested
+     * @throws Exception if any error occurs during the signing process
+     */
+    public SigningResult sign(@NotNull PdfSigningRequest request) throws Exception {
+        startMetrics(request);
+        String signedFilePath;
+        SigningKey signingKey = null;
+        try {
+            signingKey = loadSigningKey(request.getCredentials());
+            signedFilePath = findSignedCopy(request, signingKey);
+            if (signedFilePath == null) {
+                PreparedDocument document = prepareDocument(request);
+                TSAClient tsaClient = createTsaClient(request.getOptions());
+                signedFilePath = signDocument(document, signingKey, tsaClient, request.getOptions());
+            }
+        } catch (Exception e) {
+            if (signingKey != null) signingKey.invalidateIfSessionLost(e);
+            finishMetrics(request);
+            throw e;
+        }
+        return SigningResult.builder()
+                .signedFilePath(signedFilePath)
+                .deduplicated(signedCopyReused ? Boolean.TRUE : null)
+                .metrics(finishMetrics(request))
+                .build();
+    }
 
-        // if Token argument is provided, then use PKCS11 and if PFX is provided, then use PFX and if these are not provided, then use Windows
-        if(commandLine.hasOption("t")) {
-            PKCS11KeyStore pkcs11KeyStore = new PKCS11KeyStore();
-            if(commandLine.hasOption("ts")) pkcs11KeyStore.setTokenSerial(commandLine.getOptionValue("ts")); // Token Serial is optional
-            pkcs11KeyStore.setCertSerialHex(commandLine.getOptionValue("cs"));
+    /**
+     * Starts recording the metrics of a document if the request, a registered sink or slow-stage logging
+     * asks for them. The stage methods below record into this recorder.
+     *
+     * @param request the signing request
+     */
+    public void startMetrics(PdfSigningRequest request) {
+        boolean recordMetrics = request.isCollectMetrics() || MetricsRecorder.hasSinks() || MetricsRecorder.isSlowStageLoggingEnabled();
+        setMetricsRecorder(recordMetrics ? MetricsRecorder.start("pdf-sign") : null);
+    }
 
-            pkcs11KeyStore.init(commandLine.getOptionValue("t"), commandLine.getOptionValue('p'));
+    /**
+     * Ends the metrics started with {@link #startMetrics(PdfSigningRequest)} and publishes them to the sinks.
+     * Call it once, also when signing fails.
+     *
+     * @param request the signing request
+     * @return the metrics if the request asked for them, otherwise null
+     */
+    public SigningMetrics finishMetrics(PdfSigningRequest request) {
+        SigningMetrics metrics = metricsRecorder.finish();
+        return request.isCollectMetrics() ? metrics : null;
+    }
 
-            privateKey = pkcs11KeyStore.getPrivateKey();
-            provider = pkcs11KeyStore.getProvider().getName();
-            certificateChain = pkcs11KeyStore.getCertificateChain();
-        } else if (commandLine.hasOption("pf")) {
-            String pf = commandLine.getOptionValue("pf");
-            String p = commandLine.getOptionValue("p");
-            PKCS12KeyStore pkcs12KeyStore = new PKCS12KeyStore(pf, p);
+    /**
+     * First stage: reads the input PDF, applies the watermark unless disabled, and parses it.
+     * The work is CPU-bound apart from reading the file.
+     *
+     * @param request the signing request
+     * @return the parsed document and where to write the signed copy
+     * @throws IOException if the file cannot be read or parsed
+     * @throws DocumentException if the watermark cannot be applied
+     */
+    public PreparedDocument prepareDocument(PdfSigningRequest request) throws IOException, DocumentException {
+        SignatureOptions options = request.getOptions();
+        String pdfPath = request.getInputPath();
+        String pdfPassword = request.getPassword();
+        boolean notApplyWatermark = !request.isWatermark();
 
-            privateKey = pkcs12KeyStore.getPrivateKey();
-            provider = pkcs12KeyStore.getProvider().getName();
-            certificateChain = pkcs12KeyStore.getCertificateChain();
+        // Load the input PDF as a byte array (with or without a watermark)
+        byte[] inputPdfBytes;
+        long inputFileSize = new File(pdfPath).length();
+        try (MetricsRecorder.Stage stage = metricsRecorder.stage(notApplyWatermark ? "read" : "watermark")) {
+            inputPdfBytes = applyWaterMark(options, notApplyWatermark, pdfPath);
+            stage.addBytesRead(inputFileSize);
+            stage.addBytesWritten(inputPdfBytes.length);
+        }
+        metricsRecorder.addBytesRead(inputFileSize);
+
+        String outputPath = FileUtil.prepareDistPath(request.getOutputPath(), pdfPath, FileUtil.Extension.PDF);
+        PdfReader reader;
+        try (MetricsRecorder.Stage stage = metricsRecorder.stage("parse")) {
+            reader = (pdfPassword == null || pdfPassword.isEmpty()) ?
+                    new PdfReader(new ByteArrayInputStream(inputPdfBytes)) :
+                    new PdfReader(new ByteArrayInputStream(inputPdfBytes), pdfPassword.getBytes());
+            stage.addBytesRead(inputPdfBytes.length);
+        }
+        return new PreparedDocument(reader, outputPath);
+    }
 
+    /**
+     * Deduplication stage: hashes the input and returns an earlier signed copy of the same request from the
+     * cache set with {@link #setSignedDocumentCache(SignedDocumentCache)}. It needs the loaded key, because
+     * the signing certificate is part of the cache key, and because a repeated request must still present
+     * valid credentials.
+     *
+     * @param request    the signing request
+     * @param signingKey the key returned by {@link #loadSigningKey(SigningCredentials)}
+     * @return the output path holding the earlier signed copy, or null if the document has to be signed
+     * @throws IOException if the input cannot be read or the signed copy cannot be copied to the output
+     */
+    public String findSignedCopy(PdfSigningRequest request, SigningKey signingKey) throws IOException {
+        if (signedDocumentCache == null) return null;
+
+        try (MetricsRecorder.Stage stage = metricsRecorder.stage("deduplicate")) {
+            deduplicationKey = SignedDocumentCache.key(request.getInputPath(), request.getPassword(),
+                    request.getOptions(), request.isWatermark(), signingKey.certificateChain[0]);
+            stage.addBytesRead(new File(request.getInputPath()).length());
+
+            String outputPath = FileUtil.prepareDistPath(request.getOutputPath(), request.getInputPath(), FileUtil.Extension.PDF);
+            String reused = signedDocumentCache.reuse(deduplicationKey, outputPath);
+            signedCopyReused = reused != null;
+            if (signedCopyReused) StructuredLog.info("pdf.deduplicated", "output", reused);
+            return reused;
+        }
+    }
 
-        } else {
-            if(!OSDetector.isWindows()) throw new SignerException("Only Windows is supported for this operation. Please use --t or --pf argument.");
+    /**
+     * Key stage: loads the private key and certificate chain from a token, a PFX file or the Windows
+     * certificate store. Keystores and keys are cached, so this only waits on the key store the first time.
+     *
+     * @param credentials where the key comes from, or null for the Windows certificate store
+     * @return the key, its certificate chain and its provider
+     * @throws Exception if the key cannot be loaded
+     */
+    public SigningKey loadSigningKey(SigningCredentials credentials) throws Exception {
+        SigningKeyLoader.LoadedKey key;
+        try (MetricsRecorder.Stage ignored = metricsRecorder.stage("keyStore")) {
+            key = SigningKeyLoader.load(credentials);
+        }
 
-            WindowKeyStore windowKeyStore = new WindowKeyStore();
-            windowKeyStore.setSerialHex(commandLine.getOptionValue("cs"));
+        if (key.getSessionPool() != null) return new SigningKey(key.getSessionPool(), key.getCertificateChain());
+        return new SigningKey(key.getPrivateKey(), key.getProvider(), key.getCertificateChain(), key.getToken());
+    }
 
-            privateKey = windowKeyStore.getPrivateKey();
-            certificateChain = windowKeyStore.getCertificateChain();
-            provider = windowKeyStore.getProvider();
+    /**
+     * Network stage: checks the timestamp authority and creates its client.
+     *
+     * @param options the signature options
+     * @return the TSA client, or null if timestamping is disabled
+     * @throws TsaException if the timestamp authority cannot be used
+     */
+    public TSAClient createTsaClient(SignatureOptions options) throws TsaException {
+        try (MetricsRecorder.Stage ignored = metricsRecorder.stage("tsaProbe")) {
+            return getTsaClient(options);
         }
+    }
 
-        if (privateKey == null) throw new SignerException("Unable to find private key, please try again with correct arguments");
-        if (certificateChain == null) throw new SignerException("Unable to find certificate chain, please try again with correct arguments");
-        if (provider == null) throw new SignerException("Unable to find provider, please try again.");
+    /**
+     * Last stage: signs the selected pages and writes the signed PDF. It waits on the private key operation
+     * and, when timestamping or LTV is enabled, on the TSA, OCSP and CRL requests.
+     *
+     * @param document   the document returned by {@link #prepareDocument(PdfSigningRequest)}
+     * @param signingKey the key returned by {@link #loadSigningKey(SigningCredentials)}
+     * @param tsaClient  the client returned by {@link #createTsaClient(SignatureOptions)}, or null
+     * @param options    the signature options
+     * @return the path of the signed file
+     * @throws Exception if any error occurs during signing or writing
+     */
+    public String signDocument(PreparedDocument document, SigningKey signingKey, TSAClient tsaClient,
+                               SignatureOptions options) throws Exception {
+        PdfReader reader = document.reader;
+        String outputPath = document.outputPath;
+        X509Certificate[] certificateChain = signingKey.certificateChain;
+
+        configureSigner(options);
 
-        TSAClient tsaClient = getTsaClient(options);
         int[] pagesToSign = Signer.parsePageSpecification(options.getPage(), reader.getNumberOfPages());
 
-        String signedPdfBase64 = signSelectedPages(
+        // A pooled key holds one session for the whole document
+        String signedPdfBase64 = signingKey.withKey((provider, privateKey) -> signSelectedPages(
                 reader,
                 options,
                 provider,
@@ -110,16 +257,252 @@ public class PdfSigner {
                 certificateChain,
                 tsaClient,
                 pagesToSign
-        );
+        ));
 
-        FileUtil.writePdfToDisk(outputPath, signedPdfBase64);
+        return writeSignedDocument(outputPath, signedPdfBase64);
+    }
 
-        LinkedHashMap<String, String> signDataMap = new LinkedHashMap<>();
-        signDataMap.put("signedFilePath", outputPath);
-        Response.generateSuccessResponse(signDataMap);
+    /**
+     * Pipelined variant of {@link #signDocument}: signs each page digest-first, in the phases of
+     * {@link Signer#prepareSignature}, and hands every phase to the runner. A document only holds a thread
+     * while one of its phases runs, so with one runner shared by many documents the CPU prepares and hashes
+     * one document while the key signs a second and the TSA timestamps a third.
+     *
+     * @param document   the document returned by {@link #prepareDocument(PdfSigningRequest)}
+     * @param signingKey the key returned by {@link #loadSigningKey(SigningCredentials)}
+     * @param tsaClient  the client returned by {@link #createTsaClient(SignatureOptions)}, or null
+     * @param options    the signature options
+     * @param runner     runs each phase on the executor for its resource
+     * @return a future completed with the path of the signed file, or completed exceptionally
+     */
+    public CompletableFuture<String> signDocumentPipelined(PreparedDocument document, SigningKey signingKey,
+                                                           TSAClient tsaClient, SignatureOptions options,
+                                                           PhaseRunner runner) {
+        PdfReader reader = document.reader;
+        int[] pagesToSign;
+        try {
+            configureSigner(options);
+            pagesToSign = Signer.parsePageSpecification(options.getPage(), reader.getNumberOfPages());
+        } catch (RuntimeException e) {
+            CompletableFuture<String> failed = new CompletableFuture<>();
+            failed.completeExceptionally(e);
+            return failed;
+        }
+        Arrays.sort(pagesToSign);
+        signer.resetReusableAppearance();
+
+        long started = OperationalMetrics.documentStarted();
+        return signPagesPipelined(reader, pagesToSign, 0, signingKey, tsaClient, options, runner)
+                .whenComplete((signedPdfBase64, error) -> {
+                    if (error == null) OperationalMetrics.documentSigned("pdf", started);
+                    else OperationalMetrics.signingFailed("pdf", started);
+                })
+                .thenCompose(signedPdfBase64 -> runner.run(PhaseRunner.Resource.CPU,
+                        () -> writeSignedDocument(document.outputPath, signedPdfBase64)));
     }
 
-    private String signSelectedPages(
+    /**
+     * Runs the phases of {@link #signDocumentPipelined}.
+     */
+    public interface PhaseRunner {
+
+        /**
+         * What a phase spends its time on.
+         */
+        enum Resource { CPU, KEY, NETWORK }
+
+        /**
+         * Runs a phase on the executor for the resource.
+         *
+         * @param resource what the phase spends its time on
+         * @param phase    the phase
+         * @return a future completed with the phase's result, or completed exceptionally
+         */
+        <T> CompletableFuture<T> run(Resource resource, Callable<T> phase);
+    }
+
+    private CompletableFuture<String> signPagesPipelined(PdfReader reader, int[] pagesToSign, int index,
+                                                         SigningKey signingKey, TSAClient tsaClient,
+                                                         SignatureOptions options, PhaseRunner runner) {
+        int page = pagesToSign[index];
+        if (page < 1 || page > reader.getNumberOfPages()) {
+            reader.close();
+            CompletableFuture<String> failed = new CompletableFuture<>();
+            failed.completeExceptionally(new IllegalArgumentException("Invalid page number: " + page));
+            return failed;
+        }
+
+        // Same rule as signPages: with "A" and no changes allowed, only the last signature locks the document
+        boolean allowChanges = (options.getPage().equalsIgnoreCase("A") && !options.isChangesAllowed())
+                ? (index < pagesToSign.length - 1)
+                : options.isChangesAllowed();
+
+        CompletableFuture<Signer.PendingSignature> pending = runner.run(PhaseRunner.Resource.CPU,
+                () -> signer.prepareSignature(reader, signingKey.certificateChain, page, options.getCoord(),
+                        options.isEnableLtv(), tsaClient != null, allowChanges, options.isGreenTick(),
+                        options.getReason(), options.getLocation(), options.getCustomText()));
+        if (options.isEnableLtv()) {
+            pending = pending.thenCompose(signature -> runner.run(PhaseRunner.Resource.NETWORK, () -> {
+                signer.fetchRevocationData(signature);
+                return signature;
+            }));
+        }
+        CompletableFuture<String> signed = pending
+                .thenCompose(signature -> runner.run(PhaseRunner.Resource.KEY, () -> signingKey.withKey((provider, privateKey) -> {
+                    signer.signPendingSignature(signature, provider, privateKey);
+                    return signature;
+                })))
+                .thenCompose(signature -> runner.run(
+                        tsaClient != null ? PhaseRunner.Resource.NETWORK : PhaseRunner.Resource.CPU,
+                        () -> signer.completeSignature(signature, tsaClient)));
+
+        if (index == pagesToSign.length - 1) return signed;
+        return signed
+                .thenCompose(signedPdfBase64 -> runner.run(PhaseRunner.Resource.CPU, () -> {
+                    try (MetricsRecorder.Stage stage = metricsRecorder.stage("reparse")) {
+                        byte[] signedPdf = Base64.getDecoder().decode(signedPdfBase64);
+                        stage.addBytesRead(signedPdf.length);
+                        return new PdfReader(signedPdf);
+                    }
+                }))
+                .thenCompose(next -> signPagesPipelined(next, pagesToSign, index + 1, signingKey, tsaClient, options, runner));
+    }
+
+    private void configureSigner(SignatureOptions options) {
+        signer.setFontPath(options.getFontPath());
+        if (options.getImage() != null) {
+            SignatureOptions.SignatureImage image = options.getImage();
+            signer.setSignatureImage(image.getPath(), image.getPlacement(), image.getOpacity());
+        }
+    }
+
+    private String writeSignedDocument(String outputPath, String signedPdfBase64) throws IOException {
+        try (MetricsRecorder.Stage stage = metricsRecorder.stage("write")) {
+            FileUtil.writePdfToDisk(outputPath, signedPdfBase64);
+            long written = new File(outputPath).length();
+            stage.addBytesRead(signedPdfBase64.length());
+            stage.addBytesWritten(written);
+            metricsRecorder.addBytesWritten(written);
+        }
+
+        if (deduplicationKey != null) {
+            try {
+                signedDocumentCache.put(deduplicationKey, outputPath);
+            } catch (IOException e) {
+                // The document is signed; only a later duplicate is signed again
+                StructuredLog.log(StructuredLog.Level.WARN, "pdf.deduplicationFailed", e, "output", outputPath);
+            }
+        }
+        return outputPath;
+    }
+
+    /**
+     * A parsed input PDF and the path its signed copy is written to.
+     */
+    public static final class PreparedDocument {
+        private final PdfReader reader;
+        private final String outputPath;
+
+        PreparedDocument(PdfReader reader, String outputPath) {
+            this.reader = reader;
+            this.outputPath = outputPath;
+        }
+
+        /**
+         * Closes the parsed document, for callers that give up before {@link #signDocument} runs.
+         */
+        public void close() {
+            reader.close();
+        }
+    }
+
+    /**
+     * A private key with its certificate chain and the name of the provider that performs its operations.
+     * A key spread over several token slots has no single private key; each operation borrows a session of
+     * its {@link PKCS11SessionPool} instead.
+     */
+    public static final class SigningKey {
+        private final PrivateKey privateKey;
+        private final String provider;
+        private final X509Certificate[] certificateChain;
+        // The token the key lives on, or null for a PFX file, the Windows store or a session pool
+        private final PKCS11KeyStore token;
+        // The sessions the key is used through, or null for a single key
+        private final PKCS11SessionPool sessionPool;
+
+        SigningKey(PrivateKey privateKey, String provider, X509Certificate[] certificateChain, PKCS11KeyStore token) {
+            this.privateKey = privateKey;
+            this.provider = provider;
+            this.certificateChain = certificateChain;
+            this.token = token;
+            this.sessionPool = null;
+        }
+
+        SigningKey(PKCS11SessionPool sessionPool, X509Certificate[] certificateChain) {
+            this.privateKey = null;
+            this.provider = null;
+            this.certificateChain = certificateChain;
+            this.token = null;
+            this.sessionPool = sessionPool;
+        }
+
+        /**
+         * An operation with the private key.
+         */
+        @FunctionalInterface
+        interface KeyOperation<T> {
+            T apply(String provider, PrivateKey privateKey) throws Exception;
+        }
+
+        /**
+         * Runs the operation with the private key, or with the key of an idle pooled session, which the pool
+         * reconnects and retries once if the session was lost.
+         */
+        <T> T withKey(KeyOperation<T> operation) throws Exception {
+            if (sessionPool == null) return operation.apply(provider, privateKey);
+            return sessionPool.execute(session -> operation.apply(session.getProviderName(), session.getPrivateKey()));
+        }
+
+        /**
+         * Drops the cached login of the token after signing failed because the token was removed or its
+         * session closed, so the next request logs in again instead of failing on the stale session.
+         *
+         * @param error why signing failed
+         */
+        public void invalidateIfSessionLost(Throwable error) {
+            if (token != null && PKCS11KeyStore.isSessionLost(error)) token.invalidate();
+        }
+    }
+
+    /**
+     * Signs the given pages one after another, each as its own incremental update.
+     * Package-private so the benchmark module can measure it without a keystore on the command line.
+     *
+     * @return the signed PDF as a Base64-encoded string
+     */
+    String signSelectedPages(
+            PdfReader originalReader,
+            SignatureOptions options,
+            String provider,
+            PrivateKey privateKey,
+            Certificate[] certChain,
+            TSAClient tsaClient,
+            int[] pagesToSign
+    )
+            throws IOException, UserCancelledException, SignerException {
+
+        long started = OperationalMetrics.documentStarted();
+        try {
+            String signedPdfBase64 = signPages(originalReader, options, provider, privateKey, certChain, tsaClient, pagesToSign);
+            OperationalMetrics.documentSigned("pdf", started);
+            return signedPdfBase64;
+        } catch (IOException | UserCancelledException | SignerException | RuntimeException e) {
+            OperationalMetrics.signingFailed("pdf", started);
+            throw e;
+        }
+    }
+
+    private String signPages(
             PdfReader originalReader,
             SignatureOptions options,
             String provider,
@@ -133,6 +516,9 @@ public class PdfSigner {
         PdfReader reader = originalReader;
         String lastSignedBase64 = null;
 
+        // Pages of this document may share the appearance rendered for the first signed page
+        signer.resetReusableAppearance();
+
         // Sort the pages to ensure we process them in order
         Arrays.sort(pagesToSign);
 
@@ -148,17 +534,23 @@ public class PdfSigner {
                     ? (i < pagesToSign.length - 1)
                     : options.isChangesAllowed();
 
-            lastSignedBase64 = signer.sign(
-                    reader, provider, privateKey, certChain, page, options.getCoord(),
-                    options.isEnableLtv(), tsaClient, allowChanges, options.isGreenTick(),
-                    options.getReason(), options.getLocation(), options.getCustomText()
-            );
+            try (MetricsRecorder.Stage ignored = metricsRecorder.stage("sign")) {
+                lastSignedBase64 = signer.sign(
+                        reader, provider, privateKey, certChain, page, options.getCoord(),
+                        options.isEnableLtv(), tsaClient, allowChanges, options.isGreenTick(),
+                        options.getReason(), options.getLocation(), options.getCustomText()
+                );
+            }
 
             // Close the previous reader and create a new one from the signed version
             if (reader != originalReader) {
                 reader.close();
             }
-            reader = new PdfReader(Base64.getDecoder().decode(lastSignedBase64));
+            try (MetricsRecorder.Stage stage = metricsRecorder.stage("reparse")) {
+                byte[] signedPdf = Base64.getDecoder().decode(lastSignedBase64);
+                reader = new PdfReader(signedPdf);
+                stage.addBytesRead(signedPdf.length);
+            }
         }
 
         // Clean up
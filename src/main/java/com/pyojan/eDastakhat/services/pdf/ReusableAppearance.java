@@ -0,0 +1,132 @@
+package com.pyojan.eDastakhat.services.pdf;
+
+import com.itextpdf.text.Rectangle;
+import com.itextpdf.text.pdf.PRIndirectReference;
+import com.itextpdf.text.pdf.PRStream;
+import com.itextpdf.text.pdf.PdfArray;
+import com.itextpdf.text.pdf.PdfName;
+import com.itextpdf.text.pdf.PdfNumber;
+import com.itextpdf.text.pdf.PdfObject;
+import com.itextpdf.text.pdf.PdfReader;
+import com.itextpdf.text.pdf.PdfSignatureAppearance;
+import com.itextpdf.text.pdf.PdfTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Signature appearance layers that an earlier signature of the same document already wrote as Form
+ * XObjects, so that later signatures with the same box and text can reference them instead of
+ * rendering them again.
+ * <p>
+ * Each page of a multi-page signing run is a separate incremental update, and object numbers from
+ * earlier revisions stay valid in later ones. The first signature renders the background (layer 0)
+ * and text (layer 2) as usual; every following signature with an identical appearance draws those
+ * existing objects with a single {@code Do} operator. The shared objects are written once, so the
+ * output is smaller and the text is laid out once per run instead of once per page.
+ */
+final class ReusableAppearance {
+
+    private final float width;
+    private final float height;
+    private final Object style;
+    private final List<String> lines;
+    private final int backgroundNumber;
+    private final int textNumber;
+
+    private ReusableAppearance(float width, float height, Object style, List<String> lines,
+                               int backgroundNumber, int textNumber) {
+        this.width = width;
+        this.height = height;
+        this.style = style;
+        this.lines = new ArrayList<>(lines);
+        this.backgroundNumber = backgroundNumber;
+        this.textNumber = textNumber;
+    }
+
+    /**
+     * Records the layers rendered into the given appearance, for reuse by later signatures once this
+     * signature has been written.
+     *
+     * @param appearance the appearance whose layer 0 and layer 2 were rendered
+     * @param style      the font and image settings the layers were rendered with; compared with
+     *                   {@link Object#equals(Object)}
+     * @param lines      the text lines rendered into layer 2
+     * @return the reusable appearance
+     */
+    static ReusableAppearance capture(PdfSignatureAppearance appearance, Object style, List<String> lines) {
+        PdfTemplate background = appearance.getLayer(0);
+        PdfTemplate text = appearance.getLayer(2);
+        return new ReusableAppearance(
+                text.getWidth(),
+                text.getHeight(),
+                style,
+                lines,
+                background.getIndirectReference().getNumber(),
+                text.getIndirectReference().getNumber()
+        );
+    }
+
+    /**
+     * Draws the recorded layers into the given appearance if it has the same size, style and text, and
+     * the recorded objects are present in the document being signed.
+     *
+     * @param appearance the appearance of the signature being created
+     * @param reader     the reader of the document being signed
+     * @param style      the font and image settings for the appearance
+     * @param lines      the text lines for layer 2
+     * @return true if the recorded layers were reused, false if the appearance must be rendered
+     */
+    boolean applyTo(PdfSignatureAppearance appearance, PdfReader reader, Object style, List<String> lines) {
+        PdfTemplate background = appearance.getLayer(0);
+        PdfTemplate text = appearance.getLayer(2);
+        if (Float.compare(width, text.getWidth()) != 0 || Float.compare(height, text.getHeight()) != 0
+                || !Objects.equals(this.style, style) || !this.lines.equals(lines)) {
+            return false;
+        }
+        if (!isFormXObject(reader, backgroundNumber) || !isFormXObject(reader, textNumber)) {
+            return false;
+        }
+
+        background.addTemplate(new ExistingFormXObject(reader, backgroundNumber, width, height), 0, 0);
+        text.addTemplate(new ExistingFormXObject(reader, textNumber, width, height), 0, 0);
+        return true;
+    }
+
+    /**
+     * Checks that the object is a Form XObject with the recorded bounding box, so a stale record can
+     * never point the appearance at an unrelated object.
+     */
+    private boolean isFormXObject(PdfReader reader, int number) {
+        PdfObject object = reader.getPdfObject(number);
+        if (!(object instanceof PRStream)) return false;
+
+        PRStream stream = (PRStream) object;
+        PdfArray bbox = stream.getAsArray(PdfName.BBOX);
+        if (!PdfName.FORM.equals(stream.getAsName(PdfName.SUBTYPE)) || bbox == null || bbox.size() != 4) {
+            return false;
+        }
+        for (int i = 0; i < 4; i++) {
+            if (bbox.getAsNumber(i) == null) return false;
+        }
+        return matches(bbox.getAsNumber(0), 0) && matches(bbox.getAsNumber(1), 0)
+                && matches(bbox.getAsNumber(2), width) && matches(bbox.getAsNumber(3), height);
+    }
+
+    private static boolean matches(PdfNumber number, float expected) {
+        return Math.abs(number.floatValue() - expected) < 0.01f;
+    }
+
+    /**
+     * A Form XObject that already exists in the document. iText references it by its original object
+     * number and does not write it again.
+     */
+    private static final class ExistingFormXObject extends PdfTemplate {
+        private ExistingFormXObject(PdfReader reader, int number, float width, float height) {
+            this.type = TYPE_TEMPLATE;
+            this.thisReference = new PRIndirectReference(reader, number);
+            this.bBox = new Rectangle(width, height);
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package com.pyojan.eDastakhat.services.pdf;
+
+import com.pyojan.eDastakhat.libs.FontRegistry;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Computes the font size for signature appearance text.
+ * <p>
+ * Each line is measured once at 1pt; the largest size that fits the box is then derived directly from
+ * the widest line and the line count, instead of re-measuring every line at every candidate size.
+ * Layouts are cached per font, box size and text, so the same signature placed on many pages is laid
+ * out only once.
+ */
+final class SignatureTextLayout {
+
+    static final float MAX_FONT_SIZE = 16f; // Upper limit for readability
+    static final float MIN_FONT_SIZE = 4f;  // Lower limit for readability
+    static final float LINE_SPACING = 1.2f; // 20% line spacing
+    private static final float FONT_SIZE_STEP = 0.5f;
+    private static final int MAX_CACHED_LAYOUTS = 256;
+
+    private static final Map<LayoutKey, Float> LAYOUTS = Collections.synchronizedMap(
+            new LinkedHashMap<LayoutKey, Float>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<LayoutKey, Float> eldest) {
+                    return size() > MAX_CACHED_LAYOUTS;
+                }
+            });
+
+    private SignatureTextLayout() {
+        throw new UnsupportedOperationException("Utility class. Do not instantiate.");
+    }
+
+    /**
+     * Returns the largest font size, in 0.5pt steps between {@value #MIN_FONT_SIZE} and
+     * {@value #MAX_FONT_SIZE}, at which every line fits the box width and all lines fit the box height.
+     *
+     * @param lines       the text lines
+     * @param boxWidth    the available width in points
+     * @param boxHeight   the available height in points
+     * @param fontMetrics the font the text will be rendered with
+     * @return the font size
+     */
+    static float fitFontSize(List<String> lines, float boxWidth, float boxHeight, FontRegistry.FontMetrics fontMetrics) {
+        if (lines.isEmpty()) return 8f; // Default font size for empty content
+
+        LayoutKey key = new LayoutKey(fontMetrics, boxWidth, boxHeight, lines);
+        Float cached = LAYOUTS.get(key);
+        if (cached != null) return cached;
+
+        float fontSize = computeFontSize(lines, boxWidth, boxHeight, fontMetrics);
+        LAYOUTS.put(key, fontSize);
+        return fontSize;
+    }
+
+    private static float computeFontSize(List<String> lines, float boxWidth, float boxHeight,
+                                         FontRegistry.FontMetrics fontMetrics) {
+        // Width of the widest line in glyph units (1/1000 of the font size), measured once
+        int maxLineWidth = 0;
+        for (String line : lines) {
+            maxLineWidth = Math.max(maxLineWidth, fontMetrics.getWidth(line));
+        }
+
+        float bestFit = Math.min(MAX_FONT_SIZE, boxHeight / (lines.size() * LINE_SPACING));
+        if (maxLineWidth > 0) {
+            bestFit = Math.min(bestFit, boxWidth * 1000f / maxLineWidth);
+        }
+
+        // Snap down to the step grid, then correct for float rounding at the exact boundary
+        float fontSize = (float) Math.floor(bestFit / FONT_SIZE_STEP) * FONT_SIZE_STEP;
+        if (fontSize + FONT_SIZE_STEP <= MAX_FONT_SIZE && fits(fontSize + FONT_SIZE_STEP, maxLineWidth, lines.size(), boxWidth, boxHeight)) {
+            fontSize += FONT_SIZE_STEP;
+        } else if (fontSize >= MIN_FONT_SIZE && !fits(fontSize, maxLineWidth, lines.size(), boxWidth, boxHeight)) {
+            fontSize -= FONT_SIZE_STEP;
+        }
+        return Math.max(fontSize, MIN_FONT_SIZE);
+    }
+
+    private static boolean fits(float fontSize, int maxLineWidth, int lineCount, float boxWidth, float boxHeight) {
+        return maxLineWidth * 0.001f * fontSize <= boxWidth && lineCount * fontSize * LINE_SPACING <= boxHeight;
+    }
+
+    private static final class LayoutKey {
+        private final FontRegistry.FontMetrics fontMetrics;
+        private final float boxWidth;
+        private final float boxHeight;
+        private final List<String> lines;
+        private final int hash;
+
+        private LayoutKey(FontRegistry.FontMetrics fontMetrics, float boxWidth, float boxHeight, List<String> lines) {
+            this.fontMetrics = fontMetrics;
+            this.boxWidth = boxWidth;
+            this.boxHeight = boxHeight;
+            this.lines = new ArrayList<>(lines);
+            int h = System.identityHashCode(fontMetrics);
+            h = 31 * h + Float.floatToIntBits(boxWidth);
+            h = 31 * h + Float.floatToIntBits(boxHeight);
+            this.hash = 31 * h + this.lines.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof LayoutKey)) return false;
+            LayoutKey other = (LayoutKey) o;
+            return fontMetrics == other.fontMetrics
+                    && Float.compare(boxWidth, other.boxWidth) == 0
+                    && Float.compare(boxHeight, other.boxHeight) == 0
+                    && lines.equals(other.lines);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,322 @@
+package com.pyojan.eDastakhat.services.pdf;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.pyojan.eDastakhat.libs.metrics.OperationalMetrics;
+import com.pyojan.eDastakhat.models.SignatureOptions;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Remembers recently signed PDFs so a repeated request returns the earlier signed copy instead of signing
+ * again, e.g. when an upstream system retries or sends the same attachment for several tickets.
+ * <p>
+ * Entries are keyed by the SHA-256 of the input file, the signature options, the size and modification
+ * time of the signature image and font they reference, the watermark flag, the password and the signing
+ * certificate, so a duplicate costs a hash and a lookup instead of a private key
+ * operation and a TSA request. The signing key is still loaded before the lookup, so a duplicate with a
+ * wrong PIN fails like any other request. An entry is reused only within the window after its copy was
+ * signed, and only while that copy keeps its size and modification time; the signed copy is then copied
+ * to the requested output.
+ * <p>
+ * Entries are kept in memory, up to a capacity, and optionally also in a directory so separate processes,
+ * such as successive command line runs, share them. The directory is bounded as well: an entry evicted
+ * from memory is deleted from it, and every window at most, entries older than the window are deleted
+ * and the oldest beyond the capacity after them. The cache is thread-safe.
+ */
+public final class SignedDocumentCache {
+
+    private static final Gson GSON = new Gson();
+    private static final String ENTRY_SUFFIX = ".json";
+
+    private final long windowMillis;
+    private final int capacity;
+    private final Path directory;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    // When the directory was last swept; the first put sweeps it
+    private long lastSweep;
+
+    /**
+     * Creates an in-memory cache.
+     *
+     * @param windowMillis how long a signed copy may be reused after it was signed
+     * @param capacity     the most entries kept; the least recently used are dropped first
+     */
+    public SignedDocumentCache(long windowMillis, int capacity) {
+        this(windowMillis, capacity, null);
+    }
+
+    /**
+     * Creates a cache that also keeps its entries in a directory, one small file per entry.
+     *
+     * @param windowMillis how long a signed copy may be reused after it was signed
+     * @param capacity     the most entries kept in memory and in the directory
+     * @param directory    where the entries are kept, created when missing; or null for memory only
+     */
+    public SignedDocumentCache(long windowMillis, int capacity, Path directory) {
+        if (windowMillis <= 0) throw new IllegalArgumentException("The deduplication window must be positive.");
+        if (capacity < 1) throw new IllegalArgumentException("The deduplication cache needs room for at least one entry.");
+        this.windowMillis = windowMillis;
+        this.capacity = capacity;
+        this.directory = directory;
+    }
+
+    /**
+     * Computes the cache key of a signing request.
+     *
+     * @param inputPath   the input PDF, hashed as it is on disk
+     * @param password    the password of an encrypted input, or null
+     * @param options     the signature options; the image and font files they name are identified by size
+     *                    and modification time, so replacing one at the same path changes the key
+     * @param watermark   whether the watermark is applied
+     * @param certificate the signing certificate
+     * @return the key, a lower-case hex SHA-256
+     * @throws IOException if the input cannot be read
+     */
+    public static String key(String inputPath, String password, SignatureOptions options, boolean watermark,
+                             X509Certificate certificate) throws IOException {
+        MessageDigest digest = sha256();
+        byte[] buffer = new byte[64 * 1024];
+        try (InputStream in = Files.newInputStream(Paths.get(inputPath))) {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        update(digest, GSON.toJson(options));
+        update(digest, fileIdentity(options.getImage() != null ? options.getImage().getPath() : null));
+        update(digest, fileIdentity(options.getFontPath()));
+        update(digest, String.valueOf(watermark));
+        update(digest, password == null ? "" : password);
+        update(digest, certificate.getIssuerX500Principal().getName());
+        update(digest, certificate.getSerialNumber().toString(16));
+        return toHex(digest.digest());
+    }
+
+    /**
+     * Looks up a signed copy and, on a hit, copies it to the requested output.
+     *
+     * @param key        the key from {@link #key}
+     * @param outputPath where the signed copy is wanted
+     * @return the output path on a hit, or null if the document has to be signed
+     * @throws IOException if the signed copy cannot be copied to the output
+     */
+    public String reuse(String key, String outputPath) throws IOException {
+        Entry entry;
+        synchronized (entries) {
+            entry = entries.get(key);
+        }
+        if (entry == null && directory != null) entry = readEntry(key);
+
+        boolean hit = entry != null
+                && System.currentTimeMillis() - entry.signedAt < windowMillis
+                && isUnchanged(entry);
+        OperationalMetrics.cacheLookup("signedDocument", hit);
+        if (!hit) {
+            if (entry != null) remove(key);
+            return null;
+        }
+
+        Path source = Paths.get(entry.signedFilePath);
+        Path target = Paths.get(outputPath);
+        if (!Files.exists(target) || !Files.isSameFile(source, target)) {
+            Path parent = target.toAbsolutePath().getParent();
+            if (parent != null) Files.createDirectories(parent);
+            Files.copy(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+        return outputPath;
+    }
+
+    /**
+     * Records a signed copy for later requests with the same key.
+     *
+     * @param key            the key from {@link #key}
+     * @param signedFilePath the signed copy, completely written
+     * @throws IOException if the copy cannot be read or the entry cannot be written to the directory
+     */
+    public void put(String key, String signedFilePath) throws IOException {
+        Path signed = Paths.get(signedFilePath).toAbsolutePath().normalize();
+        Entry entry = new Entry();
+        entry.signedFilePath = signed.toString();
+        entry.size = Files.size(signed);
+        entry.lastModified = Files.getLastModifiedTime(signed).toMillis();
+        entry.signedAt = System.currentTimeMillis();
+
+        List<String> evicted = new ArrayList<>();
+        boolean sweep;
+        synchronized (entries) {
+            entries.put(key, entry);
+            Iterator<String> it = entries.keySet().iterator();
+            while (entries.size() > capacity && it.hasNext()) {
+                evicted.add(it.next());
+                it.remove();
+            }
+            sweep = directory != null && entry.signedAt - lastSweep >= windowMillis;
+            if (sweep) lastSweep = entry.signedAt;
+        }
+        if (directory == null) return;
+
+        writeEntry(key, entry);
+        for (String evictedKey : evicted) deleteEntry(evictedKey);
+        if (sweep) sweepDirectory(entry.signedAt);
+    }
+
+    private void remove(String key) {
+        synchronized (entries) {
+            entries.remove(key);
+        }
+        if (directory != null) deleteEntry(key);
+    }
+
+    private void deleteEntry(String key) {
+        try {
+            Files.deleteIfExists(directory.resolve(key + ENTRY_SUFFIX));
+        } catch (IOException ignored) {
+            // A stale entry is checked again and ignored on every lookup
+        }
+    }
+
+    /**
+     * Deletes the entry files older than the window, which no lookup can use any more, then the oldest
+     * files beyond the capacity, e.g. left behind by earlier command line runs.
+     */
+    private void sweepDirectory(long now) {
+        List<Path> files;
+        try (Stream<Path> listing = Files.list(directory)) {
+            files = listing
+                    .filter(file -> file.getFileName().toString().endsWith(ENTRY_SUFFIX))
+                    .collect(Collectors.toList());
+        } catch (IOException e) {
+            return;
+        }
+
+        List<Path> kept = new ArrayList<>(files.size());
+        for (Path file : files) {
+            if (now - lastModified(file) >= windowMillis) delete(file);
+            else kept.add(file);
+        }
+        if (kept.size() <= capacity) return;
+
+        kept.sort(Comparator.comparingLong(SignedDocumentCache::lastModified));
+        for (Path file : kept.subList(0, kept.size() - capacity)) delete(file);
+    }
+
+    private static long lastModified(Path file) {
+        try {
+            return Files.getLastModifiedTime(file).toMillis();
+        } catch (IOException e) {
+            return 0L;
+        }
+    }
+
+    private static void delete(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException ignored) {
+            // Tried again on the next sweep
+        }
+    }
+
+    private static String fileIdentity(String path) {
+        if (path == null) return "";
+        Path file = Paths.get(path);
+        try {
+            return path + "|" + Files.size(file) + "|" + Files.getLastModifiedTime(file).toMillis();
+        } catch (IOException e) {
+            // Signing fails on a missing file anyway; nothing is cached for it
+            return path;
+        }
+    }
+
+    private Entry readEntry(String key) {
+        Path file = directory.resolve(key + ENTRY_SUFFIX);
+        if (!Files.isRegularFile(file)) return null;
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            Entry entry = GSON.fromJson(reader, Entry.class);
+            return entry == null || entry.signedFilePath == null ? null : entry;
+        } catch (IOException | JsonParseException e) {
+            return null;
+        }
+    }
+
+    private void writeEntry(String key, Entry entry) throws IOException {
+        Files.createDirectories(directory);
+        // Written aside and moved into place, so a concurrent reader never sees half an entry
+        Path temp = Files.createTempFile(directory, key, ".tmp");
+        try {
+            try (Writer writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+                GSON.toJson(entry, writer);
+            }
+            Path file = directory.resolve(key + ENTRY_SUFFIX);
+            try {
+                Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private static boolean isUnchanged(Entry entry) {
+        Path signed = Paths.get(entry.signedFilePath);
+        try {
+            return Files.size(signed) == entry.size
+                    && Files.getLastModifiedTime(signed).toMillis() == entry.lastModified;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private static void update(MessageDigest digest, String value) {
+        // Length-prefixed, so no two different field lists hash the same bytes
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        digest.update((byte) (bytes.length >>> 24));
+        digest.update((byte) (bytes.length >>> 16));
+        digest.update((byte) (bytes.length >>> 8));
+        digest.update((byte) bytes.length);
+        digest.update(bytes);
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+
+    private static class Entry {
+        private String signedFilePath;
+        private long size;
+        private long lastModified;
+        private long signedAt;
+    }
+}
@@ -5,10 +5,17 @@ import com.itextpdf.text.pdf.*;
 import com.itextpdf.text.pdf.security.*;
 import com.pyojan.eDastakhat.exceptions.SignerException;
 import com.pyojan.eDastakhat.exceptions.UserCancelledException;
+import com.pyojan.eDastakhat.libs.FontRegistry;
+import com.pyojan.eDastakhat.libs.ImageRegistry;
+import com.pyojan.eDastakhat.libs.log.StructuredLog;
+import com.pyojan.eDastakhat.libs.metrics.MetricsRecorder;
+import com.pyojan.eDastakhat.libs.metrics.OperationalMetrics;
 import net.sf.oval.constraint.NotNull;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Paths;
 import java.security.PrivateKey;
 import java.security.SignatureException;
 import java.security.cert.Certificate;
@@ -18,8 +25,6 @@ import java.time.format.DateTimeFormatter;
 import java.util.*;
 import java.util.List;
 
-import static com.pyojan.eDastakhat.libs.Response.generateErrorResponse;
-
 public class Signer {
     private static final int BASE_SIGNATURE_SIZE = 8000;
     private static final int CERTIFICATE_SIZE_ESTIMATE = 1500;
@@ -28,6 +33,60 @@ public class Signer {
     private static final int CMS_OVERHEAD = 2000;
     private static final int SAFETY_MARGIN = 2000;
 
+    private String fontPath;
+
+    /**
+     * Sets the TrueType/OpenType font used for the signature text. The font is loaded once per process
+     * through {@link FontRegistry} and shared across pages and documents.
+     *
+     * @param fontPath path to the font file, or null/blank for the default Helvetica
+     */
+    public void setFontPath(String fontPath) {
+        this.fontPath = fontPath;
+    }
+
+    private String imagePath;
+    private String imagePlacement = "LEFT";
+    private float imageOpacity = 1f;
+
+    /**
+     * Sets a PNG or JPEG image, such as a company seal or a scanned handwritten signature, to draw in the
+     * signature box. Decoded images are cached by content through {@link ImageRegistry}.
+     *
+     * @param imagePath      path to the image file, or null/blank for a text-only appearance
+     * @param imagePlacement LEFT or RIGHT to draw the image beside the text, BACKGROUND to draw it behind
+     *                       the text, or FULL to draw the image only; null for LEFT
+     * @param imageOpacity   opacity of the image, from 0 (invisible) to 1 (opaque)
+     */
+    public void setSignatureImage(String imagePath, String imagePlacement, float imageOpacity) {
+        this.imagePath = imagePath;
+        this.imagePlacement = imagePlacement == null ? "LEFT" : imagePlacement.trim().toUpperCase(Locale.ROOT);
+        this.imageOpacity = imageOpacity;
+    }
+
+    private ReusableAppearance reusableAppearance;
+
+    private MetricsRecorder metricsRecorder = MetricsRecorder.disabled();
+
+    /**
+     * Sets the recorder that receives the stages of each signature: appearance, the signature itself with
+     * its key operation, timestamp, CRL and OCSP requests, closing the stamper and encoding the result.
+     *
+     * @param metricsRecorder the recorder, or null to stop recording
+     */
+    public void setMetricsRecorder(MetricsRecorder metricsRecorder) {
+        this.metricsRecorder = metricsRecorder == null ? MetricsRecorder.disabled() : metricsRecorder;
+    }
+
+    /**
+     * Forgets the appearance rendered by the previous signature. Call this before signing the pages of
+     * a new document; within one document, later signatures with the same box and text reference the
+     * appearance written by the first one instead of rendering it again.
+     */
+    public void resetReusableAppearance() {
+        this.reusableAppearance = null;
+    }
+
     /**
      * Sign a PDF with the given parameters.
      *
@@ -61,19 +120,144 @@ public class Signer {
             String location,
             String customText
     ) throws UserCancelledException, SignerException {
-        ByteArrayOutputStream signedPdfOutputStream = new ByteArrayOutputStream();
-        PdfStamper stamper = null;
+        PendingSignature pending = new PendingSignature(reader, certChain, pageNumber, isLtv, tsaClient != null);
 
         try {
+            openSignature(pending, coord, isChangesAllowed, isGreenTrick, reason, location, customText);
+
+            ExternalSignature signature = MeasuredSigningClients.signature(
+                    new PrivateKeySignature(privateKey, DigestAlgorithms.SHA256, provider),
+                    metricsRecorder, "sign.signDetached.keyOperation");
+
+            // The same steps as MakeSignature.signDetached, run back to back on this thread
+            try (MetricsRecorder.Stage ignored = metricsRecorder.stage("sign.signDetached")) {
+                digestDocument(pending);
+                if (isLtv) collectRevocationData(pending);
+                applyKeySignature(pending, signature);
+                embedSignature(pending, tsaClient);
+            }
+        } catch (Exception e) {
+            throw signingFailure(pending, e);
+        }
 
-            String fieldName = generateSignatureFieldName(pageNumber);
-            stamper = PdfStamper.createSignature(reader, signedPdfOutputStream, '\0', null, true);
+        return closeAndEncode(pending);
+    }
 
-            PdfSignatureAppearance appearance = stamper.getSignatureAppearance();
+    /**
+     * First phase of a digest-first signature: renders the appearance, reserves the space for the
+     * signature, and hashes the byte ranges of the document. Together with
+     * {@link #fetchRevocationData(PendingSignature)}, {@link #signPendingSignature(PendingSignature, String, PrivateKey)}
+     * and {@link #completeSignature(PendingSignature, TSAClient)} it does what {@link #sign} does, split at the
+     * points where the signature waits on the network or the private key, so each phase can run on an
+     * executor that matches it. The phases of one signature must run in order, one at a time.
+     * <p>
+     * CPU-bound. On failure the reader is closed.
+     *
+     * @param reader           the original PDF
+     * @param certChain        the certificate chain of the signing key
+     * @param pageNumber       the page number to sign
+     * @param coord            the coordinates to place the signature on the page
+     * @param isLtv            whether to include Long-Term Validation (LTV) information
+     * @param withTimestamp    whether {@link #completeSignature} will be given a TSA client
+     * @param isChangesAllowed whether changes are allowed after signing
+     * @param isGreenTrick     whether to include a green tick in the signature
+     * @param reason           the reason for signing the document
+     * @param location         the location where the document is being signed
+     * @param customText       custom text to include in the signature
+     * @return the signature, waiting for its revocation data when LTV is enabled, otherwise for the key
+     */
+    public PendingSignature prepareSignature(
+            PdfReader reader,
+            Certificate[] certChain,
+            int pageNumber,
+            int[] coord,
+            boolean isLtv,
+            boolean withTimestamp,
+            boolean isChangesAllowed,
+            boolean isGreenTrick,
+            String reason,
+            String location,
+            String customText
+    ) throws UserCancelledException, SignerException {
+        PendingSignature pending = new PendingSignature(reader, certChain, pageNumber, isLtv, withTimestamp);
+        try {
+            openSignature(pending, coord, isChangesAllowed, isGreenTrick, reason, location, customText);
+            try (MetricsRecorder.Stage ignored = metricsRecorder.stage("sign.digest")) {
+                digestDocument(pending);
+            }
+            return pending;
+        } catch (Exception e) {
+            throw signingFailure(pending, e);
+        }
+    }
 
-            configureSignatureAppearance(
-                    appearance,
-                    pageNumber,
+    /**
+     * LTV phase: fetches the CRLs and the OCSP response of the signing certificate. Waits on the network;
+     * only needed when the signature was prepared with LTV.
+     *
+     * @param pending the signature returned by {@link #prepareSignature}
+     */
+    public void fetchRevocationData(PendingSignature pending) throws UserCancelledException, SignerException {
+        try {
+            collectRevocationData(pending);
+        } catch (Exception e) {
+            throw signingFailure(pending, e);
+        }
+    }
+
+    /**
+     * Key phase: signs the authenticated attributes with the private key. Waits on the token or HSM; the
+     * thread that runs it is the one that talks to the key, so the size of its executor bounds the
+     * operations a token sees at once.
+     *
+     * @param pending    the signature, after {@link #prepareSignature} and, with LTV, {@link #fetchRevocationData}
+     * @param provider   the provider of the private key
+     * @param privateKey the private key
+     */
+    public void signPendingSignature(PendingSignature pending, String provider, PrivateKey privateKey)
+            throws UserCancelledException, SignerException {
+        try {
+            ExternalSignature signature = MeasuredSigningClients.signature(
+                    new PrivateKeySignature(privateKey, DigestAlgorithms.SHA256, provider),
+                    metricsRecorder, "sign.signDetached.keyOperation");
+            applyKeySignature(pending, signature);
+        } catch (Exception e) {
+            throw signingFailure(pending, e);
+        }
+    }
+
+    /**
+     * Last phase: requests the timestamp, embeds the CMS signature in the reserved space and closes the
+     * document. Waits on the network when timestamping, otherwise CPU-bound.
+     *
+     * @param pending   the signature after {@link #signPendingSignature}
+     * @param tsaClient the timestamping authority (TSA) client, or null
+     * @return the signed PDF as a Base64-encoded string
+     */
+    public String completeSignature(PendingSignature pending, TSAClient tsaClient)
+            throws UserCancelledException, SignerException {
+        try (MetricsRecorder.Stage ignored = metricsRecorder.stage("sign.embed")) {
+            embedSignature(pending, tsaClient);
+        } catch (Exception e) {
+            throw signingFailure(pending, e);
+        }
+        return closeAndEncode(pending);
+    }
+
+    /**
+     * Opens an incremental update of the document and renders the signature appearance.
+     */
+    private void openSignature(PendingSignature pending, int[] coord, boolean isChangesAllowed, boolean isGreenTrick,
+                               String reason, String location, String customText) throws Exception {
+        String fieldName = generateSignatureFieldName(pending.pageNumber);
+        pending.stamper = PdfStamper.createSignature(pending.reader, pending.output, '\0', null, true);
+        pending.appearance = pending.stamper.getSignatureAppearance();
+
+        try (MetricsRecorder.Stage ignored = metricsRecorder.stage("sign.appearance")) {
+            pending.renderedAppearance = configureSignatureAppearance(
+                    pending.appearance,
+                    pending.reader,
+                    pending.pageNumber,
                     coord,
                     fieldName,
                     isChangesAllowed,
@@ -81,42 +265,167 @@ public class Signer {
                     reason,
                     location,
                     customText,
-                    (X509Certificate) certChain[0]
+                    (X509Certificate) pending.certChain[0]
             );
+        }
+    }
 
-            ExternalDigest digest = new BouncyCastleDigest();
-            ExternalSignature signature = new PrivateKeySignature(privateKey, DigestAlgorithms.SHA256, provider);
+    /**
+     * Writes the signature dictionary, reserves the space for the CMS signature and hashes the rest of the
+     * document, as {@code MakeSignature.signDetached} does for CAdES.
+     */
+    private void digestDocument(PendingSignature pending) throws Exception {
+        PdfSignatureAppearance appearance = pending.appearance;
+        appearance.setCertificate(pending.certChain[0]);
+        appearance.addDeveloperExtension(PdfDeveloperExtension.ESIC_1_7_EXTENSIONLEVEL2);
+
+        PdfSignature dic = new PdfSignature(PdfName.ADOBE_PPKLITE, PdfName.ETSI_CADES_DETACHED);
+        dic.setReason(appearance.getReason());
+        dic.setLocation(appearance.getLocation());
+        dic.setSignatureCreator(appearance.getSignatureCreator());
+        dic.setContact(appearance.getContact());
+        dic.setDate(new PdfDate(appearance.getSignDate()));
+        appearance.setCryptoDictionary(dic);
+
+        HashMap<PdfName, Integer> exclusionSizes = new HashMap<>();
+        exclusionSizes.put(PdfName.CONTENTS, pending.estimatedSize * 2 + 2);
+        appearance.preClose(exclusionSizes);
+
+        ExternalDigest digest = new BouncyCastleDigest();
+        pending.pkcs7 = new PdfPKCS7(null, pending.certChain, DigestAlgorithms.SHA256, null, digest, false);
+        try (InputStream data = appearance.getRangeStream()) {
+            pending.documentDigest = DigestAlgorithms.digest(data, digest.getMessageDigest(DigestAlgorithms.SHA256));
+        }
+    }
 
-            List<CrlClient> crlList = isLtv ? prepareLtvComponents(certChain) : new ArrayList<>();
-            OcspClient ocspClient = isLtv ? new OcspClientBouncyCastle(null) : null;
+    /**
+     * Fetches the revocation data that LTV signatures carry: the CRLs of the first certificate in the
+     * chain that has any, and the OCSP response of the signing certificate.
+     */
+    private void collectRevocationData(PendingSignature pending) throws Exception {
+        Certificate[] certChain = pending.certChain;
+        List<CrlClient> crlList = MeasuredSigningClients.crl(prepareLtvComponents(certChain), metricsRecorder, "sign.signDetached.crl");
+        for (int i = 0; pending.crlBytes == null && i < certChain.length; i++) {
+            pending.crlBytes = fetchCrls((X509Certificate) certChain[i], crlList);
+        }
 
-            int estimatedSize = calculateEstimatedSignatureSize(certChain.length, tsaClient != null, isLtv);
+        OcspClient ocspClient = MeasuredSigningClients.ocsp(new OcspClientBouncyCastle(null), metricsRecorder, "sign.signDetached.ocsp");
+        if (certChain.length >= 2) {
+            pending.ocsp = ocspClient.getEncoded((X509Certificate) certChain[0], (X509Certificate) certChain[1], null);
+        }
+    }
 
-            MakeSignature.signDetached(
-                    appearance,
-                    digest,
-                    signature,
-                    certChain,
-                    crlList,
-                    ocspClient,
-                    tsaClient,
-                    estimatedSize,
-                    MakeSignature.CryptoStandard.CADES
-            );
+    private static Collection<byte[]> fetchCrls(X509Certificate certificate, List<CrlClient> crlList) {
+        List<byte[]> crls = new ArrayList<>();
+        for (CrlClient crlClient : crlList) {
+            Collection<byte[]> encoded = crlClient.getEncoded(certificate, null);
+            if (encoded != null) crls.addAll(encoded);
+        }
+        return crls.isEmpty() ? null : crls;
+    }
 
-        } catch (Exception e) {
-            if (e instanceof SignatureException) {
-                throw new UserCancelledException("Signing was cancelled by the user", e);
-            }
-            throw new SignerException("PDF signing failed in sign method : " + e.getMessage(), e);
-        } finally {
-            String errorMessage = closeResources(reader, stamper);
-            if (errorMessage != null) {
-                generateErrorResponse(new SignerException(errorMessage)); // You may want to log or throw instead
-            }
+    private static void applyKeySignature(PendingSignature pending, ExternalSignature signature) throws Exception {
+        byte[] attributes = pending.pkcs7.getAuthenticatedAttributeBytes(
+                pending.documentDigest, pending.ocsp, pending.crlBytes, MakeSignature.CryptoStandard.CADES);
+        byte[] signed = signature.sign(attributes);
+        pending.pkcs7.setExternalDigest(signed, null, signature.getEncryptionAlgorithm());
+    }
+
+    /**
+     * Builds the CMS signature, with the timestamp if a TSA client is given, and writes it into the
+     * reserved space.
+     */
+    private void embedSignature(PendingSignature pending, TSAClient tsaClient) throws Exception {
+        byte[] encodedSignature = pending.pkcs7.getEncodedPKCS7(
+                pending.documentDigest,
+                MeasuredSigningClients.tsa(tsaClient, metricsRecorder, "sign.signDetached.tsa"),
+                pending.ocsp,
+                pending.crlBytes,
+                MakeSignature.CryptoStandard.CADES);
+        if (encodedSignature.length > pending.estimatedSize) throw new IOException("Not enough space");
+
+        byte[] paddedSignature = new byte[pending.estimatedSize];
+        System.arraycopy(encodedSignature, 0, paddedSignature, 0, encodedSignature.length);
+        PdfDictionary contents = new PdfDictionary();
+        contents.put(PdfName.CONTENTS, new PdfString(paddedSignature).setHexWriting(true));
+        pending.appearance.close(contents);
+
+        OperationalMetrics.signatureCreated("pdf");
+
+        if (pending.renderedAppearance != null) {
+            reusableAppearance = pending.renderedAppearance;
         }
+    }
 
-        return Base64.getEncoder().encodeToString(signedPdfOutputStream.toByteArray());
+    /**
+     * Closes a signature that failed and maps the failure to the exception callers expect.
+     *
+     * @return the exception to throw
+     * @throws UserCancelledException if the key operation was refused, e.g. a cancelled PIN prompt
+     */
+    private SignerException signingFailure(PendingSignature pending, Exception e) throws UserCancelledException {
+        String closeError;
+        try (MetricsRecorder.Stage ignored = metricsRecorder.stage("sign.close")) {
+            closeError = closeResources(pending.reader, pending.stamper);
+        }
+        if (closeError != null) {
+            // A failure while signing is the more useful error, so only report the close failure here
+            StructuredLog.warn("pdf.closeFailed", "page", pending.pageNumber, "message", closeError);
+        }
+
+        if (e instanceof UserCancelledException) throw (UserCancelledException) e;
+        if (e instanceof SignatureException) {
+            throw new UserCancelledException("Signing was cancelled by the user", e);
+        }
+        if (e instanceof SignerException) return (SignerException) e;
+        return new SignerException("PDF signing failed in sign method : " + e.getMessage(), e);
+    }
+
+    private String closeAndEncode(PendingSignature pending) throws SignerException {
+        String closeError;
+        try (MetricsRecorder.Stage ignored = metricsRecorder.stage("sign.close")) {
+            closeError = closeResources(pending.reader, pending.stamper);
+        }
+        if (closeError != null) {
+            StructuredLog.warn("pdf.closeFailed", "page", pending.pageNumber, "message", closeError);
+            throw new SignerException(closeError);
+        }
+
+        try (MetricsRecorder.Stage encode = metricsRecorder.stage("sign.encode")) {
+            byte[] signedPdf = pending.output.toByteArray();
+            String signedPdfBase64 = Base64.getEncoder().encodeToString(signedPdf);
+            encode.addBytesRead(signedPdf.length);
+            encode.addBytesWritten(signedPdfBase64.length());
+            return signedPdfBase64;
+        }
+    }
+
+    /**
+     * A signature between the phases of digest-first signing: the document with its signature space
+     * reserved, the digest of its byte ranges and, once the key has signed, the signature value.
+     * It holds the document open, so it is either completed or, on failure, closed by the phase that failed.
+     */
+    public static final class PendingSignature {
+        private final PdfReader reader;
+        private final Certificate[] certChain;
+        private final int pageNumber;
+        private final int estimatedSize;
+        private final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        private PdfStamper stamper;
+        private PdfSignatureAppearance appearance;
+        private ReusableAppearance renderedAppearance;
+        private PdfPKCS7 pkcs7;
+        private byte[] documentDigest;
+        private Collection<byte[]> crlBytes;
+        private byte[] ocsp;
+
+        private PendingSignature(PdfReader reader, Certificate[] certChain, int pageNumber, boolean isLtv,
+                                 boolean withTimestamp) {
+            this.reader = reader;
+            this.certChain = certChain;
+            this.pageNumber = pageNumber;
+            this.estimatedSize = calculateEstimatedSignatureSize(certChain.length, withTimestamp, isLtv);
+        }
     }
 
     /**
@@ -151,7 +460,7 @@ public class Signer {
      * @param withLTV whether Long-Term Validation (LTV) is included in the signature
      * @return an estimate of the signature size
      */
-    private int calculateEstimatedSignatureSize(int certChainLength, boolean withTimestamp, boolean withLTV) {
+    private static int calculateEstimatedSignatureSize(int certChainLength, boolean withTimestamp, boolean withLTV) {
 
         return BASE_SIGNATURE_SIZE +
                 (certChainLength * CERTIFICATE_SIZE_ESTIMATE) +
@@ -183,6 +492,7 @@ public class Signer {
      * Configures the appearance of the digital signature on a PDF.
      *
      * @param appearance       the PdfSignatureAppearance object to configure
+     * @param reader           the reader of the document being signed
      * @param pageNumber       the page number on which the signature will appear
      * @param coord            an array of coordinates specifying the rectangle where the signature will be placed
      * @param fieldName        the name of the signature field
@@ -190,11 +500,13 @@ public class Signer {
      * @param isGreenTrick     whether to include a green tick in the signature
      * @param reason           the reason for signing the document
      * @param location         the location where the document is being signed
+     * @return the newly rendered appearance that later signatures can reuse, or null if the appearance
+     *         was reused or the signature is invisible
      * @throws DocumentException if an error occurs while processing the document
-     * @throws IOException       if an I/O error occurs
      */
-    private void configureSignatureAppearance(
+    private ReusableAppearance configureSignatureAppearance(
             PdfSignatureAppearance appearance,
+            PdfReader reader,
             int pageNumber,
             int[] coord,
             String fieldName,
@@ -208,10 +520,10 @@ public class Signer {
         appearance.setSignatureCreator("codemuni-eDastakhat");
 
         // Set coordinates only if they are provided
-        if (coord != null && coord.length == 4) {
+        boolean visible = coord != null && coord.length == 4;
+        if (visible) {
             Rectangle rectangle = new Rectangle(coord[0], coord[1], coord[2], coord[3]);
             appearance.setVisibleSignature(rectangle, pageNumber, fieldName);
-            this.setSignatureBackgroundColor(appearance, new BaseColor(252, 252, 252));
         }
 
         appearance.setRenderingMode(PdfSignatureAppearance.RenderingMode.NAME_AND_DESCRIPTION);
@@ -223,41 +535,55 @@ public class Signer {
         if(reason != null && !reason.isEmpty()) appearance.setReason(reason);
         if(location != null && !location.isEmpty()) appearance.setLocation(location);
 
-        this.setCustomAppearance(appearance, customText, cert, isChangesAllowed, reason, location);
+        List<String> lines = buildAppearanceLines(customText, cert, isChangesAllowed, reason, location);
+
+        ImageRegistry.LoadedImage image = null;
+        if (visible && imagePath != null && !imagePath.trim().isEmpty()) {
+            try {
+                image = ImageRegistry.load(Paths.get(imagePath.trim()));
+            } catch (IOException e) {
+                throw new DocumentException("Failed to load signature image: " + e.getMessage());
+            }
+        }
+        List<Object> style = Arrays.asList(
+                fontPath,
+                image == null ? null : image.getContentHash(),
+                imagePlacement,
+                imageOpacity
+        );
+
+        // Reference the layers written by the previous signature when they are identical
+        if (visible && reusableAppearance != null) {
+            boolean reused = reusableAppearance.applyTo(appearance, reader, style, lines);
+            OperationalMetrics.cacheLookup("appearance", reused);
+            if (reused) return null;
+        }
+
+        if (visible) {
+            this.setSignatureBackgroundColor(appearance, new BaseColor(252, 252, 252));
+        }
+        this.setCustomAppearance(appearance, lines, image);
+
+        return visible ? ReusableAppearance.capture(appearance, style, lines) : null;
     }
 
     /**
-     * Sets a custom appearance for the digital signature, with dynamic font sizing and bottom-to-top text placement.
-     * The font size is calculated to ensure all text fits within the signature rectangle, regardless of box size or text length.
+     * Builds the text lines shown in the signature appearance.
      *
-     * @param appearance        the PdfSignatureAppearance object to customize
      * @param customText        additional custom text to include in the signature
      * @param cert              the X509 certificate used for signing
      * @param isChangesAllowed  flag indicating if changes are allowed after signing
      * @param reason            reason for signing
      * @param location          location of signing
-     * @throws DocumentException if any document-related error occurs
+     * @return the text lines, from top to bottom
      */
-    private void setCustomAppearance(
-            PdfSignatureAppearance appearance,
+    private List<String> buildAppearanceLines(
             String customText,
             X509Certificate cert,
             boolean isChangesAllowed,
             String reason,
             String location
-    ) throws DocumentException {
-        // Get the layer for text and content display (Layer 2)
-        PdfTemplate layer2 = appearance.getLayer(2);
-
-        // Define the rectangle area with padding
-        float padding = 1f;
-        float paddingTop = 20f; // Increased top padding to avoid overlap with "Signature Valid"
-        Rectangle rect = new Rectangle(
-                padding, padding,
-                appearance.getAppearance().getWidth(),
-                appearance.getAppearance().getHeight() - paddingTop
-        );
-
+    ) {
         // Format the current timestamp
         ZonedDateTime now = ZonedDateTime.now();
         DateTimeFormatter formatter = DateTimeFormatter.ofPattern("MMM d, yyyy h:mm a (xxx)");
@@ -295,19 +621,53 @@ public class Signer {
         if (isNullOrEmpty(customText)) lines.add(customText);
         lines.add("Date: " + formattedDate);
 
-        // Calculate optimal font size
-        float fontSize = calculateOptimalFontSize(lines, rect);
-        if (fontSize < 4f) fontSize = 4f; // Minimum readable font size
+        return lines;
+    }
+
+    /**
+     * Sets a custom appearance for the digital signature, with dynamic font sizing and bottom-to-top text placement.
+     * The font size is calculated to ensure all text fits within the signature rectangle, regardless of box size or text length.
+     *
+     * @param appearance the PdfSignatureAppearance object to customize
+     * @param lines      the text lines to render
+     * @param image      the seal or handwritten signature image to draw, or null for text only
+     * @throws DocumentException if any document-related error occurs
+     */
+    private void setCustomAppearance(
+            PdfSignatureAppearance appearance,
+            List<String> lines,
+            ImageRegistry.LoadedImage image
+    ) throws DocumentException {
+        // Get the layer for text and content display (Layer 2)
+        PdfTemplate layer2 = appearance.getLayer(2);
 
-        // Create font
-        Font font;
+        // Define the rectangle area with padding
+        float padding = 1f;
+        float paddingTop = 20f; // Increased top padding to avoid overlap with "Signature Valid"
+        Rectangle rect = new Rectangle(
+                padding, padding,
+                appearance.getAppearance().getWidth(),
+                appearance.getAppearance().getHeight() - paddingTop
+        );
+
+        if (image != null) {
+            rect = drawSignatureImage(layer2, image, rect);
+            if (rect == null) return; // Image only
+        }
+
+        // Shared font, loaded once per process
+        FontRegistry.FontMetrics fontMetrics;
         try {
-            BaseFont baseFont = BaseFont.createFont(BaseFont.HELVETICA, BaseFont.WINANSI, BaseFont.EMBEDDED);
-            font = new Font(baseFont, fontSize);
+            fontMetrics = FontRegistry.forAppearance(fontPath);
         } catch (IOException e) {
-            throw new DocumentException("Failed to load Helvetica font: " + e.getMessage());
+            throw new DocumentException("Failed to load signature font: " + e.getMessage());
         }
 
+        // Calculate optimal font size
+        float fontSize = calculateOptimalFontSize(lines, rect, fontMetrics);
+
+        Font font = fontMetrics.newFont(fontSize);
+
         // Create ColumnText for rendering
         ColumnText ct = new ColumnText(layer2);
         ct.setSimpleColumn(rect);
@@ -315,18 +675,80 @@ public class Signer {
 
         // Create paragraph with adjusted leading
         Paragraph paragraph = new Paragraph();
-        paragraph.setLeading(fontSize * 1.2f); // 20% line spacing
+        paragraph.setLeading(fontSize * SignatureTextLayout.LINE_SPACING);
         for (String line : lines) {
             paragraph.add(new Chunk(line, font));
             paragraph.add(Chunk.NEWLINE);
         }
 
         // Adjust for bottom alignment
-        ct.setYLine(rect.getBottom() + fontSize * lines.size() * 1.2f);
+        ct.setYLine(rect.getBottom() + fontSize * lines.size() * SignatureTextLayout.LINE_SPACING);
         ct.addElement(paragraph);
         ct.go();
     }
 
+    /**
+     * Draws the signature image according to the configured placement, scaled to fit while keeping its
+     * aspect ratio, and returns the area left for the text.
+     * <ul>
+     *     <li>LEFT / RIGHT: the image takes up to 40% of the box width, and the text uses the rest</li>
+     *     <li>BACKGROUND: the image fills the box behind the text, with the configured opacity</li>
+     *     <li>FULL: the image fills the box and no text is drawn</li>
+     * </ul>
+     *
+     * @param layer2   the text layer of the appearance
+     * @param image    the image to draw
+     * @param textRect the area available for text without an image
+     * @return the area left for the text, or null if no text should be drawn
+     * @throws DocumentException if the image cannot be added
+     */
+    private Rectangle drawSignatureImage(PdfTemplate layer2, ImageRegistry.LoadedImage image, Rectangle textRect)
+            throws DocumentException {
+        float width = layer2.getWidth();
+        float height = layer2.getHeight();
+        float gap = 2f;
+
+        Rectangle imageRect;
+        Rectangle remainingText;
+        switch (imagePlacement) {
+            case "RIGHT":
+                imageRect = new Rectangle(width * 0.6f, textRect.getBottom(), width - gap, textRect.getTop());
+                remainingText = new Rectangle(textRect.getLeft(), textRect.getBottom(), width * 0.6f - gap, textRect.getTop());
+                break;
+            case "BACKGROUND":
+                imageRect = new Rectangle(0, 0, width, height);
+                remainingText = textRect;
+                break;
+            case "FULL":
+                imageRect = new Rectangle(0, 0, width, height);
+                remainingText = null;
+                break;
+            default:
+                imageRect = new Rectangle(gap, textRect.getBottom(), width * 0.4f, textRect.getTop());
+                remainingText = new Rectangle(width * 0.4f + gap, textRect.getBottom(), textRect.getRight(), textRect.getTop());
+                break;
+        }
+
+        // Scale to fit and center; the shared image itself is never modified
+        Image img = image.getImage();
+        float scale = Math.min(imageRect.getWidth() / img.getWidth(), imageRect.getHeight() / img.getHeight());
+        float imageWidth = img.getWidth() * scale;
+        float imageHeight = img.getHeight() * scale;
+        float x = imageRect.getLeft() + (imageRect.getWidth() - imageWidth) / 2;
+        float y = imageRect.getBottom() + (imageRect.getHeight() - imageHeight) / 2;
+
+        layer2.saveState();
+        if (imageOpacity < 1f) {
+            PdfGState state = new PdfGState();
+            state.setFillOpacity(imageOpacity);
+            layer2.setGState(state);
+        }
+        layer2.addImage(img, imageWidth, 0, 0, imageHeight, x, y);
+        layer2.restoreState();
+
+        return remainingText;
+    }
+
     /**
      * Checks if a string is null or empty after trimming.
      *
@@ -339,55 +761,15 @@ public class Signer {
 
     /**
      * Calculates the optimal font size to fit all lines within the rectangle.
-     * Iteratively tests font sizes to find the largest that fits both width and height.
+     * The size is computed directly from the line widths and cached by {@link SignatureTextLayout}.
      *
-     * @param lines the list of text lines
-     * @param rect  the rectangle for text placement
+     * @param lines       the list of text lines
+     * @param rect        the rectangle for text placement
+     * @param fontMetrics the font the text will be rendered with
      * @return the optimal font size
      */
-    private float calculateOptimalFontSize(List<String> lines, Rectangle rect) {
-        if (lines.isEmpty()) return 8f; // Default font size for empty content
-
-        BaseFont baseFont;
-        try {
-            baseFont = BaseFont.createFont(BaseFont.HELVETICA, BaseFont.WINANSI, BaseFont.EMBEDDED);
-        } catch (Exception e) {
-            return 8f; // Fallback font size
-        }
-
-        float boxWidth = rect.getWidth();
-        float boxHeight = rect.getHeight();
-        int lineCount = lines.size();
-        float maxFontSize = 16f; // Upper limit for readability
-        float minFontSize = 4f;  // Lower limit for readability
-        float testFontSize = maxFontSize;
-
-        while (testFontSize >= minFontSize) {
-            boolean fits = true;
-
-            // Check the width for each line
-            for (String line : lines) {
-                float textWidth = baseFont.getWidthPoint(line, testFontSize);
-                if (textWidth > boxWidth) {
-                    fits = false;
-                    break;
-                }
-            }
-
-            // Check total height
-            float totalHeight = lineCount * testFontSize * 1.2f; // Include line spacing
-            if (totalHeight > boxHeight) {
-                fits = false;
-            }
-
-            if (fits) {
-                return testFontSize;
-            }
-
-            testFontSize -= 0.5f; // Decrease font size incrementally
-        }
-
-        return minFontSize; // Return minimum if no fit found
+    private float calculateOptimalFontSize(List<String> lines, Rectangle rect, FontRegistry.FontMetrics fontMetrics) {
+        return SignatureTextLayout.fitFontSize(lines, rect.getWidth(), rect.getHeight(), fontMetrics);
     }
 
 //
@@ -0,0 +1,474 @@
+package com.pyojan.eDastakhat.services.xml;
+
+import com.pyojan.eDastakhat.services.xml.XMLSigner.XMLSigningException;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.PrivateKey;
+import java.security.Signature;
+import java.security.cert.X509Certificate;
+import java.util.*;
+
+/**
+ * Enveloped XML signing with bounded memory, for documents too large to hold as a DOM.
+ * <p>
+ * {@link XMLSigner} reads the whole file into a string, normalizes it, builds a DOM and serializes it back,
+ * which needs several times the file size in heap. This signer makes one StAX pass instead: every event is
+ * written out in canonical form (Canonical XML 1.0, the method used by {@link XMLSigner}) to both the output
+ * file and the reference digest. When the document ends, the {@code ds:Signature} element is appended as
+ * the last child of the root element, exactly where {@link XMLSigner} places it.
+ * </p>
+ * The signed output is the canonical form of the input: whitespace between tags is dropped (as in
+ * {@link XMLSigner}), comments are removed, empty elements are written as start/end tag pairs and
+ * attributes are sorted. Documents with a DTD are rejected, because canonicalization would need the
+ * DTD's default attributes and entities.
+ * <p>
+ * With an {@link XmlElementSelector} the signer works per element instead: every selected element (for
+ * example each {@code <Invoice>} in a file of thousands) gets its own enveloped {@code ds:Signature} as its
+ * last child, referencing the element by its {@code Id} attribute. The digest of each element is computed in
+ * the same pass, so the file is read and canonicalized once regardless of the number of records. Selected
+ * elements nested inside another selected element are covered by the outer signature only.
+ */
+public class StreamingXMLSigner {
+
+    private static final String DSIG_NS = "http://www.w3.org/2000/09/xmldsig#";
+    private static final String XML_NS = "http://www.w3.org/XML/1998/namespace";
+    private static final String C14N_METHOD = "http://www.w3.org/TR/2001/REC-xml-c14n-20010315";
+    private static final String RSA_SHA256 = "http://www.w3.org/2001/04/xmldsig-more#rsa-sha256";
+    private static final String SHA256 = "http://www.w3.org/2001/04/xmlenc#sha256";
+    private static final String ENVELOPED = "http://www.w3.org/2000/09/xmldsig#enveloped-signature";
+    private static final String ID_ATTRIBUTE = "Id";
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final XMLInputFactory INPUT_FACTORY = createInputFactory();
+
+    // Canonical attribute order: by namespace URI, then local name
+    private static final Comparator<String[]> ATTRIBUTE_ORDER =
+            (a, b) -> a[0].equals(b[0]) ? a[1].compareTo(b[1]) : a[0].compareTo(b[0]);
+
+    private final X509Certificate certificate;
+    private final PrivateKey privateKey;
+    private final XmlElementSelector elementSelector;
+
+    /**
+     * Constructs a StreamingXMLSigner with the specified certificate and private key, signing the whole document.
+     *
+     * @param certificate The X509 certificate to be included in the signature
+     * @param privateKey The private key used for signing
+     */
+    public StreamingXMLSigner(X509Certificate certificate, PrivateKey privateKey) {
+        this(certificate, privateKey, null);
+    }
+
+    /**
+     * Constructs a StreamingXMLSigner that signs each selected element with its own signature.
+     * Selected elements without an {@code Id} attribute are given one.
+     *
+     * @param certificate The X509 certificate to be included in the signatures
+     * @param privateKey The private key used for signing
+     * @param elementSelector The elements to sign, or {@code null} to sign the whole document
+     */
+    public StreamingXMLSigner(X509Certificate certificate, PrivateKey privateKey, XmlElementSelector elementSelector) {
+        this.certificate = Objects.requireNonNull(certificate, "Certificate cannot be null");
+        this.privateKey = Objects.requireNonNull(privateKey, "Private key cannot be null");
+        this.elementSelector = elementSelector;
+    }
+
+    /**
+     * Signs the XML file and writes the signed document to the output path.
+     *
+     * @param xmlFilePath Path to the XML file to sign
+     * @param outputPath Path to write the signed XML to
+     * @return The number of signatures written
+     * @throws XMLSigningException if signing fails
+     */
+    public int signXmlFile(Path xmlFilePath, Path outputPath) throws XMLSigningException {
+        try {
+            Path parent = outputPath.toAbsolutePath().getParent();
+            if (parent != null) Files.createDirectories(parent);
+
+            try (InputStream in = new BufferedInputStream(Files.newInputStream(xmlFilePath), BUFFER_SIZE);
+                 OutputStream out = new BufferedOutputStream(Files.newOutputStream(outputPath), BUFFER_SIZE)) {
+                return sign(in, out);
+            }
+        } catch (XMLSigningException e) {
+            deletePartialOutput(outputPath);
+            throw e;
+        } catch (Exception e) {
+            deletePartialOutput(outputPath);
+            throw new XMLSigningException("Failed to sign XML file in streaming mode", e);
+        }
+    }
+
+    private static void deletePartialOutput(Path outputPath) {
+        try {
+            Files.deleteIfExists(outputPath);
+        } catch (IOException ignored) {
+            // Best effort; the original error is more useful to the caller
+        }
+    }
+
+    /**
+     * Signs the XML read from the input stream and writes the signed document to the output stream.
+     * Neither stream is closed.
+     *
+     * @param in the unsigned XML
+     * @param out receives the signed XML
+     * @return The number of signatures written
+     * @throws XMLSigningException if signing fails, or if no element matches the element selector
+     */
+    public int sign(InputStream in, OutputStream out) throws XMLSigningException {
+        XMLStreamReader reader = null;
+        try {
+            reader = INPUT_FACTORY.createXMLStreamReader(in);
+            CanonicalWriter writer = elementSelector == null
+                    ? new CanonicalWriter(out, MessageDigest.getInstance("SHA-256"), null)
+                    : new CanonicalWriter(out, null, elementSelector);
+
+            out.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>".getBytes(StandardCharsets.UTF_8));
+            writer.copy(reader);
+
+            if (elementSelector == null) {
+                byte[] digest = writer.digest.digest();
+                writer.writeOutputOnly(buildSignatureElement("", digest, writer.rootNamespaces, writer.rootXmlAttributes));
+                writer.flushDeferred();
+                writer.signatureCount++;
+            } else if (writer.signatureCount == 0) {
+                throw new XMLSigningException(String.format("No element matches [ %s ]", elementSelector), null);
+            }
+            out.flush();
+            return writer.signatureCount;
+        } catch (XMLSigningException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new XMLSigningException("Failed to sign XML stream", e);
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (XMLStreamException ignored) {
+                    // Nothing left to release
+                }
+            }
+        }
+    }
+
+    /**
+     * Builds the ds:Signature element. SignedInfo is canonicalized as a document subset, so it carries the
+     * namespace declarations and xml:* attributes it inherits from the signed element it is placed in.
+     */
+    private String buildSignatureElement(String referenceUri, byte[] digest, SortedMap<String, String> inheritedNamespaces,
+                                         SortedMap<String, String> inheritedXmlAttributes) throws GeneralSecurityException {
+        String signedInfoContent = "<CanonicalizationMethod Algorithm=\"" + C14N_METHOD + "\"></CanonicalizationMethod>"
+                + "<SignatureMethod Algorithm=\"" + RSA_SHA256 + "\"></SignatureMethod>"
+                + "<Reference URI=\"" + escapeAttribute(referenceUri) + "\">"
+                + "<Transforms><Transform Algorithm=\"" + ENVELOPED + "\"></Transform></Transforms>"
+                + "<DigestMethod Algorithm=\"" + SHA256 + "\"></DigestMethod>"
+                + "<DigestValue>" + Base64.getEncoder().encodeToString(digest) + "</DigestValue>"
+                + "</Reference>";
+
+        StringBuilder canonicalSignedInfo = new StringBuilder("<SignedInfo xmlns=\"").append(DSIG_NS).append('"');
+        for (Map.Entry<String, String> ns : inheritedNamespaces.entrySet()) {
+            if (ns.getKey().isEmpty()) continue; // default namespace is overridden by the ds namespace
+            canonicalSignedInfo.append(" xmlns:").append(ns.getKey()).append("=\"").append(escapeAttribute(ns.getValue())).append('"');
+        }
+        for (Map.Entry<String, String> attr : inheritedXmlAttributes.entrySet()) {
+            canonicalSignedInfo.append(" xml:").append(attr.getKey()).append("=\"").append(escapeAttribute(attr.getValue())).append('"');
+        }
+        canonicalSignedInfo.append('>').append(signedInfoContent).append("</SignedInfo>");
+
+        Signature signature = Signature.getInstance("SHA256withRSA");
+        signature.initSign(privateKey);
+        signature.update(canonicalSignedInfo.toString().getBytes(StandardCharsets.UTF_8));
+        String signatureValue = Base64.getEncoder().encodeToString(signature.sign());
+
+        return "<Signature xmlns=\"" + DSIG_NS + "\">"
+                + "<SignedInfo>" + signedInfoContent + "</SignedInfo>"
+                + "<SignatureValue>" + signatureValue + "</SignatureValue>"
+                + "<KeyInfo><X509Data>"
+                + "<X509SubjectName>" + escapeText(certificate.getSubjectX500Principal().getName()) + "</X509SubjectName>"
+                + "<X509Certificate>" + Base64.getEncoder().encodeToString(certificate.getEncoded()) + "</X509Certificate>"
+                + "</X509Data></KeyInfo>"
+                + "</Signature>";
+    }
+
+    /**
+     * Writes StAX events in Canonical XML 1.0 form to the output and the digest.
+     * <p>
+     * In whole-document mode the root end tag and anything after it are digested immediately but held back
+     * from the output, so the signature can be inserted before them. In element mode each selected element
+     * is digested on its own, as the document subset its {@code #Id} reference selects, and its signature is
+     * written just before its end tag.
+     */
+    private final class CanonicalWriter {
+        private final OutputStream out;
+        private final MessageDigest digest;
+        private final XmlElementSelector selector;
+        private final Deque<Map<String, String>> namespaceScopes = new ArrayDeque<>();
+        private final Deque<Map<String, String>> xmlAttributeScopes = new ArrayDeque<>();
+        private final List<String> path = new ArrayList<>();
+        private final StringBuilder deferred = new StringBuilder();
+        private final SortedMap<String, String> rootNamespaces = new TreeMap<>();
+        private final SortedMap<String, String> rootXmlAttributes = new TreeMap<>();
+        private int depth;
+        private boolean afterRoot;
+        private int signatureCount;
+
+        // State of the selected element currently being digested in element mode
+        private MessageDigest elementDigest;
+        private int elementDepth;
+        private String elementId;
+        private SortedMap<String, String> elementNamespaces;
+        private SortedMap<String, String> elementXmlAttributes;
+
+        private CanonicalWriter(OutputStream out, MessageDigest digest, XmlElementSelector selector) {
+            this.out = out;
+            this.digest = digest;
+            this.selector = selector;
+            Map<String, String> documentScope = new HashMap<>();
+            documentScope.put("", "");
+            namespaceScopes.push(documentScope);
+            xmlAttributeScopes.push(new TreeMap<>());
+        }
+
+        private void copy(XMLStreamReader reader) throws XMLStreamException, IOException, GeneralSecurityException, XMLSigningException {
+            while (reader.hasNext()) {
+                switch (reader.next()) {
+                    case XMLStreamConstants.START_ELEMENT:
+                        writeStartElement(reader);
+                        break;
+                    case XMLStreamConstants.END_ELEMENT:
+                        writeEndElement(reader);
+                        break;
+                    case XMLStreamConstants.CHARACTERS:
+                    case XMLStreamConstants.CDATA:
+                    case XMLStreamConstants.SPACE:
+                        if (depth > 0 && !isWhitespace(reader)) {
+                            write(escapeText(reader.getText()));
+                        }
+                        break;
+                    case XMLStreamConstants.PROCESSING_INSTRUCTION:
+                        writeProcessingInstruction(reader);
+                        break;
+                    case XMLStreamConstants.DTD:
+                        throw new XMLSigningException("Documents with a DTD are not supported in streaming mode", null);
+                    default:
+                        // Comments, the XML declaration and whitespace outside the root are not part of the canonical form
+                        break;
+                }
+            }
+        }
+
+        private void writeStartElement(XMLStreamReader reader) throws IOException, GeneralSecurityException {
+            Map<String, String> parentScope = namespaceScopes.peek();
+            Map<String, String> scope = new HashMap<>(parentScope);
+            SortedMap<String, String> rendered = new TreeMap<>();
+
+            for (int i = 0; i < reader.getNamespaceCount(); i++) {
+                String prefix = reader.getNamespacePrefix(i) == null ? "" : reader.getNamespacePrefix(i);
+                String uri = reader.getNamespaceURI(i) == null ? "" : reader.getNamespaceURI(i);
+                scope.put(prefix, uri);
+                if (!"xml".equals(prefix) && !uri.equals(parentScope.getOrDefault(prefix, ""))) {
+                    rendered.put(prefix, uri);
+                }
+            }
+            namespaceScopes.push(scope);
+
+            List<String[]> attributes = new ArrayList<>();
+            SortedMap<String, String> xmlAttributes = new TreeMap<>(xmlAttributeScopes.peek());
+            String idValue = null;
+            for (int i = 0; i < reader.getAttributeCount(); i++) {
+                String uri = reader.getAttributeNamespace(i) == null ? "" : reader.getAttributeNamespace(i);
+                String localName = reader.getAttributeLocalName(i);
+                attributes.add(new String[]{uri, localName, reader.getAttributePrefix(i), reader.getAttributeValue(i)});
+                if (XML_NS.equals(uri)) xmlAttributes.put(localName, reader.getAttributeValue(i));
+                if (uri.isEmpty() && ID_ATTRIBUTE.equals(localName)) idValue = reader.getAttributeValue(i);
+            }
+            xmlAttributeScopes.push(xmlAttributes);
+            path.add(reader.getLocalName());
+
+            boolean selected = selector != null && elementDigest == null && selector.matches(path);
+            if (selected && idValue == null) {
+                idValue = "edastakhat-" + (signatureCount + 1);
+                attributes.add(new String[]{"", ID_ATTRIBUTE, "", idValue});
+            }
+            attributes.sort(ATTRIBUTE_ORDER);
+
+            String qualifiedName = qualifiedName(reader.getPrefix(), reader.getLocalName());
+            String tag = startTag(qualifiedName, rendered, attributes);
+
+            if (selected) {
+                // The #Id subset has no output ancestors: its apex carries every in-scope namespace
+                // and imports the xml:* attributes of its ancestors
+                SortedMap<String, String> inScope = new TreeMap<>();
+                scope.forEach((prefix, uri) -> {
+                    if (!"xml".equals(prefix) && !uri.isEmpty()) inScope.put(prefix, uri);
+                });
+                List<String[]> apexAttributes = new ArrayList<>(attributes);
+                xmlAttributeScopes.peek().forEach((name, value) -> {
+                    if (attributes.stream().noneMatch(a -> XML_NS.equals(a[0]) && name.equals(a[1]))) {
+                        apexAttributes.add(new String[]{XML_NS, name, "xml", value});
+                    }
+                });
+                apexAttributes.sort(ATTRIBUTE_ORDER);
+
+                elementDigest = MessageDigest.getInstance("SHA-256");
+                elementDigest.update(startTag(qualifiedName, inScope, apexAttributes).getBytes(StandardCharsets.UTF_8));
+                elementDepth = depth;
+                elementId = idValue;
+                elementNamespaces = new TreeMap<>(inScope);
+                elementNamespaces.remove("");
+                elementXmlAttributes = xmlAttributes;
+
+                depth++;
+                writeOutputOnly(tag);
+                return;
+            }
+
+            if (depth == 0) {
+                scope.forEach((prefix, uri) -> {
+                    if (!prefix.isEmpty() && !"xml".equals(prefix) && !uri.isEmpty()) rootNamespaces.put(prefix, uri);
+                });
+                for (String[] attr : attributes) {
+                    if (XML_NS.equals(attr[0])) rootXmlAttributes.put(attr[1], attr[3]);
+                }
+            }
+
+            depth++;
+            write(tag);
+        }
+
+        private void writeEndElement(XMLStreamReader reader) throws IOException, GeneralSecurityException {
+            depth--;
+            namespaceScopes.pop();
+            xmlAttributeScopes.pop();
+            path.remove(path.size() - 1);
+
+            String tag = "</" + qualifiedName(reader.getPrefix(), reader.getLocalName()) + ">";
+            if (elementDigest != null && depth == elementDepth) {
+                elementDigest.update(tag.getBytes(StandardCharsets.UTF_8));
+                byte[] elementValue = elementDigest.digest();
+                elementDigest = null;
+
+                writeOutputOnly(buildSignatureElement("#" + elementId, elementValue, elementNamespaces, elementXmlAttributes));
+                writeOutputOnly(tag);
+                signatureCount++;
+            } else if (selector == null && depth == 0) {
+                afterRoot = true;
+                digest.update(tag.getBytes(StandardCharsets.UTF_8));
+                deferred.append(tag);
+            } else {
+                write(tag);
+            }
+        }
+
+        private void writeProcessingInstruction(XMLStreamReader reader) throws IOException {
+            String data = reader.getPIData();
+            String pi = "<?" + reader.getPITarget() + (data == null || data.isEmpty() ? "" : " " + data) + "?>";
+
+            if (depth > 0) {
+                write(pi);
+            } else if (afterRoot && selector != null) {
+                writeOutputOnly("\n" + pi);
+            } else if (afterRoot) {
+                String trailing = "\n" + pi;
+                digest.update(trailing.getBytes(StandardCharsets.UTF_8));
+                deferred.append(trailing);
+            } else {
+                write(pi + "\n");
+            }
+        }
+
+        private void write(String canonical) throws IOException {
+            byte[] bytes = canonical.getBytes(StandardCharsets.UTF_8);
+            if (digest != null) digest.update(bytes);
+            if (elementDigest != null) elementDigest.update(bytes);
+            out.write(bytes);
+        }
+
+        private void writeOutputOnly(String content) throws IOException {
+            out.write(content.getBytes(StandardCharsets.UTF_8));
+        }
+
+        private void flushDeferred() throws IOException {
+            writeOutputOnly(deferred.toString());
+        }
+
+        private String startTag(String qualifiedName, Map<String, String> namespaces, List<String[]> attributes) {
+            StringBuilder tag = new StringBuilder("<").append(qualifiedName);
+            for (Map.Entry<String, String> ns : namespaces.entrySet()) {
+                tag.append(ns.getKey().isEmpty() ? " xmlns" : " xmlns:" + ns.getKey())
+                        .append("=\"").append(escapeAttribute(ns.getValue())).append('"');
+            }
+            for (String[] attr : attributes) {
+                tag.append(' ').append(qualifiedName(attr[2], attr[1]))
+                        .append("=\"").append(escapeAttribute(attr[3])).append('"');
+            }
+            return tag.append('>').toString();
+        }
+
+        private boolean isWhitespace(XMLStreamReader reader) {
+            char[] chars = reader.getTextCharacters();
+            int end = reader.getTextStart() + reader.getTextLength();
+            for (int i = reader.getTextStart(); i < end; i++) {
+                char c = chars[i];
+                // Same character class as the \s used by XMLSigner's normalization
+                if (c != ' ' && c != '\t' && c != '\n' && c != '\r' && c != '\f' && c != '\u000B') return false;
+            }
+            return true;
+        }
+
+        private String qualifiedName(String prefix, String localName) {
+            return prefix == null || prefix.isEmpty() ? localName : prefix + ":" + localName;
+        }
+    }
+
+    private static String escapeText(String text) {
+        StringBuilder sb = new StringBuilder(text.length() + 16);
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '&': sb.append("&amp;"); break;
+                case '<': sb.append("&lt;"); break;
+                case '>': sb.append("&gt;"); break;
+                case '\r': sb.append("&#xD;"); break;
+                default: sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    private static String escapeAttribute(String value) {
+        StringBuilder sb = new StringBuilder(value.length() + 16);
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '&': sb.append("&amp;"); break;
+                case '<': sb.append("&lt;"); break;
+                case '"': sb.append("&quot;"); break;
+                case '\t': sb.append("&#x9;"); break;
+                case '\n': sb.append("&#xA;"); break;
+                case '\r': sb.append("&#xD;"); break;
+                default: sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    private static XMLInputFactory createInputFactory() {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+        factory.setProperty(XMLInputFactory.IS_REPLACING_ENTITY_REFERENCES, true);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        return factory;
+    }
+}
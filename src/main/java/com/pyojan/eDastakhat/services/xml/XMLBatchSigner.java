@@ -0,0 +1,431 @@
+package com.pyojan.eDastakhat.services.xml;
+
+import com.pyojan.eDastakhat.libs.BatchJournal;
+import com.pyojan.eDastakhat.libs.keyStore.PKCS11SessionPool;
+import com.pyojan.eDastakhat.libs.log.StructuredLog;
+import com.pyojan.eDastakhat.libs.metrics.OperationalMetrics;
+import com.pyojan.eDastakhat.models.XmlBatchSigningResult;
+import com.pyojan.eDastakhat.utils.FileUtil;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.PrivateKey;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Signs many XML files in one JVM run with a single loaded key.
+ * <p>
+ * Files are read, signed and written in parallel on a fixed pool of worker threads.
+ * All workers share one {@link XMLSigningEngine} (or one {@link StreamingXMLSigner}
+ * in streaming and per-element mode). With a {@link PKCS11SessionPool}, each file is
+ * instead signed with the key of an idle pooled session, so the workers spread over
+ * every slot of the pool; each slot keeps one signer for all its sessions. A failure on one file is recorded in the result and does not
+ * stop the rest of the batch. With a {@link BatchJournal}, files signed by an earlier, interrupted run are
+ * skipped, so a batch can be resumed where it stopped.
+ */
+public class XMLBatchSigner {
+
+    /** Batch source value that reads the file list from standard input. */
+    public static final String STDIN_SOURCE = "-";
+
+    // Enveloped signatures end the signed element, so a signed file has one close to its end
+    private static final int SIGNATURE_PROBE_BYTES = 64 * 1024;
+    private static final Pattern SIGNATURE_END = Pattern.compile("</([\\w.-]+:)?Signature>");
+
+    private final X509Certificate certificate;
+    private final XmlElementSelector elementSelector;
+    private final boolean useStreaming;
+    private final PKCS11SessionPool sessionPool;
+    private final XMLSigningEngine engine;
+    private final StreamingXMLSigner streamingSigner;
+    // Signers of the pooled slots, by slot list index
+    private final Map<Long, SlotSigner> slotSigners = new ConcurrentHashMap<>();
+    private final int threads;
+
+    /**
+     * Constructs a batch signer.
+     *
+     * @param certificate The X509 certificate to be included in every signature
+     * @param privateKey The private key used for signing
+     * @param threads Number of worker threads; values below 1 use one thread per available core
+     * @param streaming Whether to sign each file with the bounded-memory streaming signer
+     * @param elementSelector Elements to sign individually in each file, or {@code null} to sign whole files;
+     *                        implies streaming
+     * @throws XMLSigner.XMLSigningException if the signature templates cannot be created
+     */
+    public XMLBatchSigner(X509Certificate certificate, PrivateKey privateKey, int threads, boolean streaming,
+                          XmlElementSelector elementSelector) throws XMLSigner.XMLSigningException {
+        this(certificate, privateKey, null, threads, streaming, elementSelector);
+    }
+
+    /**
+     * Constructs a batch signer that signs each file with the key of an idle session of the pool. Size
+     * {@code threads} to the number of sessions of the pool to keep every session busy.
+     *
+     * @param certificate The X509 certificate to be included in every signature
+     * @param sessionPool The sessions whose keys sign the files
+     * @param threads Number of worker threads; values below 1 use one thread per available core
+     * @param streaming Whether to sign each file with the bounded-memory streaming signer
+     * @param elementSelector Elements to sign individually in each file, or {@code null} to sign whole files;
+     *                        implies streaming
+     * @throws XMLSigner.XMLSigningException if the signature templates cannot be created
+     */
+    public XMLBatchSigner(X509Certificate certificate, PKCS11SessionPool sessionPool, int threads, boolean streaming,
+                          XmlElementSelector elementSelector) throws XMLSigner.XMLSigningException {
+        this(certificate, null, sessionPool, threads, streaming, elementSelector);
+    }
+
+    private XMLBatchSigner(X509Certificate certificate, PrivateKey privateKey, PKCS11SessionPool sessionPool,
+                           int threads, boolean streaming, XmlElementSelector elementSelector)
+            throws XMLSigner.XMLSigningException {
+        this.certificate = certificate;
+        this.elementSelector = elementSelector;
+        this.useStreaming = streaming || elementSelector != null;
+        this.sessionPool = sessionPool;
+        // Pooled slots get their signers on first use, see slotSigner
+        boolean sharedKey = sessionPool == null;
+        this.engine = sharedKey && !useStreaming ? new XMLSigningEngine(certificate, privateKey) : null;
+        this.streamingSigner = sharedKey && useStreaming ? new StreamingXMLSigner(certificate, privateKey, elementSelector) : null;
+        this.threads = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * Resolves the batch source to the list of XML files to sign.
+     * <ul>
+     *     <li>a directory: every {@code .xml} file directly inside it, in name order, except the
+     *     {@code _signed.xml} copies written by an earlier run</li>
+     *     <li>{@value #STDIN_SOURCE}: one file path per line read from standard input</li>
+     *     <li>any other file: a manifest with one file path per line</li>
+     * </ul>
+     * Blank lines and lines starting with {@code #} in a manifest are ignored.
+     *
+     * @param source Directory, manifest file path or {@value #STDIN_SOURCE}
+     * @return The XML files to sign
+     * @throws IOException if the directory or manifest cannot be read
+     */
+    public static List<Path> resolveInputs(String source) throws IOException {
+        if (STDIN_SOURCE.equals(source)) {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+            return readManifest(reader.lines());
+        }
+
+        Path path = Paths.get(source);
+        if (Files.isDirectory(path)) {
+            try (Stream<Path> files = Files.list(path)) {
+                return files
+                        .filter(Files::isRegularFile)
+                        .filter(p -> p.getFileName().toString().toLowerCase(Locale.ROOT).endsWith(FileUtil.Extension.XML.getValue()))
+                        .filter(p -> !isSignedCopy(p))
+                        .sorted()
+                        .collect(Collectors.toList());
+            }
+        }
+
+        try (Stream<String> lines = Files.lines(path, StandardCharsets.UTF_8)) {
+            return readManifest(lines);
+        }
+    }
+
+    /**
+     * Signs all input files in parallel.
+     *
+     * @param inputs The XML files to sign
+     * @param outputDir Directory for the signed files, or {@code null} to write each one next to its input
+     * @return Per-file results in input order, plus a summary
+     * @throws IOException if the output directory cannot be created
+     * @throws InterruptedException if interrupted while waiting for the workers
+     */
+    public XmlBatchSigningResult signAll(List<Path> inputs, Path outputDir) throws IOException, InterruptedException {
+        return signAll(inputs, outputDir, null);
+    }
+
+    /**
+     * Signs all input files in parallel and records each file in a journal. Files the journal records as
+     * signed into the same output are skipped if the input is unchanged since, and the output still has
+     * its recorded size and ends with a signature; all others are signed again. Inputs the journal records
+     * as the output of another file are left out of the batch.
+     *
+     * @param inputs The XML files to sign
+     * @param outputDir Directory for the signed files, or {@code null} to write each one next to its input
+     * @param journal The journal of this batch, or {@code null} to sign every file
+     * @return Per-file results in input order, plus a summary
+     * @throws IllegalArgumentException if two inputs would be written to the same output file, or an input
+     *                                  is the output of another input
+     * @throws IOException if the output directory cannot be created
+     * @throws InterruptedException if interrupted while waiting for the workers
+     */
+    public XmlBatchSigningResult signAll(List<Path> inputs, Path outputDir, BatchJournal journal)
+            throws IOException, InterruptedException {
+        long start = System.nanoTime();
+        if (journal != null) inputs = withoutRecordedOutputs(inputs, journal);
+        checkDistinctOutputs(inputs, outputDir);
+        if (outputDir != null) {
+            Files.createDirectories(outputDir);
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads, new WorkerThreadFactory());
+        List<XmlBatchSigningResult.FileResult> results = new ArrayList<>(inputs.size());
+        try {
+            List<Future<XmlBatchSigningResult.FileResult>> futures = new ArrayList<>(inputs.size());
+            // Workers log each file as a job of its own, linked to the batch job
+            String batchJobId = StructuredLog.currentJobId();
+            for (Path input : inputs) {
+                futures.add(executor.submit(() -> {
+                    try (StructuredLog.Job ignored = StructuredLog.beginJob("xml-file", batchJobId)) {
+                        return signOne(input, outputDir, journal);
+                    }
+                }));
+            }
+            for (Future<XmlBatchSigningResult.FileResult> future : futures) {
+                results.add(getResult(future));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        int signed = (int) results.stream().filter(XmlBatchSigningResult.FileResult::isSigned).count();
+        int skipped = (int) results.stream().filter(r -> Boolean.TRUE.equals(r.getSkipped())).count();
+        return XmlBatchSigningResult.builder()
+                .summary(XmlBatchSigningResult.BatchSummary.builder()
+                        .totalFiles(results.size())
+                        .signedFiles(signed)
+                        .failedFiles(results.size() - signed)
+                        .skippedFiles(skipped)
+                        .threads(threads)
+                        .elapsedMillis((System.nanoTime() - start) / 1_000_000)
+                        .build())
+                .files(results)
+                .build();
+    }
+
+    private XmlBatchSigningResult.FileResult signOne(Path input, Path outputDir, BatchJournal journal) {
+        String outputPath = outputPath(input, outputDir);
+        if (journal != null && journal.isSigned(input, outputPath) && hasSignature(Paths.get(outputPath))) {
+            StructuredLog.debug("xml.fileSkipped", "input", input.toString(), "output", outputPath);
+            return XmlBatchSigningResult.FileResult.builder()
+                    .inputPath(input.toString())
+                    .signedFilePath(outputPath)
+                    .signed(true)
+                    .skipped(true)
+                    .build();
+        }
+
+        long started = OperationalMetrics.documentStarted();
+        try {
+            int signatures = sessionPool == null
+                    ? signFile(input, outputPath, engine, streamingSigner)
+                    : sessionPool.execute(session -> {
+                        SlotSigner signer = slotSigner(session);
+                        return signFile(input, outputPath, signer.engine, signer.streamingSigner);
+                    });
+            OperationalMetrics.signaturesCreated("xml", signatures);
+            OperationalMetrics.documentSigned("xml", started);
+            record(journal, input, outputPath, null);
+            StructuredLog.debug("xml.fileSigned", "input", input.toString(),
+                    "elapsedMillis", StructuredLog.currentJobElapsedMillis());
+            return XmlBatchSigningResult.FileResult.builder()
+                    .inputPath(input.toString())
+                    .signedFilePath(outputPath)
+                    .signed(true)
+                    .build();
+        } catch (Exception e) {
+            OperationalMetrics.signingFailed("xml", started);
+            StructuredLog.log(StructuredLog.Level.WARN, "xml.fileFailed", e, "input", input.toString(),
+                    "elapsedMillis", StructuredLog.currentJobElapsedMillis());
+            XmlBatchSigningResult.FileResult result = failed(input, e);
+            record(journal, input, null, result.getError());
+            return result;
+        }
+    }
+
+    /**
+     * Returns the signer of the session's slot. Every session of a slot uses the slot's key, so the
+     * slot's files share one signer, as the files of a single key do. A slot that reconnected has a new
+     * key, and gets a new signer.
+     */
+    private SlotSigner slotSigner(PKCS11SessionPool.Session session) throws XMLSigner.XMLSigningException {
+        PrivateKey privateKey = session.getPrivateKey();
+        SlotSigner signer = slotSigners.get(session.getSlotListIndex());
+        if (signer != null && signer.privateKey == privateKey) return signer;
+
+        // Two workers may both build one; either serves the slot
+        signer = useStreaming
+                ? new SlotSigner(privateKey, null, new StreamingXMLSigner(certificate, privateKey, elementSelector))
+                : new SlotSigner(privateKey, new XMLSigningEngine(certificate, privateKey), null);
+        slotSigners.put(session.getSlotListIndex(), signer);
+        return signer;
+    }
+
+    private static int signFile(Path input, String outputPath, XMLSigningEngine engine,
+                                StreamingXMLSigner streamingSigner) throws Exception {
+        if (streamingSigner != null) return streamingSigner.signXmlFile(input, Paths.get(outputPath));
+
+        String xml = new String(Files.readAllBytes(input), StandardCharsets.UTF_8);
+        FileUtil.writeToDisk(engine.signXmlString(xml), outputPath);
+        return 1;
+    }
+
+    private static void record(BatchJournal journal, Path input, String outputPath, String error) {
+        if (journal == null) return;
+        try {
+            if (error == null) journal.signed(input, outputPath);
+            else journal.failed(input, error);
+        } catch (IOException e) {
+            // The file itself is done; without a record it is only signed again by the next run
+            StructuredLog.log(StructuredLog.Level.WARN, "journal.writeFailed", e, "input", input.toString(),
+                    "journal", journal.getFile().toString());
+        }
+    }
+
+    /**
+     * Checks that a file ends with a signature element, reading only its last bytes.
+     */
+    private static boolean hasSignature(Path file) {
+        try (SeekableByteChannel channel = Files.newByteChannel(file)) {
+            long size = channel.size();
+            int length = (int) Math.min(size, SIGNATURE_PROBE_BYTES);
+            ByteBuffer tail = ByteBuffer.allocate(length);
+            channel.position(size - length);
+            while (tail.hasRemaining() && channel.read(tail) >= 0) {
+                // keep reading until the tail is full
+            }
+            // ISO-8859-1 maps every byte to one char, and the tag names are ASCII in any XML encoding we write
+            return SIGNATURE_END.matcher(new String(tail.array(), 0, tail.position(), StandardCharsets.ISO_8859_1)).find();
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private static XmlBatchSigningResult.FileResult getResult(Future<XmlBatchSigningResult.FileResult> future)
+            throws InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            // signOne catches everything it can; this only covers errors such as OutOfMemoryError
+            throw new IllegalStateException("XML batch worker failed", e.getCause());
+        }
+    }
+
+    private static XmlBatchSigningResult.FileResult failed(Path input, Exception e) {
+        Throwable root = e;
+        while (root.getCause() != null && root.getCause() != root) {
+            root = root.getCause();
+        }
+        String message = e.getMessage();
+        if (root != e && root.getMessage() != null) {
+            message = message + ": " + root.getMessage();
+        }
+        return XmlBatchSigningResult.FileResult.builder()
+                .inputPath(input.toString())
+                .signed(false)
+                .error(message)
+                .build();
+    }
+
+    /**
+     * Rejects a batch in which two inputs map to the same output, e.g. {@code a/x.xml} and {@code b/x.xml}
+     * with an output directory, or a file listed twice. Their workers would race to write one file, and
+     * both would be reported as signed. Also rejects a batch in which the output of one input is another
+     * input, which one worker would read while another writes it.
+     */
+    private static void checkDistinctOutputs(List<Path> inputs, Path outputDir) {
+        Map<Path, Path> inputByOutput = new HashMap<>();
+        for (Path input : inputs) {
+            Path output = Paths.get(outputPath(input, outputDir)).toAbsolutePath().normalize();
+            Path previous = inputByOutput.putIfAbsent(output, input);
+            if (previous != null) {
+                throw new IllegalArgumentException(String.format(
+                        "XML batch inputs [ %s ] and [ %s ] would both be signed into [ %s ].", previous, input, output));
+            }
+        }
+        for (Path input : inputs) {
+            Path signedFrom = inputByOutput.get(input.toAbsolutePath().normalize());
+            if (signedFrom != null) {
+                throw new IllegalArgumentException(String.format(
+                        "XML batch input [ %s ] is also the output of input [ %s ].", input, signedFrom));
+            }
+        }
+    }
+
+    /**
+     * Drops the inputs an earlier run of the batch wrote as signed outputs, e.g. the copies written next to
+     * their inputs when a directory batch without an output directory is resumed.
+     */
+    private static List<Path> withoutRecordedOutputs(List<Path> inputs, BatchJournal journal) {
+        List<Path> remaining = new ArrayList<>(inputs.size());
+        for (Path input : inputs) {
+            if (journal.isOutput(input)) {
+                StructuredLog.debug("xml.outputSkipped", "input", input.toString());
+            } else {
+                remaining.add(input);
+            }
+        }
+        return remaining;
+    }
+
+    private static boolean isSignedCopy(Path file) {
+        String name = file.getFileName().toString().toLowerCase(Locale.ROOT);
+        return name.endsWith(FileUtil.SIGNED_SUFFIX + FileUtil.Extension.XML.getValue());
+    }
+
+    private static String outputPath(Path input, Path outputDir) {
+        String signedPath = FileUtil.generateSignedFilePath(input.toString(), FileUtil.Extension.XML);
+        if (outputDir == null) {
+            return signedPath;
+        }
+        return outputDir.resolve(Paths.get(signedPath).getFileName()).toString();
+    }
+
+    private static List<Path> readManifest(Stream<String> lines) {
+        return lines
+                .map(String::trim)
+                .filter(line -> !line.isEmpty() && !line.startsWith("#"))
+                .map(Paths::get)
+                .collect(Collectors.toList());
+    }
+
+    private static class WorkerThreadFactory implements ThreadFactory {
+        private final AtomicInteger counter = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "eDastakhat-xml-batch-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+
+    private static class SlotSigner {
+        final PrivateKey privateKey;
+        final XMLSigningEngine engine;
+        final StreamingXMLSigner streamingSigner;
+
+        SlotSigner(PrivateKey privateKey, XMLSigningEngine engine, StreamingXMLSigner streamingSigner) {
+            this.privateKey = privateKey;
+            this.engine = engine;
+            this.streamingSigner = streamingSigner;
+        }
+    }
+}
@@ -0,0 +1,420 @@
+package com.pyojan.eDastakhat.services.xml;
+
+import com.google.gson.GsonBuilder;
+import com.pyojan.eDastakhat.libs.metrics.OperationalMetrics;
+import com.pyojan.eDastakhat.models.XmlSignatureVerificationResult;
+import com.pyojan.eDastakhat.models.XmlSignatureVerificationResult.*;
+import org.w3c.dom.*;
+import org.xml.sax.SAXException;
+
+import javax.xml.XMLConstants;
+import javax.xml.crypto.*;
+import javax.xml.crypto.dsig.*;
+import javax.xml.crypto.dsig.dom.DOMValidateContext;
+import javax.xml.crypto.dsig.keyinfo.KeyInfo;
+import javax.xml.crypto.dsig.keyinfo.KeyValue;
+import javax.xml.crypto.dsig.keyinfo.X509Data;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.security.GeneralSecurityException;
+import java.security.Key;
+import java.security.KeyException;
+import java.security.PublicKey;
+import java.security.cert.X509Certificate;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Verifies the XML digital signatures in a document: enveloped signatures such as those produced by
+ * {@link XMLSigner} and {@link StreamingXMLSigner}, per-element signatures, and signatures with many references.
+ * <p>
+ * Each signature's SignatureValue is checked first, then its references. When a signature has at least
+ * {@value #PARALLEL_REFERENCE_THRESHOLD} references, their digests are computed in parallel on a shared
+ * worker pool. The document is parsed without deferred node expansion, so the workers only read a fully
+ * built DOM.
+ */
+public class XMLSignatureVerifier {
+
+    private static final int PARALLEL_REFERENCE_THRESHOLD = 4;
+    private static final String[] ID_ATTRIBUTES = {"Id", "ID", "id"};
+
+    private static final DocumentBuilderFactory DOCUMENT_BUILDER_FACTORY = createDocumentBuilderFactory();
+
+    private static final ThreadLocal<XMLSignatureFactory> SIGNATURE_FACTORY =
+            ThreadLocal.withInitial(() -> XMLSignatureFactory.getInstance("DOM"));
+
+    /**
+     * Verifies the XML signatures in a document provided as a byte array.
+     *
+     * @param xmlData The byte array containing the XML document.
+     * @return The verification result for every signature in the document.
+     * @throws IOException              If the XML cannot be parsed.
+     * @throws GeneralSecurityException If a security-related error occurs during verification.
+     * @throws IllegalArgumentException If no signatures are found in the document.
+     */
+    public XmlSignatureVerificationResult verifySignatures(byte[] xmlData) throws IOException, GeneralSecurityException {
+        long started = OperationalMetrics.documentStarted();
+        try {
+            XmlSignatureVerificationResult result = verifyDocumentSignatures(parse(xmlData));
+            OperationalMetrics.documentVerified("xml", started);
+            return result;
+        } catch (IOException | GeneralSecurityException | RuntimeException e) {
+            OperationalMetrics.verificationFailed("xml", started);
+            throw e;
+        }
+    }
+
+    /**
+     * Verifies the XML signatures in the file located at the specified file path.
+     *
+     * @param xmlFilePath The file path to the XML document.
+     * @return The verification result for every signature in the document.
+     * @throws IOException              If the file cannot be read or parsed.
+     * @throws GeneralSecurityException If a security-related error occurs during verification.
+     */
+    public XmlSignatureVerificationResult verifySignatures(String xmlFilePath) throws IOException, GeneralSecurityException {
+        return verifySignatures(Files.readAllBytes(Paths.get(xmlFilePath)));
+    }
+
+    /**
+     * Verifies all signatures in the parsed document.
+     *
+     * @param doc The parsed XML document.
+     * @return An XmlSignatureVerificationResult containing the verification details.
+     * @throws GeneralSecurityException If the verification is interrupted.
+     * @throws IllegalArgumentException If no signatures are found in the document.
+     */
+    private XmlSignatureVerificationResult verifyDocumentSignatures(Document doc) throws GeneralSecurityException {
+        Set<String> duplicateIds = registerIdAttributes(doc);
+
+        NodeList signatureNodes = doc.getElementsByTagNameNS(XMLSignature.XMLNS, "Signature");
+        List<Element> signatureElements = new ArrayList<>(signatureNodes.getLength());
+        for (int i = 0; i < signatureNodes.getLength(); i++) {
+            signatureElements.add((Element) signatureNodes.item(i));
+        }
+        if (signatureElements.isEmpty()) {
+            throw new IllegalArgumentException("No XML signatures found in the document.");
+        }
+
+        List<SignatureInfo> signatures = new ArrayList<>(signatureElements.size());
+        for (int i = 0; i < signatureElements.size(); i++) {
+            signatures.add(verifySignature(i + 1, signatureElements.get(i), duplicateIds));
+        }
+
+        List<String> warnings = new ArrayList<>();
+        for (String id : duplicateIds) {
+            warnings.add(String.format("ID '%s' is used by more than one element - references to it are ambiguous", id));
+        }
+
+        int validCount = (int) signatures.stream().filter(SignatureInfo::isSignatureValid).count();
+        return XmlSignatureVerificationResult.builder()
+                .document(DocumentInfo.builder()
+                        .rootElement(doc.getDocumentElement().getNodeName())
+                        .verificationTime(new Date())
+                        .verificationSummary(buildVerificationSummary(signatures.size(), validCount))
+                        .warnings(warnings)
+                        .build())
+                .signatures(signatures)
+                .build();
+    }
+
+    /**
+     * Verifies a single signature element. Structural problems (unknown algorithms, missing key) are
+     * reported as an invalid signature rather than failing the whole document.
+     *
+     * @param index            The 1-based index of the signature in document order.
+     * @param signatureElement The ds:Signature element.
+     * @param duplicateIds     ID values that occur more than once in the document.
+     * @return A SignatureInfo object containing the signature details.
+     * @throws GeneralSecurityException If the verification is interrupted.
+     */
+    private SignatureInfo verifySignature(int index, Element signatureElement, Set<String> duplicateIds)
+            throws GeneralSecurityException {
+        Node parent = signatureElement.getParentNode();
+        SignatureInfo.SignatureInfoBuilder info = SignatureInfo.builder()
+                .signatureIndex(index)
+                .signatureId(signatureElement.hasAttribute("Id") ? signatureElement.getAttribute("Id") : null)
+                .parentElement(parent instanceof Element ? parent.getNodeName() : null);
+        List<String> warnings = new ArrayList<>();
+
+        X509KeySelector keySelector = new X509KeySelector();
+        try {
+            DOMValidateContext context = new DOMValidateContext(keySelector, signatureElement);
+            XMLSignature signature = SIGNATURE_FACTORY.get().unmarshalXMLSignature(context);
+            SignedInfo signedInfo = signature.getSignedInfo();
+
+            boolean signatureValueValid = signature.getSignatureValue().validate(context);
+            @SuppressWarnings("unchecked")
+            List<Reference> references = signedInfo.getReferences();
+            List<ReferenceInfo> referenceInfos = validateReferences(references, context);
+
+            boolean enveloped = false;
+            boolean coversDocument = false;
+            boolean referencesValid = true;
+            for (ReferenceInfo ref : referenceInfos) {
+                enveloped |= ref.getTransforms().contains(Transform.ENVELOPED);
+                coversDocument |= ref.getUri() == null || ref.getUri().isEmpty() || "#xpointer(/)".equals(ref.getUri());
+                if (!ref.isDigestValid()) {
+                    referencesValid = false;
+                    warnings.add(String.format("Reference '%s' digest does not match - content was modified after signing", ref.getUri()));
+                }
+                if (ref.getUri() != null && ref.getUri().startsWith("#") && duplicateIds.contains(ref.getUri().substring(1))) {
+                    referencesValid = false;
+                    warnings.add(String.format("Reference '%s' points to a duplicated ID - possible signature wrapping", ref.getUri()));
+                }
+            }
+
+            if (!signatureValueValid) warnings.add("Signature value is invalid");
+            if (!coversDocument) warnings.add("Signature does not cover the entire document");
+            if (keySelector.certificate != null && isOutsideValidity(keySelector.certificate)) {
+                warnings.add("Signer certificate is expired or not yet valid");
+            }
+
+            return info
+                    .enveloped(enveloped)
+                    .signatureMethod(signedInfo.getSignatureMethod().getAlgorithm())
+                    .canonicalizationMethod(signedInfo.getCanonicalizationMethod().getAlgorithm())
+                    .signatureValueValid(signatureValueValid)
+                    .signatureValid(signatureValueValid && referencesValid)
+                    .references(referenceInfos)
+                    .certificate(keySelector.certificate != null ? buildCertificateInfo(keySelector.certificate) : null)
+                    .warnings(warnings)
+                    .build();
+        } catch (MarshalException | XMLSignatureException e) {
+            warnings.add("Signature could not be validated: " + rootMessage(e));
+            return info
+                    .references(Collections.emptyList())
+                    .certificate(keySelector.certificate != null ? buildCertificateInfo(keySelector.certificate) : null)
+                    .warnings(warnings)
+                    .build();
+        }
+    }
+
+    /**
+     * Validates the digests of all references, in parallel when there are enough of them.
+     *
+     * @param references The references of one signature.
+     * @param context    The validation context of that signature.
+     * @return A ReferenceInfo per reference, in SignedInfo order.
+     * @throws GeneralSecurityException If the verification is interrupted.
+     */
+    private List<ReferenceInfo> validateReferences(List<Reference> references, XMLValidateContext context)
+            throws GeneralSecurityException {
+        List<ReferenceInfo> results = new ArrayList<>(references.size());
+        if (references.size() < PARALLEL_REFERENCE_THRESHOLD) {
+            for (int i = 0; i < references.size(); i++) {
+                results.add(validateReference(i + 1, references.get(i), context));
+            }
+            return results;
+        }
+
+        List<Future<ReferenceInfo>> futures = new ArrayList<>(references.size());
+        for (int i = 0; i < references.size(); i++) {
+            int referenceIndex = i + 1;
+            Reference reference = references.get(i);
+            futures.add(ReferenceWorkers.POOL.submit(() -> validateReference(referenceIndex, reference, context)));
+        }
+        try {
+            for (Future<ReferenceInfo> future : futures) {
+                results.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            futures.forEach(f -> f.cancel(true));
+            Thread.currentThread().interrupt();
+            throw new GeneralSecurityException("Interrupted while validating XML signature references", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("XML reference validation failed", e.getCause());
+        }
+        return results;
+    }
+
+    private ReferenceInfo validateReference(int index, Reference reference, XMLValidateContext context) {
+        List<String> transforms = new ArrayList<>();
+        for (Object transform : reference.getTransforms()) {
+            transforms.add(((Transform) transform).getAlgorithm());
+        }
+
+        ReferenceInfo.ReferenceInfoBuilder info = ReferenceInfo.builder()
+                .referenceIndex(index)
+                .uri(reference.getURI())
+                .digestMethod(reference.getDigestMethod().getAlgorithm())
+                .transforms(transforms);
+        try {
+            return info.digestValid(reference.validate(context)).build();
+        } catch (XMLSignatureException e) {
+            return info.digestValid(false).error(rootMessage(e)).build();
+        }
+    }
+
+    /**
+     * Registers Id/ID/id attributes as XML IDs so same-document references ("#id") resolve,
+     * and reports any ID value that occurs more than once.
+     */
+    private Set<String> registerIdAttributes(Document doc) {
+        Set<String> seen = new HashSet<>();
+        Set<String> duplicates = new TreeSet<>();
+
+        Deque<Element> stack = new ArrayDeque<>();
+        stack.push(doc.getDocumentElement());
+        while (!stack.isEmpty()) {
+            Element element = stack.pop();
+            for (String name : ID_ATTRIBUTES) {
+                Attr attr = element.getAttributeNodeNS(null, name);
+                if (attr != null) {
+                    element.setIdAttributeNode(attr, true);
+                    if (!seen.add(attr.getValue())) duplicates.add(attr.getValue());
+                }
+            }
+            for (Node child = element.getLastChild(); child != null; child = child.getPreviousSibling()) {
+                if (child.getNodeType() == Node.ELEMENT_NODE) stack.push((Element) child);
+            }
+        }
+        return duplicates;
+    }
+
+    /**
+     * Builds certificate information for a given X509 certificate.
+     *
+     * @param cert The X509 certificate to process.
+     * @return A CertificateInfo object containing certificate details.
+     */
+    private CertificateInfo buildCertificateInfo(X509Certificate cert) {
+        return CertificateInfo.builder()
+                .subjectDN(cert.getSubjectDN().toString())
+                .issuerDN(cert.getIssuerDN().toString())
+                .validFrom(cert.getNotBefore())
+                .validTo(cert.getNotAfter())
+                .serialNumber(cert.getSerialNumber().toString(16))
+                .certificateType("Document Signer Certificate")
+                .build();
+    }
+
+    /**
+     * Builds a summary of the verification results.
+     *
+     * @param totalSignatures The total number of signatures.
+     * @param validCount      The number of valid signatures.
+     * @return A VerificationSummary object containing summary details.
+     */
+    private VerificationSummary buildVerificationSummary(int totalSignatures, int validCount) {
+        return VerificationSummary.builder()
+                .totalSignatures(totalSignatures)
+                .validSignatures(validCount)
+                .invalidSignatures(totalSignatures - validCount)
+                .allSignaturesValid(validCount == totalSignatures)
+                .build();
+    }
+
+    /**
+     * Serializes the verification result to a JSON string.
+     *
+     * @param result The XmlSignatureVerificationResult to serialize.
+     * @return A pretty-printed JSON string representing the verification result.
+     */
+    public String serializeToJson(XmlSignatureVerificationResult result) {
+        return new GsonBuilder().setPrettyPrinting().create().toJson(result);
+    }
+
+    private static boolean isOutsideValidity(X509Certificate certificate) {
+        try {
+            certificate.checkValidity();
+            return false;
+        } catch (GeneralSecurityException e) {
+            return true;
+        }
+    }
+
+    private static String rootMessage(Throwable e) {
+        Throwable root = e;
+        while (root.getCause() != null && root.getCause() != root) {
+            root = root.getCause();
+        }
+        return root.getMessage() != null ? root.getMessage() : root.getClass().getSimpleName();
+    }
+
+    private static Document parse(byte[] xmlData) throws IOException {
+        try {
+            DocumentBuilder builder;
+            synchronized (DOCUMENT_BUILDER_FACTORY) {
+                builder = DOCUMENT_BUILDER_FACTORY.newDocumentBuilder();
+            }
+            builder.setErrorHandler(XMLSigningEngine.SILENT_ERROR_HANDLER);
+            return builder.parse(new ByteArrayInputStream(xmlData));
+        } catch (ParserConfigurationException | SAXException e) {
+            throw new IOException("Failed to parse XML document: " + e.getMessage(), e);
+        }
+    }
+
+    private static DocumentBuilderFactory createDocumentBuilderFactory() {
+        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+        factory.setNamespaceAware(true);
+        try {
+            // Signed input is untrusted: no DTDs, so no entity expansion or external fetches
+            factory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
+            factory.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
+            // Build the whole tree up front so reference workers never trigger lazy node expansion
+            factory.setFeature("http://apache.org/xml/features/dom/defer-node-expansion", false);
+        } catch (ParserConfigurationException ignored) {
+            // Parser without these features; fall back to its defaults
+        }
+        return factory;
+    }
+
+    /**
+     * Selects the verification key from the signature's KeyInfo: the first X509Certificate,
+     * or a bare KeyValue when no certificate is present.
+     */
+    private static final class X509KeySelector extends KeySelector {
+        private volatile X509Certificate certificate;
+
+        @Override
+        public KeySelectorResult select(KeyInfo keyInfo, Purpose purpose, AlgorithmMethod method,
+                                        XMLCryptoContext context) throws KeySelectorException {
+            if (keyInfo == null) {
+                throw new KeySelectorException("Signature has no KeyInfo");
+            }
+            for (Object info : keyInfo.getContent()) {
+                if (info instanceof X509Data) {
+                    for (Object data : ((X509Data) info).getContent()) {
+                        if (data instanceof X509Certificate) {
+                            certificate = (X509Certificate) data;
+                            PublicKey key = certificate.getPublicKey();
+                            return () -> key;
+                        }
+                    }
+                } else if (info instanceof KeyValue) {
+                    try {
+                        Key key = ((KeyValue) info).getPublicKey();
+                        return () -> key;
+                    } catch (KeyException e) {
+                        throw new KeySelectorException(e);
+                    }
+                }
+            }
+            throw new KeySelectorException("No X509Certificate or KeyValue found in KeyInfo");
+        }
+    }
+
+    /**
+     * Shared daemon pool for reference digest validation, created on first use.
+     */
+    private static final class ReferenceWorkers {
+        private static final ExecutorService POOL = Executors.newFixedThreadPool(
+                Runtime.getRuntime().availableProcessors(), new ThreadFactory() {
+                    private final AtomicInteger counter = new AtomicInteger();
+
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread thread = new Thread(r, "eDastakhat-xml-verify-" + counter.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+    }
+}
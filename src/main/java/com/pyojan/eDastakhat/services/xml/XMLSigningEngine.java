@@ -0,0 +1,217 @@
+package com.pyojan.eDastakhat.services.xml;
+
+import org.w3c.dom.Document;
+import org.xml.sax.ErrorHandler;
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXParseException;
+
+import javax.xml.crypto.dsig.*;
+import javax.xml.crypto.dsig.dom.DOMSignContext;
+import javax.xml.crypto.dsig.keyinfo.KeyInfo;
+import javax.xml.crypto.dsig.keyinfo.KeyInfoFactory;
+import javax.xml.crypto.dsig.keyinfo.X509Data;
+import javax.xml.crypto.dsig.spec.C14NMethodParameterSpec;
+import javax.xml.crypto.dsig.spec.TransformParameterSpec;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerConfigurationException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+import java.io.ByteArrayInputStream;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.security.PrivateKey;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Reusable, thread-safe enveloped XML signing engine.
+ * <p>
+ * The JAXP and JSR 105 factories are looked up once per JVM, parsers and
+ * transformers are kept per thread, and the digest method and the {@link KeyInfo}
+ * are built once per certificate. A single engine can therefore sign any number of
+ * documents, from any number of threads, without paying the service-loader cost on
+ * each call.
+ * <p>
+ * The canonicalization and signature methods, the enveloped {@link Transform}, the
+ * {@link Reference} and the {@link SignedInfo} are built per document, from this
+ * thread's factory. The JDK canonicalization method wraps a single canonicalizer
+ * that writes to whichever stream the last caller set, the Java 8 signature method
+ * keeps the {@link java.security.Signature} it last signed with, the transform is
+ * bound to the document it was first marshalled into and the reference records its
+ * digest, so none of them can be shared between concurrent signatures.
+ */
+public final class XMLSigningEngine {
+
+    private static final String RSA_SHA256 = "http://www.w3.org/2001/04/xmldsig-more#rsa-sha256";
+
+    private static final DocumentBuilderFactory DOCUMENT_BUILDER_FACTORY = createDocumentBuilderFactory();
+    private static final TransformerFactory TRANSFORMER_FACTORY = TransformerFactory.newInstance();
+
+    // XMLSignatureFactory instance methods are not guaranteed thread-safe, so keep one per thread
+    private static final ThreadLocal<XMLSignatureFactory> SIGNATURE_FACTORY =
+            ThreadLocal.withInitial(() -> XMLSignatureFactory.getInstance("DOM"));
+
+    private static final ThreadLocal<DocumentBuilder> DOCUMENT_BUILDER = ThreadLocal.withInitial(() -> {
+        try {
+            synchronized (DOCUMENT_BUILDER_FACTORY) {
+                return DOCUMENT_BUILDER_FACTORY.newDocumentBuilder();
+            }
+        } catch (ParserConfigurationException e) {
+            throw new IllegalStateException("Failed to create XML document builder", e);
+        }
+    });
+
+    private static final ThreadLocal<Transformer> TRANSFORMER = ThreadLocal.withInitial(() -> {
+        try {
+            synchronized (TRANSFORMER_FACTORY) {
+                return TRANSFORMER_FACTORY.newTransformer();
+            }
+        } catch (TransformerConfigurationException e) {
+            throw new IllegalStateException("Failed to create XML transformer", e);
+        }
+    });
+
+    // Reports parse errors only through the exception, not the parser's default stderr output
+    static final ErrorHandler SILENT_ERROR_HANDLER = new ErrorHandler() {
+        @Override
+        public void warning(SAXParseException exception) {
+        }
+
+        @Override
+        public void error(SAXParseException exception) throws SAXException {
+            throw exception;
+        }
+
+        @Override
+        public void fatalError(SAXParseException exception) throws SAXException {
+            throw exception;
+        }
+    };
+
+    private final PrivateKey privateKey;
+    private final DigestMethod digestMethod;
+    private final KeyInfo keyInfo;
+
+    /**
+     * Constructs an engine for the specified certificate and private key, building the
+     * signature templates up front.
+     *
+     * @param certificate The X509 certificate to be included in every signature
+     * @param privateKey The private key used for signing
+     * @throws XMLSigner.XMLSigningException if the signature templates cannot be created
+     */
+    public XMLSigningEngine(X509Certificate certificate, PrivateKey privateKey) throws XMLSigner.XMLSigningException {
+        Objects.requireNonNull(certificate, "Certificate cannot be null");
+        this.privateKey = Objects.requireNonNull(privateKey, "Private key cannot be null");
+
+        try {
+            XMLSignatureFactory factory = SIGNATURE_FACTORY.get();
+            this.digestMethod = factory.newDigestMethod(DigestMethod.SHA256, null);
+            this.keyInfo = createKeyInfo(factory.getKeyInfoFactory(), certificate);
+        } catch (Exception e) {
+            throw new XMLSigner.XMLSigningException("Failed to prepare XML signature templates", e);
+        }
+    }
+
+    /**
+     * Normalizes, parses and signs the XML content from a string.
+     *
+     * @param xmlString The XML content to sign
+     * @return The signed XML as a string
+     * @throws XMLSigner.XMLSigningException if signing fails
+     */
+    public String signXmlString(String xmlString) throws XMLSigner.XMLSigningException {
+        Document doc = parseXmlString(normalizeXmlString(xmlString));
+        signDocument(doc);
+        return documentToString(doc);
+    }
+
+    /**
+     * Adds an enveloped signature as the last child of the document element.
+     *
+     * @param doc The document to sign in place
+     * @throws XMLSigner.XMLSigningException if signing fails
+     */
+    public void signDocument(Document doc) throws XMLSigner.XMLSigningException {
+        try {
+            XMLSignatureFactory factory = SIGNATURE_FACTORY.get();
+            Reference ref = factory.newReference("", digestMethod,
+                    Collections.singletonList(factory.newTransform(Transform.ENVELOPED, (TransformParameterSpec) null)),
+                    null, null);
+            SignedInfo signedInfo = factory.newSignedInfo(
+                    factory.newCanonicalizationMethod(CanonicalizationMethod.INCLUSIVE, (C14NMethodParameterSpec) null),
+                    factory.newSignatureMethod(RSA_SHA256, null),
+                    Collections.singletonList(ref));
+
+            DOMSignContext signContext = new DOMSignContext(privateKey, doc.getDocumentElement());
+            factory.newXMLSignature(signedInfo, keyInfo).sign(signContext);
+        } catch (Exception e) {
+            throw new XMLSigner.XMLSigningException("Failed to sign XML document", e);
+        }
+    }
+
+    /**
+     * Parses an XML string using this thread's cached document builder.
+     *
+     * @param xmlString The XML content to parse
+     * @return The parsed, namespace-aware document
+     * @throws XMLSigner.XMLSigningException if parsing fails
+     */
+    public Document parseXmlString(String xmlString) throws XMLSigner.XMLSigningException {
+        try {
+            DocumentBuilder builder = DOCUMENT_BUILDER.get();
+            builder.reset();
+            builder.setErrorHandler(SILENT_ERROR_HANDLER);
+            return builder.parse(new ByteArrayInputStream(xmlString.getBytes(StandardCharsets.UTF_8)));
+        } catch (Exception e) {
+            throw new XMLSigner.XMLSigningException("Failed to parse XML string", e);
+        }
+    }
+
+    /**
+     * Serializes a document using this thread's cached transformer.
+     *
+     * @param doc The document to serialize
+     * @return The document as a string, including the XML declaration
+     * @throws XMLSigner.XMLSigningException if serialization fails
+     */
+    public String documentToString(Document doc) throws XMLSigner.XMLSigningException {
+        try {
+            StringWriter writer = new StringWriter();
+            Transformer transformer = TRANSFORMER.get();
+            transformer.reset();
+            transformer.setOutputProperty(OutputKeys.OMIT_XML_DECLARATION, "no");
+            transformer.transform(new DOMSource(doc), new StreamResult(writer));
+            return writer.toString();
+        } catch (Exception e) {
+            throw new XMLSigner.XMLSigningException("Failed to serialize XML document", e);
+        }
+    }
+
+    private static String normalizeXmlString(String xmlString) {
+        // Remove formatting whitespace but preserve significant whitespace
+        return xmlString.replaceAll(">\\s+<", "><").trim();
+    }
+
+    private static KeyInfo createKeyInfo(KeyInfoFactory kif, X509Certificate certificate) {
+        List<Object> x509Content = new ArrayList<>();
+        x509Content.add(certificate.getSubjectX500Principal().getName());
+        x509Content.add(certificate);
+        X509Data xd = kif.newX509Data(x509Content);
+        return kif.newKeyInfo(Collections.singletonList(xd));
+    }
+
+    private static DocumentBuilderFactory createDocumentBuilderFactory() {
+        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+        factory.setNamespaceAware(true);
+        return factory;
+    }
+}
@@ -0,0 +1,92 @@
+package com.pyojan.eDastakhat.services.xml;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.regex.Pattern;
+
+/**
+ * Selects elements by name or by a streaming-friendly subset of XPath, matched against the path of
+ * local names from the root to the current element.
+ * <p>
+ * Supported forms:
+ * <ul>
+ *     <li>{@code Invoice}: every element named Invoice, same as {@code //Invoice}</li>
+ *     <li>{@code /Invoices/Invoice}: child steps from the root</li>
+ *     <li>{@code //Batch/Invoice}: descendant and child steps</li>
+ *     <li>{@code /Invoices/*}: any element name</li>
+ * </ul>
+ * Namespace prefixes in the expression are ignored and only local names are compared. Predicates,
+ * attributes, functions and unions are not supported, as they cannot be evaluated in one forward pass.
+ */
+public final class XmlElementSelector {
+
+    private final String expression;
+    private final Pattern pathPattern;
+
+    private XmlElementSelector(String expression, Pattern pathPattern) {
+        this.expression = expression;
+        this.pathPattern = pathPattern;
+    }
+
+    /**
+     * Parses an element name or XPath expression.
+     *
+     * @param expression The element name or XPath expression
+     * @return The compiled selector
+     * @throws IllegalArgumentException if the expression is blank or uses unsupported XPath syntax
+     */
+    public static XmlElementSelector parse(String expression) {
+        Objects.requireNonNull(expression, "Element selector cannot be null");
+        String trimmed = expression.trim();
+        if (trimmed.isEmpty()) {
+            throw new IllegalArgumentException("Element selector is empty or blank.");
+        }
+        if (trimmed.matches(".*[\\[\\]()@|=\\s].*")) {
+            throw new IllegalArgumentException(String.format(
+                    "Unsupported element selector [ %s ]: only element names with child (/) and descendant (//) steps are supported.",
+                    trimmed));
+        }
+
+        String path = trimmed.startsWith("/") ? trimmed : "//" + trimmed;
+        StringBuilder regex = new StringBuilder();
+        int i = 0;
+        while (i < path.length()) {
+            boolean descendant = path.startsWith("//", i);
+            i += descendant ? 2 : 1;
+
+            int end = path.indexOf('/', i);
+            if (end == -1) end = path.length();
+            String name = path.substring(i, end);
+            if (name.isEmpty()) {
+                throw new IllegalArgumentException(String.format("Element selector [ %s ] has an empty step.", trimmed));
+            }
+            int colon = name.indexOf(':');
+            String localName = colon == -1 ? name : name.substring(colon + 1);
+
+            regex.append(descendant ? "(?:/[^/]+)*/" : "/")
+                    .append("*".equals(localName) ? "[^/]+" : Pattern.quote(localName));
+            i = end;
+        }
+
+        return new XmlElementSelector(trimmed, Pattern.compile(regex.toString()));
+    }
+
+    /**
+     * Tests whether the element at the given path is selected.
+     *
+     * @param path Local names from the root element down to the element being tested
+     * @return {@code true} if the element is selected
+     */
+    public boolean matches(List<String> path) {
+        StringBuilder sb = new StringBuilder();
+        for (String name : path) {
+            sb.append('/').append(name);
+        }
+        return pathPattern.matcher(sb).matches();
+    }
+
+    @Override
+    public String toString() {
+        return expression;
+    }
+}
@@ -18,6 +18,8 @@ import java.util.Objects;
 
 public class FileUtil {
 
+    // Appended to the base name of an input to name its signed copy
+    public static final String SIGNED_SUFFIX = "_signed";
 
     public enum Extension {
         PDF(".pdf"),
@@ -132,7 +134,7 @@ public class FileUtil {
         String baseName = (dotIndex != -1) ? fileName.substring(0, dotIndex) : fileName;
         String extension = (dotIndex != -1) ? fileName.substring(dotIndex) : ext.getValue();
 
-        return new File(parent, baseName + "_signed" + extension).getPath();
+        return new File(parent, baseName + SIGNED_SUFFIX + extension).getPath();
     }
 
     public static String generateTimestampedFilename(Extension ext) {
@@ -111,10 +111,32 @@ public class Utils {
                 "\t-p,  --pin <pin>                PIN for token or PFX",
                 "\t-ts, --tokenSerial <id>         Serial number of the PKCS#11 token (required only if multiple tokens are available)",
                 "\t-cs, --certificateSerial <ser>  Serial number of the certificate (required for PKCS#11 and Windows KeyStore)",
+                "\t-sl, --slots <list>             Sign on several slots of the --token library, e.g. 0,1,2 (see --list-tokens)",
+                "\t-ss, --sessions-per-slot <n>    Concurrent sessions per slot with --slots (default: 1)",
                 "\t-pw, --password <pwd>           PDF password if encrypted",
+                "\t-xs, --xml-stream               Sign large XML files in streaming mode (bounded memory, canonical output)",
+                "\t-xe, --xml-element <sel>        Sign each element matching a name or simple XPath (e.g. Invoice, /Batch/Invoice) with its own signature",
+                "\t-dd, --dedup-dir <dir>          Reuse the signed copy of a repeated PDF request, remembering signed requests in this directory",
+                "\t-dw, --dedup-window <sec>       Seconds a signed copy is reused for with --dedup-dir (default: 600)",
+                "",
+                "XML BATCH OPTIONS:",
+                "\t-xb, --xml-batch <src>          Sign many XML files with one loaded key: a directory, a file listing one path per line, or - for stdin",
+                "\t-th, --threads <n>              Worker threads for --xml-batch (default: number of CPU cores)",
+                "\t                                (--output is treated as the output directory; --xml-stream applies to every file)",
+                "\t-jn, --journal <file>           Journal file for --xml-batch; a rerun skips the files it records as signed",
+                "",
+                "MONITORING OPTIONS:",
+                "\t-mt, --metrics                  Include per-stage timing and allocation metrics in the PDF signing response",
+                "\t-mf, --metrics-file <file>      Append per-stage PDF signing metrics to this file, one JSON object per line",
+                "\t-mp, --metrics-port <port>      Serve Prometheus metrics on http://127.0.0.1:<port>/metrics while running",
+                "\t-lg, --log <file>               Write a structured JSON log to this file (appended), or - for STDERR",
+                "\t-ls, --slow-stage-ms <ms>       Log the timing breakdown of stages slower than this many milliseconds (requires --log, default: 1000)",
                 "",
                 "VERIFICATION OPTION:",
-                "\t-vf, --verify <file>            Verify all digital signatures in the specified signed PDF",
+                "\t-vf, --verify <file>            Verify all digital signatures in the specified signed PDF or XML",
+                "",
+                "TOKEN OPTION:",
+                "\t-lt, --list-tokens              List the tokens present for the PKCS#11 library (requires --token)",
                 "",
                 "NETWORK OPTIONS (for timestamping):",
                 "\t--pxh <host>                    HTTP/HTTPS proxy host",
@@ -152,7 +174,13 @@ public class Utils {
                 "\t        -pxh 192.168.0.1 -pxp 8080 -pxu user -pxw pass -pxs",
                 "",
                 "\t6. Verify signed PDF:",
-                "\t   java -jar eDastakhat.jar -vf signed_doc.pdf"
+                "\t   java -jar eDastakhat.jar -vf signed_doc.pdf",
+                "",
+                "\t7. List PKCS#11 tokens:",
+                "\t   java -jar eDastakhat.jar -lt -t libpkcs11.so",
+                "",
+                "\t8. Sign a directory of XML files on 8 threads:",
+                "\t   java -jar eDastakhat.jar -xb invoices/ -o signed/ -pf cert.pfx -p 5678 -th 8"
         );
 
         System.out.println(helpText);
@@ -0,0 +1,70 @@
+package com.pyojan.eDastakhat.utils;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Detects virtual threads (JDK 21+) at runtime, so the application keeps compiling for and running on
+ * Java 8. The JDK 21 API is looked up by reflection once, when the class loads.
+ */
+public final class VirtualThreads {
+
+    private static final Method OF_VIRTUAL = findOfVirtual();
+
+    private VirtualThreads() {
+        throw new UnsupportedOperationException("Utility class. Do not instantiate.");
+    }
+
+    /**
+     * Checks if the running JVM supports virtual threads.
+     *
+     * @return true on JDK 21 or later, or on JDK 19 and 20 with preview features enabled; false otherwise.
+     */
+    public static boolean isSupported() {
+        return OF_VIRTUAL != null;
+    }
+
+    /**
+     * Creates an executor that starts a new virtual thread for each task. The executor is unbounded, so the
+     * caller is responsible for limiting the tasks in flight.
+     *
+     * @param namePrefix prefix of the thread names, followed by a counter
+     * @return the executor
+     * @throws UnsupportedOperationException if the JVM does not support virtual threads
+     */
+    public static ExecutorService newThreadPerTaskExecutor(String namePrefix) {
+        if (OF_VIRTUAL == null) {
+            throw new UnsupportedOperationException("Virtual threads require Java 21 or later, running on Java "
+                    + System.getProperty("java.version"));
+        }
+        try {
+            // Thread.ofVirtual().name(namePrefix, 1).factory()
+            Object builder = OF_VIRTUAL.invoke(null);
+            Class<?> builderType = Class.forName("java.lang.Thread$Builder");
+            builder = builderType.getMethod("name", String.class, long.class).invoke(builder, namePrefix + "-", 1L);
+            ThreadFactory factory = (ThreadFactory) builderType.getMethod("factory").invoke(builder);
+
+            return (ExecutorService) Executors.class
+                    .getMethod("newThreadPerTaskExecutor", ThreadFactory.class)
+                    .invoke(null, factory);
+        } catch (InvocationTargetException e) {
+            throw new IllegalStateException("Unable to create a virtual thread executor", e.getCause());
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Unable to create a virtual thread executor", e);
+        }
+    }
+
+    private static Method findOfVirtual() {
+        try {
+            Method ofVirtual = Thread.class.getMethod("ofVirtual");
+            // JDK 19 and 20 have the method but throw unless preview features are enabled
+            ofVirtual.invoke(null);
+            return ofVirtual;
+        } catch (ReflectiveOperationException | SecurityException e) {
+            return null;
+        }
+    }
+}